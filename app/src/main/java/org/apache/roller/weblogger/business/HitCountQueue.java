@@ -18,9 +18,10 @@
 
 package org.apache.roller.weblogger.business;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -35,8 +36,13 @@ import org.apache.roller.weblogger.pojos.Weblog;
  * Queue's up incoming hit counts so that they can be recorded to the db in
  * an asynchronous manner at give intervals.
  *
- * We also start up a single thread which runs continously to take the queued
- * hit counts, tally them, and record them into the db.
+ * Hits are tallied as they come in, with one counter per weblog, so that
+ * counting a hit never takes a lock and memory only grows with the number
+ * of weblogs being read, not with the number of hits.  The counter of a
+ * weblog is dropped once a whole interval passes without hits for it.
+ *
+ * We also start up a single thread which runs continously to take the
+ * tallied hit counts and record them into the db.
  *
  * TODO: we may want to make this an interface that is pluggable if there is
  *   some indication that users want to override this implementation.
@@ -48,7 +54,7 @@ public final class HitCountQueue {
     private static HitCountQueue instance = null;
     
     private WorkerThread worker = null;
-    private List<String> queue = null;
+    private final Map<String, Tally> tallies = new ConcurrentHashMap<>();
     
     
     static {
@@ -68,9 +74,6 @@ public final class HitCountQueue {
             log.warn("Invalid sleep time ["+sleep+"], using default");
         }
         
-        // create the hits queue
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
-        
         // start up a worker to process the hits at intervals
         HitCountProcessingJob job = new HitCountProcessingJob();
         worker = new ContinuousWorkerThread("HitCountQueueProcessor", job, sleepTime);
@@ -85,24 +88,71 @@ public final class HitCountQueue {
     
     public void processHit(Weblog weblog) {
         
-        // if the weblog isn't null then just drop its handle in the queue
-        // each entry in the queue is a weblog handle and indicates a single hit
+        // if the weblog isn't null then just count a hit for its handle
         if(weblog != null) {
-            this.queue.add(weblog.getHandle());
+            processHit(weblog.getHandle());
+        }
+    }
+    
+    
+    private void processHit(String handle) {
+        
+        // only the first hit for a weblog allocates anything
+        Tally tally = this.tallies.get(handle);
+        if(tally == null) {
+            tally = this.tallies.computeIfAbsent(handle, h -> new Tally());
         }
+        tally.hits.increment();
     }
     
     
-    public List<String> getHits() {
-        return new ArrayList<>(this.queue);
+    /**
+     * Take the hits counted since the last call, tallied by weblog handle.
+     *
+     * Counters are never reset, we only remember how much of each counter
+     * has been taken already, so a hit which comes in while we are taking
+     * the hits is counted in the next call rather than lost.  Counters with
+     * nothing new since the last call are dropped.
+     */
+    public synchronized Map<String, Long> drainHits() {
+        
+        Map<String, Long> hits = new HashMap<>();
+        for (Map.Entry<String, Tally> entry : this.tallies.entrySet()) {
+            Tally tally = entry.getValue();
+            long total = tally.hits.sum();
+            if(total > tally.drained) {
+                hits.put(entry.getKey(), total - tally.drained);
+                tally.drained = total;
+            } else if(this.tallies.remove(entry.getKey(), tally)) {
+                // take hits which came in as the counter was dropped
+                long late = tally.hits.sum() - tally.drained;
+                if(late > 0) {
+                    hits.put(entry.getKey(), late);
+                }
+            }
+        }
+        return hits;
     }
     
     
     /**
-     * Reset the queued hits.
+     * Is there a counter for the weblog?
      */
-    public synchronized void resetHits() {
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+    boolean isCounting(String handle) {
+        return this.tallies.containsKey(handle);
+    }
+    
+    
+    /**
+     * Give back hits taken with drainHits() which couldn't be stored, so
+     * that they are taken again by the next call.
+     */
+    public void requeueHits(Map<String, Long> hits) {
+        
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            this.tallies.computeIfAbsent(entry.getKey(), h -> new Tally())
+                    .hits.add(entry.getValue());
+        }
     }
     
     
@@ -123,4 +173,12 @@ public final class HitCountQueue {
         
     }
     
+    
+    private static final class Tally {
+        private final LongAdder hits = new LongAdder();
+        
+        // only used while holding the queue lock
+        private long drained = 0;
+    }
+    
 }
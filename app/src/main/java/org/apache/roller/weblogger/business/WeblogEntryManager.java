@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.business;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -70,6 +71,19 @@ public interface WeblogEntryManager {
     List<WeblogEntry> getWeblogEntries(WeblogEntrySearchCriteria wesc)
             throws WebloggerException;
 
+    /**
+     * Get a page of published entries in order of id.  Paging by the id of
+     * the last entry seen, rather than by offset, keeps every page equally
+     * cheap to fetch, so all entries of a large site can be walked through.
+     * @param weblog  Weblog to get entries of, or null for all visible weblogs
+     * @param afterId Id of the last entry of the previous page, or null for the first page
+     * @param length  Max entries to return
+     * @return List of WeblogEntry objects ordered by id
+     * @throws WebloggerException
+     */
+    List<WeblogEntry> getPublishedEntriesAfter(Weblog weblog, String afterId, int length)
+            throws WebloggerException;
+
     /**
      * Get Weblog Entries grouped by day.
      * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
@@ -357,6 +371,24 @@ public interface WeblogEntryManager {
         throws WebloggerException;
     
     
+    /**
+     * Increment the hit counts for many weblogs at once.
+     *
+     * This does the same as incrementHitCount() for each weblog, but updates
+     * the counts of a whole batch of weblogs with a single statement, so
+     * callers pass the hits of only as many weblogs as they want to update
+     * at once.  Everything is done in the current transaction, so callers
+     * which want a failure to only cost some of the hits flush after each
+     * batch.
+     *
+     * @param amounts How much to increment by, keyed by weblog handle.  Handles
+     *                of weblogs which don't exist or aren't visible are ignored.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void incrementHitCounts(Map<String, Long> amounts)
+        throws WebloggerException;
+    
+    
     /**
      * Reset the hit counts for all weblogs.  This sets the counts back to 0.
      *
@@ -386,6 +418,21 @@ public interface WeblogEntryManager {
     long getCommentCount(Weblog websiteData) throws WebloggerException;
 
     
+    /**
+     * Get the number of comments on an entry with a given status, or of all
+     * its comments if the status is null.
+     */
+    long getCommentCount(WeblogEntry entry, ApprovalStatus status) throws WebloggerException;
+
+    
+    /**
+     * Count the approved comments of a page of entries with a single query
+     * and hand each entry its count, so that showing the page doesn't take
+     * a query per entry.
+     */
+    void prefetchCommentCounts(Collection<WeblogEntry> entries) throws WebloggerException;
+
+    
     /**
      * Get site-wide entry count 
      */    
@@ -145,6 +145,16 @@ public interface Weblogger {
     void release();
     
     
+    /**
+     * Evict an object from any cache which the persistence layer shares
+     * between sessions, so that it is read from the database next time.
+     * 
+     * @param clazz the class of the object
+     * @param id the id of the object, or null to evict all of its class
+     */
+    void evict(Class<?> clazz, String id);
+    
+    
     /**
      * Initialize any resources necessary for this instance of Weblogger.
      */
@@ -162,6 +162,18 @@ public class JPAPersistenceStrategy {
         }
     }
     
+    /**
+     * Evict an object, or all objects of a class when id is null, from the
+     * shared cache so that it is read from the database next time.
+     */
+    public void evict(Class<?> clazz, String id) {
+        if (id != null) {
+            emf.getCache().evict(clazz, id);
+        } else {
+            emf.getCache().evict(clazz);
+        }
+    }
+    
     /**
      * Store object using an existing transaction.
      * @param obj the object to persist
@@ -349,6 +361,18 @@ public class JPAPersistenceStrategy {
         return em.createNamedQuery(queryName);
     }
 
+    /**
+     * Create update query from queryString with default flush mode (usually FlushModeType.AUTO)
+     * FlushModeType.AUTO commits changes to DB prior to running statement
+     * @param queryString the update query
+     * @throws org.apache.roller.weblogger.WebloggerException on any error
+     */
+    public Query getDynamicUpdate(String queryString)
+    throws WebloggerException {
+        EntityManager em = getEntityManager(true);
+        return em.createQuery(queryString);
+    }
+
     public void shutdown() {
         if (emf != null) {
             emf.close();
@@ -22,6 +22,7 @@ import java.util.*;
 import java.text.SimpleDateFormat;
 import java.sql.Timestamp;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 
@@ -51,6 +52,8 @@ import org.apache.roller.weblogger.pojos.WeblogEntryAttribute;
 import org.apache.roller.weblogger.pojos.StatCountCountComparator;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 
 
 /**
@@ -158,6 +161,9 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public void saveComment(WeblogEntryComment comment) throws WebloggerException {
         this.strategy.store(comment);
+
+        // the comment may have been added, approved or marked as spam
+        comment.getWeblogEntry().setCommentCount(null);
         
         // update weblog last modified date.  date updated by saveWebsite()
         roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
@@ -169,6 +175,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public void removeComment(WeblogEntryComment comment) throws WebloggerException {
         this.strategy.remove(comment);
+        comment.getWeblogEntry().setCommentCount(null);
         
         // update weblog last modified date.  date updated by saveWebsite()
         roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
@@ -452,28 +459,66 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
             queryString.append(") ");
         }
 
-        if (wesc.getSortBy() != null && wesc.getSortBy().equals(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME)) {
-            queryString.append(" ORDER BY e.updateTime ");
-        } else {
-            queryString.append(" ORDER BY e.pubTime ");
-        }
+        String sortTime = (wesc.getSortBy() != null && wesc.getSortBy().equals(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME))
+                ? "e.updateTime" : "e.pubTime";
+        boolean ascending = wesc.getSortOrder() != null
+                && wesc.getSortOrder().equals(WeblogEntrySearchCriteria.SortOrder.ASCENDING);
         
-        if (wesc.getSortOrder() != null && wesc.getSortOrder().equals(WeblogEntrySearchCriteria.SortOrder.ASCENDING)) {
-            queryString.append("ASC ");
-        } else {
-            queryString.append("DESC ");
+        if (wesc.getAfterTime() != null && wesc.getAfterId() != null) {
+            queryString.append(" AND ").append(seekCondition(params, sortTime, "e.id", ascending,
+                    wesc.getAfterTime(), wesc.getAfterId()));
         }
         
+        // ids break ties on time, so that the order is the same every time
+        // and seeking past an entry neither skips nor repeats any
+        queryString.append(" ORDER BY ").append(sortTime);
+        queryString.append(ascending ? " ASC, e.id ASC " : " DESC, e.id DESC ");
+        
         
         TypedQuery<WeblogEntry> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntry.class);
         for (int i=0; i<params.size(); i++) {
             query.setParameter(i+1, params.get(i));
         }
         
+        // load each association asked for with a single query for all the
+        // entries found, keyed by their ids so that paging is unaffected.
+        // these hints are EclipseLink's, other JPA providers ignore them
+        if (wesc.getFetches() != null && !wesc.getFetches().isEmpty()) {
+            query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+            for (WeblogEntrySearchCriteria.Fetch fetch : wesc.getFetches()) {
+                query.setHint(QueryHints.BATCH, "e." + fetch.getAttribute());
+            }
+        }
+        
         setFirstMax( query, wesc.getOffset(), wesc.getMaxResults() );
         return query.getResultList();
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogEntry> getPublishedEntriesAfter(Weblog weblog, String afterId, int length)
+    throws WebloggerException {
+        String queryName = (weblog != null)
+                ? "WeblogEntry.getByStatus&Website" : "WeblogEntry.getByStatus&VisibleTrue";
+        if (afterId != null) {
+            queryName += "&IdGreaterThan";
+        }
+        TypedQuery<WeblogEntry> query = strategy.getNamedQuery(
+                queryName + "OrderByIdAsc", WeblogEntry.class);
+        int param = 1;
+        query.setParameter(param++, PubStatus.PUBLISHED);
+        if (weblog != null) {
+            query.setParameter(param++, weblog);
+        }
+        if (afterId != null) {
+            query.setParameter(param, afterId);
+        }
+        query.setMaxResults(length);
+        return query.getResultList();
+    }
+
     /**
      * @inheritDoc
      */
@@ -665,13 +710,18 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
             appendConjuctionToWhereclause(whereClause, "c.status = ?").append(size);
         }
         
+        if (csc.getAfterTime() != null && csc.getAfterId() != null) {
+            appendConjuctionToWhereclause(whereClause, seekCondition(params, "c.postTime", "c.id",
+                    !csc.isReverseChrono(), csc.getAfterTime(), csc.getAfterId()));
+        }
+        
         if(whereClause.length() != 0) {
             queryString.append(" WHERE ").append(whereClause);
         }
         if (csc.isReverseChrono()) {
-            queryString.append(" ORDER BY c.postTime DESC");
+            queryString.append(" ORDER BY c.postTime DESC, c.id DESC");
         } else {
-            queryString.append(" ORDER BY c.postTime ASC");
+            queryString.append(" ORDER BY c.postTime ASC, c.id ASC");
         }
         
         TypedQuery<WeblogEntryComment> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntryComment.class);
@@ -1301,6 +1351,76 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void incrementHitCounts(Map<String, Long> amounts)
+    throws WebloggerException {
+        
+        if (amounts.isEmpty()) {
+            return;
+        }
+        
+        // lookup all weblogs of the batch, and which of them have a count
+        TypedQuery<Weblog> weblogQuery = strategy.getNamedQuery(
+                "Weblog.getByHandleIn&VisibleTrue", Weblog.class);
+        weblogQuery.setParameter(1, new ArrayList<>(amounts.keySet()));
+        List<Weblog> weblogs = weblogQuery.getResultList();
+        if (weblogs.isEmpty()) {
+            return;
+        }
+        
+        TypedQuery<String> countedQuery = strategy.getNamedQuery(
+                "WeblogHitCount.getWeblogIdByWeblogIn", String.class);
+        countedQuery.setParameter(1, weblogs);
+        Set<String> counted = new HashSet<>(countedQuery.getResultList());
+        
+        // add to all existing counts in one go, with the amounts bound as
+        // parameters so that batches of a size share the same statement
+        StringBuilder update = new StringBuilder(
+                "UPDATE WeblogHitCount h SET h.dailyHits = h.dailyHits + CASE");
+        List<Weblog> updated = new ArrayList<>();
+        List<Integer> updatedAmounts = new ArrayList<>();
+        for (Weblog weblog : weblogs) {
+            int amount = amounts.get(weblog.getHandle()).intValue();
+            if (amount == 0) {
+                continue;
+            }
+            
+            if (counted.contains(weblog.getId())) {
+                updated.add(weblog);
+                updatedAmounts.add(amount);
+                update.append(" WHEN h.weblog = ?").append(updated.size() * 2 - 1)
+                        .append(" THEN ?").append(updated.size() * 2);
+            } else if (amount > 0) {
+                // first hits for this weblog, create its count
+                WeblogHitCount hitCount = new WeblogHitCount();
+                hitCount.setWeblog(weblog);
+                hitCount.setDailyHits(amount);
+                strategy.store(hitCount);
+            }
+        }
+        
+        if (!updated.isEmpty()) {
+            update.append(" ELSE 0 END WHERE h.weblog IN ?").append(updated.size() * 2 + 1);
+            Query q = strategy.getDynamicUpdate(update.toString());
+            for (int i = 0; i < updated.size(); i++) {
+                q.setParameter(i * 2 + 1, updated.get(i));
+                q.setParameter(i * 2 + 2, updatedAmounts.get(i));
+            }
+            q.setParameter(updated.size() * 2 + 1, updated);
+            try {
+                q.executeUpdate();
+            } catch (PersistenceException e) {
+                // name the weblogs whose hits weren't stored
+                throw new WebloggerException("Unable to update hit counts of "
+                        + updated.size() + " weblogs starting with "
+                        + updated.get(0).getHandle(), e);
+            }
+        }
+    }
+    
     /**
      * @inheritDoc
      */
@@ -1351,6 +1471,53 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return q.getResultList().get(0);
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getCommentCount(WeblogEntry entry, ApprovalStatus status) throws WebloggerException {
+        TypedQuery<Long> q;
+        if (status != null) {
+            q = strategy.getNamedQuery(
+                    "WeblogEntryComment.getCountByWeblogEntry&Status", Long.class);
+            q.setParameter(1, entry);
+            q.setParameter(2, status);
+        } else {
+            q = strategy.getNamedQuery(
+                    "WeblogEntryComment.getCountByWeblogEntry", Long.class);
+            q.setParameter(1, entry);
+        }
+        return q.getResultList().get(0);
+    }
+    
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void prefetchCommentCounts(Collection<WeblogEntry> entries) throws WebloggerException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // entries without approved comments get no row back
+        Map<String, WeblogEntry> entriesById = new HashMap<>();
+        for (WeblogEntry entry : entries) {
+            entriesById.put(entry.getId(), entry);
+            entry.setCommentCount(0);
+        }
+
+        TypedQuery<Object[]> q = strategy.getNamedQuery(
+                "WeblogEntryComment.getCountByWeblogEntryIds&StatusGroupByWeblogEntry", Object[].class);
+        q.setParameter(1, new ArrayList<>(entriesById.keySet()));
+        q.setParameter(2, ApprovalStatus.APPROVED);
+        for (Object[] row : q.getResultList()) {
+            WeblogEntry entry = entriesById.get((String) row[0]);
+            if (entry != null) {
+                entry.setCommentCount(((Long) row[1]).intValue());
+            }
+        }
+    }
+    
     /**
      * @inheritDoc
      */
@@ -1374,6 +1541,22 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return q.getResultList().get(0);
     }
 
+    /**
+     * Condition for results which follow the one with the given time and id
+     * in a listing sorted by time and then id, adding its parameters.
+     */
+    private static String seekCondition(List<Object> params, String timeField, String idField,
+            boolean ascending, Date time, String id) {
+        // keep any fraction of a millisecond the time was read with
+        params.add((time instanceof Timestamp) ? time : new Timestamp(time.getTime()));
+        int timeParam = params.size();
+        params.add(id);
+        int idParam = params.size();
+        String after = ascending ? " > ?" : " < ?";
+        return "(" + timeField + after + timeParam
+                + " OR (" + timeField + " = ?" + timeParam + " AND " + idField + after + idParam + "))";
+    }
+    
     /**
      * Appends given expression to given whereClause. If whereClause already
      * has other conditions, an " AND " is also appended before appending
@@ -106,6 +106,12 @@ public class JPAWebloggerImpl extends WebloggerImpl {
     }
 
 
+    @Override
+    public void evict(Class<?> clazz, String id) {
+        this.strategy.evict(clazz, id);
+    }
+
+
     @Override
     public void shutdown() {
         // do our own shutdown first
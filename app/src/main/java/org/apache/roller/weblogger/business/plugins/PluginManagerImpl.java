@@ -20,6 +20,7 @@ package org.apache.roller.weblogger.business.plugins;
 
 import java.util.ArrayList;
 import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
+import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPluginPipeline;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +34,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.plugins.comment.WeblogEntryCommentPlugin;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
-import org.apache.roller.weblogger.util.HTMLSanitizer;
 import org.apache.roller.weblogger.util.Reflection;
 
 
@@ -93,19 +93,18 @@ public class PluginManagerImpl implements PluginManager {
     @Override
     public String applyWeblogEntryPlugins(Map<String, WeblogEntryPlugin> pagePlugins, WeblogEntry entry, String str) {
 
-        String ret = str;
-        List<String> plugins = entry.getPluginsList();
+        List<WeblogEntryPlugin> plugins = new ArrayList<>();
 
-        for (String key : plugins) {
+        for (String key : entry.getPluginsList()) {
             WeblogEntryPlugin pagePlugin = pagePlugins.get(key);
             if (pagePlugin != null) {
-                ret = pagePlugin.render(entry, ret);
+                plugins.add(pagePlugin);
             } else {
                 log.warn("plugin not found: " + key);
             }
         }
 
-        return HTMLSanitizer.conditionallySanitize(ret);
+        return WeblogEntryPluginPipeline.render(entry, plugins, str);
     }
     
     
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the text and summary of entries as transformed by their plugins
+ * and sanitized, so that an entry shown on many pages and feeds is only
+ * transformed once.
+ *
+ * Content is kept by entry id, along with the version of the entry it was
+ * transformed from: the entry's update time and list of plugins, and the
+ * version of its weblog, which is bumped whenever the weblog changes since
+ * its plugins are initialized from it.  So a saved change to an entry or its
+ * weblog simply misses the cache.  Content which hasn't been saved as it
+ * stands, as when previewing changes, is never cached, so its version always
+ * matches what it was transformed from.
+ */
+public final class TransformedContentCache implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(TransformedContentCache.class);
+    
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.transformedcontent";
+    
+    // the parts of an entry which are transformed
+    public static final String TEXT = "text";
+    public static final String SUMMARY = "summary";
+    
+    // keep cached content
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+    
+    // versions of weblogs by handle, bumped when a weblog changes
+    private final Map<String, AtomicLong> weblogVersions = new ConcurrentHashMap<>();
+    
+    // reference to our singleton instance
+    private static final TransformedContentCache singletonInstance = new TransformedContentCache();
+    
+    
+    private TransformedContentCache() {
+        
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1), 
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+    
+    
+    public static TransformedContentCache getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Get a part of an entry as it was transformed, if it was transformed
+     * from the entry as it was last saved.
+     */
+    public String get(WeblogEntry entry, String part) {
+        
+        if (!cacheEnabled) {
+            return null;
+        }
+        
+        String key = generateKey(entry, part);
+        CachedValue cached = (CachedValue) contentCache.get(key);
+        if (cached != null && cached.version.equals(generateVersion(entry))) {
+            log.debug("HIT "+key);
+            return cached.transformed;
+        }
+        
+        log.debug("MISS "+key);
+        return null;
+    }
+    
+    
+    /**
+     * Cache a part of an entry as it was transformed.  The entry must be as
+     * it was last saved.
+     */
+    public void put(WeblogEntry entry, String part, String transformed) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        String key = generateKey(entry, part);
+        contentCache.put(key, new CachedValue(generateVersion(entry), transformed));
+        log.debug("PUT "+key);
+    }
+    
+    
+    /**
+     * An entry has changed.
+     */
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        // keys don't depend on the version of the entry, so content cached
+        // for the entry as it was goes now rather than waiting to be evicted
+        contentCache.remove(generateKey(entry, TEXT));
+        contentCache.remove(generateKey(entry, SUMMARY));
+    }
+    
+    
+    /**
+     * A weblog has changed.
+     *
+     * Entries of the weblog may be transformed differently from now on, so
+     * its version moves on.  Changes to the site-wide weblog may come with
+     * changes to how content is sanitized, so they clear the whole cache.
+     */
+    @Override
+    public void invalidate(Weblog website) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        weblogVersions.computeIfAbsent(website.getHandle(), handle -> new AtomicLong())
+                .incrementAndGet();
+        
+        if(WebloggerRuntimeConfig.isSiteWideWeblog(website.getHandle())) {
+            contentCache.clear();
+        }
+    }
+    
+    
+    /**
+     * Generate a cache key for a part of an entry.
+     * This generates a key of the form ...
+     *
+     * <entry id>/<part>
+     */
+    public String generateKey(WeblogEntry entry, String part) {
+        return CACHE_ID + ':' + entry.getId() + '/' + part;
+    }
+    
+    
+    /**
+     * Generate the version of an entry as it stands now.
+     * This generates a version of the form ...
+     *
+     * <update time>/<weblog version>/<plugins>
+     */
+    private String generateVersion(WeblogEntry entry) {
+        StringBuilder version = new StringBuilder(64);
+        version.append((entry.getUpdateTime() != null) ? entry.getUpdateTime().getTime() : 0);
+        version.append('/').append(weblogVersion(entry.getWebsite()));
+        version.append('/').append(entry.getPlugins());
+        return version.toString();
+    }
+    
+    
+    private long weblogVersion(Weblog weblog) {
+        AtomicLong version = (weblog != null && weblog.getHandle() != null)
+                ? weblogVersions.get(weblog.getHandle()) : null;
+        return (version != null) ? version.get() : 0;
+    }
+    
+    
+    private static final class CachedValue {
+        
+        private final String version;
+        private final String transformed;
+        
+        private CachedValue(String version, String transformed) {
+            this.version = version;
+            this.transformed = transformed;
+        }
+    }
+    
+}
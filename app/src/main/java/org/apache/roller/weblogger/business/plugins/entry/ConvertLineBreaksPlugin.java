@@ -18,13 +18,16 @@
 
 package org.apache.roller.weblogger.business.plugins.entry;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+import org.apache.roller.weblogger.util.HtmlTokenizer;
 
 
 /**
@@ -41,7 +44,7 @@ import org.apache.roller.weblogger.pojos.Weblog;
  * paragraph&lt;/p&gt;
  *
  */
-public class ConvertLineBreaksPlugin implements WeblogEntryPlugin {
+public class ConvertLineBreaksPlugin implements StreamingWeblogEntryPlugin {
     
     private static final Log mLogger = LogFactory.getLog(ConvertLineBreaksPlugin.class);
     
@@ -81,53 +84,108 @@ public class ConvertLineBreaksPlugin implements WeblogEntryPlugin {
     @Override
     public String render(WeblogEntry entry, String str) {
         
-        if(str == null || str.isBlank()) {
+        if(str == null) {
             return "";
         }
         
         mLogger.debug("Rendering string of length "+str.length());
         
-        /* setup a buffered reader and iterate through each line
-         * inserting html as needed
-         *
-         * NOTE: we consider a paragraph to be 2 endlines with no text between them
-         */
-        StringBuilder buf = new StringBuilder();
-        try {
-            BufferedReader br = new BufferedReader(new StringReader(str));
+        return StreamingWeblogEntryPlugin.super.render(entry, str);
+    }
+    
+    
+    @Override
+    public HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next) {
+        return new LineBreaksFilter(next);
+    }
+    
+    
+    /**
+     * Collects the tokens of each line and inserts html as needed once the
+     * line is complete.  Line breaks inside of tags don't count.
+     *
+     * NOTE: we consider a paragraph to be 2 endlines with no text between them
+     */
+    private static final class LineBreaksFilter extends HtmlTokenFilter {
+        
+        private final List<String> line = new ArrayList<>();
+        private boolean lineBlank = true;
+        private boolean insidePara = false;
+        
+        // a \r\n counts as a single line break
+        private boolean afterCR = false;
+        
+        LineBreaksFilter(HtmlTokenHandler next) {
+            super(next);
+        }
+        
+        @Override
+        public void token(String token) {
+            if (HtmlTokenizer.isMarkup(token)) {
+                line.add(token);
+                lineBlank = false;
+                afterCR = false;
+                return;
+            }
             
-            String line;
-            boolean insidePara = false;
-            while((line = br.readLine()) != null) {
-                
-                if(!insidePara && !line.isBlank()) {
-                    // start of a new paragraph
-                    buf.append("\n<p>");
-                    buf.append(line);
-                    insidePara = true;
-                } else if(insidePara && !line.isBlank()) {
-                    // another line in an existing paragraph
-                    buf.append("<br/>\n");
-                    buf.append(line);
-                } else if(insidePara && line.isBlank()) {
-                    // end of a paragraph
-                    buf.append("</p>\n\n");
-                    insidePara = false;
+            int start = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                if (c == '\n' && afterCR) {
+                    start = i + 1;
+                } else if (c == '\n' || c == '\r') {
+                    addText(token.substring(start, i));
+                    endLine();
+                    start = i + 1;
                 }
+                afterCR = (c == '\r');
+            }
+            addText(token.substring(start));
+        }
+        
+        @Override
+        public void end() {
+            if (!line.isEmpty()) {
+                endLine();
             }
             
             // if the text ends without an empty line then we need to
             // terminate the last paragraph now
             if(insidePara) {
-                buf.append("</p>\n\n");
+                next.token("</p>");
+                next.token("\n\n");
+            }
+            super.end();
+        }
+        
+        private void addText(String text) {
+            if (!text.isEmpty()) {
+                line.add(text);
+                lineBlank = lineBlank && text.isBlank();
             }
-            
-        } catch(Exception e) {
-            mLogger.warn("trouble rendering text.", e);
-            return str;
         }
         
-        return buf.toString();
+        private void endLine() {
+            if(!insidePara && !lineBlank) {
+                // start of a new paragraph
+                next.token("\n");
+                next.token("<p>");
+                line.forEach(next::token);
+                insidePara = true;
+            } else if(insidePara && !lineBlank) {
+                // another line in an existing paragraph
+                next.token("<br/>");
+                next.token("\n");
+                line.forEach(next::token);
+            } else if(insidePara && lineBlank) {
+                // end of a paragraph
+                next.token("</p>");
+                next.token("\n\n");
+                insidePara = false;
+            }
+            line.clear();
+            lineBlank = true;
+        }
     }
     
 }
@@ -23,19 +23,28 @@ import java.util.regex.Pattern;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+import org.apache.roller.weblogger.util.HtmlTokenizer;
 
 
 import static java.util.regex.Pattern.*;
 
 /**
  * Encodes angle brackets inside pre tags (code tags which follow right after pre are not encoded).
+ * The tokens of a pre block are held back until it is closed, the rest are passed straight on.
  */
-public class EncodePreTagsPlugin implements WeblogEntryPlugin {
+public class EncodePreTagsPlugin implements StreamingWeblogEntryPlugin {
     
     private static final String LT = "&lt;"; // '<'
 
-    private static final Pattern PRE_PATTERN = Pattern.compile(
-            "<pre\\s*[^>]*>" + "(.*?)" + "</pre\\s*>", MULTILINE | DOTALL | CASE_INSENSITIVE);
+    // a tag token runs up to the first '>', so the pre tags end their tokens,
+    // even when a stray '<' comes before them
+    private static final Pattern PRE_START_PATTERN = Pattern.compile(
+            "<pre\\s*[^>]*>$", CASE_INSENSITIVE);
+    
+    private static final Pattern PRE_END_PATTERN = Pattern.compile(
+            "</pre\\s*>$", CASE_INSENSITIVE);
     
     private static final Pattern CODE_PATTERN = Pattern.compile(
             "<code\\s*.[^>]*>" + "(.*?)" + "</code\\s*>", MULTILINE | DOTALL | CASE_INSENSITIVE);
@@ -54,35 +63,61 @@ public class EncodePreTagsPlugin implements WeblogEntryPlugin {
     public void init(Weblog weblog) throws WebloggerException {}
 
     @Override
-    public String render(WeblogEntry entry, String str) {
-        
-        StringBuilder result = new StringBuilder(str.length()+32);
-        
-        Matcher pre_matcher = PRE_PATTERN.matcher(str);
-        
-        while(pre_matcher.find()) {
-            
-            String pre_full = pre_matcher.group(0);
-            String pre_inner = pre_matcher.group(1);
+    public HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next) {
+        return new HtmlTokenFilter(next) {
             
-            Matcher code_matcher = CODE_PATTERN.matcher(pre_inner);
+            // the pre block being collected, null outside of one
+            private StringBuilder pre;
+            private int preStart;
+            private int preInnerStart;
             
-            if (code_matcher.find()) {
-                String code_inner = code_matcher.group(1);
-                pre_matcher.appendReplacement(result, pre_full.replace(code_inner, encode(code_inner)));
-            } else {
-                pre_matcher.appendReplacement(result, pre_full.replace(pre_inner, encode(pre_inner)));
+            @Override
+            public void token(String token) {
+                if (pre == null) {
+                    Matcher start = PRE_START_PATTERN.matcher(token);
+                    if (HtmlTokenizer.isMarkup(token) && start.find()) {
+                        pre = new StringBuilder(token);
+                        preStart = start.start();
+                        preInnerStart = token.length();
+                    } else {
+                        next.token(token);
+                    }
+                    return;
+                }
+                pre.append(token);
+                Matcher end = PRE_END_PATTERN.matcher(token);
+                if (HtmlTokenizer.isMarkup(token) && end.find()) {
+                    String pre_full = pre.substring(preStart);
+                    String pre_inner = pre.substring(preInnerStart, pre.length() - token.length() + end.start());
+                    emitHtml(pre.substring(0, preStart) + encodePre(pre_full, pre_inner));
+                    pre = null;
+                }
             }
             
+            @Override
+            public void end() {
+                // a pre which is never closed is left as it is
+                if (pre != null) {
+                    emitHtml(pre.toString());
+                    pre = null;
+                }
+                super.end();
+            }
+        };
+    }
+    
+    private static String encodePre(String pre_full, String pre_inner) {
+        Matcher code_matcher = CODE_PATTERN.matcher(pre_inner);
+        if (code_matcher.find()) {
+            String code_inner = code_matcher.group(1);
+            return pre_full.replace(code_inner, encode(code_inner));
         }
-        pre_matcher.appendTail(result);
-        
-        return result.toString();
+        return pre_full.replace(pre_inner, encode(pre_inner));
     }
 
     // we only have to encode the opening angle bracket for valid html/xhtml
     private static String encode(String code_inner) {
-        return Matcher.quoteReplacement(code_inner.replace("<", LT)); // matchers hate $ and \
+        return code_inner.replace("<", LT);
     }
 
 }
@@ -24,13 +24,16 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
 import org.apache.roller.util.RegexUtil;
 
 
 /**
- * Obfuscate email addresses in entry text.
+ * Obfuscate email addresses in entry text.  Addresses are looked for a token
+ * at a time, both in text and in the attributes of tags.
  */
-public class ObfuscateEmailPlugin implements WeblogEntryPlugin {
+public class ObfuscateEmailPlugin implements StreamingWeblogEntryPlugin {
     
     private static final Log mLogger = LogFactory.getLog(ObfuscateEmailPlugin.class);
     
@@ -62,8 +65,14 @@ public class ObfuscateEmailPlugin implements WeblogEntryPlugin {
     
     
     @Override
-    public String render(WeblogEntry entry, String str) {
-        return RegexUtil.encodeEmail(str);
+    public HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next) {
+        return new HtmlTokenFilter(next) {
+            @Override
+            public void token(String token) {
+                // every address has an @, so don't bother matching without one
+                next.token(token.indexOf('@') < 0 ? token : RegexUtil.encodeEmail(token));
+            }
+        };
     }
     
 }
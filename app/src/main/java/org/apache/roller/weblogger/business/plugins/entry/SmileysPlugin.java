@@ -29,11 +29,15 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+import org.apache.roller.weblogger.util.HtmlTokenizer;
 
 /**
- * Converts ascii emoticons into HTML image tags.
+ * Converts ascii emoticons into HTML image tags.  Only text is converted,
+ * emoticons are left alone inside tags.
  */
-public class SmileysPlugin implements WeblogEntryPlugin {
+public class SmileysPlugin implements StreamingWeblogEntryPlugin {
     
     private static final Log log = LogFactory.getLog(SmileysPlugin.class);
 
@@ -112,13 +116,42 @@ public class SmileysPlugin implements WeblogEntryPlugin {
      * Find occurences of ascii emoticons and turn them into HTML image pointers.
      */
     @Override
-    public String render(WeblogEntry entry, String text) {
-        Matcher matcher;
-        for (int i=0; i<smileyPatterns.length; i++) {
-            matcher = smileyPatterns[i].matcher(text);
-            text = matcher.replaceAll(imageTags[i]);
+    public HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next) {
+        return new HtmlTokenFilter(next) {
+            @Override
+            public void token(String token) {
+                if (HtmlTokenizer.isMarkup(token)) {
+                    next.token(token);
+                } else {
+                    replaceSmileys(token, 0, next);
+                }
+            }
+        };
+    }
+    
+    
+    /*
+     * Replace emoticons in text, trying each pattern in turn starting from
+     * the given one.  The text between the emoticons a pattern matches is
+     * left for the patterns after it.
+     */
+    private static void replaceSmileys(String text, int first, HtmlTokenHandler next) {
+        for (int i = first; i < smileyPatterns.length; i++) {
+            Matcher matcher = smileyPatterns[i].matcher(text);
+            if (matcher.find()) {
+                int start = 0;
+                do {
+                    replaceSmileys(text.substring(start, matcher.start()), i + 1, next);
+                    next.token(imageTags[i]);
+                    start = matcher.end();
+                } while (matcher.find());
+                replaceSmileys(text.substring(start), i + 1, next);
+                return;
+            }
+        }
+        if (!text.isEmpty()) {
+            next.token(text);
         }
-        return text;
     }
     
     
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins.entry;
+
+import java.util.Collections;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+
+
+/**
+ * A weblog entry plugin which transforms entry text as a stream of tokens.
+ *
+ * Rather than rewriting the whole text and handing the result to the next
+ * plugin, which has to scan it all over again, streaming plugins are chained
+ * together behind a single tokenizer so that the text is split up once and
+ * written once, see {@link WeblogEntryPluginPipeline}.
+ */
+public interface StreamingWeblogEntryPlugin extends WeblogEntryPlugin {
+    
+    /**
+     * Start transforming a part of an entry.
+     *
+     * The tokens of the part are handed to the handler returned, which passes
+     * the transformed tokens on to next, and must pass on end() as well.
+     *
+     * @param entry       Entry being rendered.
+     * @param next        Handler for the transformed tokens.
+     * @return            Handler for the tokens to transform.
+     */
+    HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next);
+    
+    
+    /**
+     * Apply plugin on its own to the specified text.
+     */
+    @Override
+    default String render(WeblogEntry entry, String str) {
+        return WeblogEntryPluginPipeline.stream(entry, Collections.singletonList(this), str, false);
+    }
+    
+}
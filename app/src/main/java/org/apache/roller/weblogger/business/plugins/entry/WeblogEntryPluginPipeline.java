@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins.entry;
+
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.HTMLSanitizer;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+import org.apache.roller.weblogger.util.HtmlTokenizer;
+
+
+/**
+ * Applies a chain of weblog entry plugins to entry text in a single pass.
+ *
+ * The text is split up into tokens once, and the tokens flow through each
+ * plugin in turn and then through the sanitizer, which writes the one output
+ * buffer.  Plugins which don't stream are handed the text which reaches
+ * them as a whole, and their result is split up again for the rest of the
+ * chain.
+ */
+public final class WeblogEntryPluginPipeline {
+    
+    private static final Log log = LogFactory.getLog(WeblogEntryPluginPipeline.class);
+    
+    
+    private WeblogEntryPluginPipeline() {
+        // Utility class
+    }
+    
+    
+    /**
+     * Apply plugins in order to the text, then sanitize the result if XSS
+     * protection is enabled.
+     */
+    public static String render(WeblogEntry entry, List<? extends WeblogEntryPlugin> plugins, String str) {
+        return render(entry, plugins, str, HTMLSanitizer.isXssEnabled());
+    }
+    
+    
+    /**
+     * Apply plugins in order to the text, then sanitize the result if asked.
+     *
+     * If a plugin fails part way through, the plugins are applied again one
+     * after the other, leaving out any that fail, as they were before.
+     */
+    public static String render(WeblogEntry entry, List<? extends WeblogEntryPlugin> plugins,
+            String str, boolean sanitize) {
+        
+        if (str == null) {
+            return null;
+        }
+        try {
+            return stream(entry, plugins, str, sanitize);
+        } catch (RuntimeException e) {
+            log.error("ERROR streaming text through plugins, applying them one by one", e);
+        }
+        
+        String ret = str;
+        for (WeblogEntryPlugin plugin : plugins) {
+            try {
+                ret = plugin.render(entry, ret);
+            } catch (RuntimeException e) {
+                log.error("ERROR from plugin: " + plugin.getName(), e);
+            }
+        }
+        return (sanitize && ret != null) ? HTMLSanitizer.sanitize(ret) : ret;
+    }
+    
+    
+    static String stream(WeblogEntry entry, List<? extends WeblogEntryPlugin> plugins,
+            String str, boolean sanitize) {
+        
+        if (plugins.isEmpty() && !sanitize) {
+            return str;
+        }
+        
+        StringBuilder out = null;
+        HTMLSanitizer.TokenSanitizer sanitizer = null;
+        HtmlTokenHandler handler;
+        if (sanitize) {
+            sanitizer = HTMLSanitizer.htmlSanitizer();
+            handler = sanitizer;
+        } else {
+            out = new StringBuilder(str.length() + 32);
+            handler = out::append;
+        }
+        
+        // build the chain from the end, so that each plugin knows its next
+        for (int i = plugins.size() - 1; i >= 0; i--) {
+            WeblogEntryPlugin plugin = plugins.get(i);
+            if (plugin instanceof StreamingWeblogEntryPlugin) {
+                handler = ((StreamingWeblogEntryPlugin) plugin).filter(entry, handler);
+            } else {
+                handler = new WholeTextHandler(plugin, entry, handler);
+            }
+        }
+        
+        HtmlTokenizer.tokenize(str, handler);
+        handler.end();
+        
+        return sanitize ? sanitizer.getResult().getHtml() : out.toString();
+    }
+    
+    
+    /**
+     * Collects the text for a plugin which only renders whole strings.
+     */
+    private static final class WholeTextHandler extends HtmlTokenFilter {
+        
+        private final WeblogEntryPlugin plugin;
+        private final WeblogEntry entry;
+        private final StringBuilder text = new StringBuilder();
+        
+        WholeTextHandler(WeblogEntryPlugin plugin, WeblogEntry entry, HtmlTokenHandler next) {
+            super(next);
+            this.plugin = plugin;
+            this.entry = entry;
+        }
+        
+        @Override
+        public void token(String token) {
+            text.append(token);
+        }
+        
+        @Override
+        public void end() {
+            String ret = plugin.render(entry, text.toString());
+            if (ret != null) {
+                emitHtml(ret);
+            }
+            super.end();
+        }
+    }
+    
+}
@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,18 +29,24 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.HitCountQueue;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
-import org.apache.roller.weblogger.business.WeblogManager;
-import org.apache.roller.weblogger.pojos.Weblog;
 
 
 /**
  * A job which gathers the currently queued hits from the HitCountQueue and
  * stores them in the database.
+ *
+ * Hits are stored and committed in batches of weblogs, so that a batch which
+ * fails doesn't take the others down with it.  The hits of a failed batch
+ * are given back to the queue and tried again on the next run.
  */
 public class HitCountProcessingJob implements Job {
     
     private static Log log = LogFactory.getLog(HitCountProcessingJob.class);
     
+    // how many weblogs to store hits for in one transaction, and to update
+    // with a single statement
+    private static final int BATCH_SIZE = 250;
+    
     
     public HitCountProcessingJob() {}
     
@@ -53,56 +60,44 @@ public class HitCountProcessingJob implements Job {
     @Override
     public void execute() {
         
-        WeblogManager wmgr = WebloggerFactory.getWeblogger().getWeblogManager();
         WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
         
         HitCountQueue hitCounter = HitCountQueue.getInstance();
         
-        // first get the current set of hits
-        List<String> currentHits = hitCounter.getHits();
-        
-        // now reset the queued hits
-        hitCounter.resetHits();
+        // take the current hits, already tallied by weblog handle
+        Map<String, Long> hitsTally = hitCounter.drainHits();
+
+        long startTime = System.currentTimeMillis();
         
-        // tally the counts, grouped by weblog handle
-        Map<String, Long> hitsTally = new HashMap<>();
-        for (String weblogHandle : currentHits) {
-            Long count = hitsTally.get(weblogHandle);
-            if(count == null) {
-                count = 1L;
-            } else {
-                count = count + 1;
+        // store the tallied hits in the db
+        List<String> handles = new ArrayList<>(hitsTally.keySet());
+        for (int start = 0; start < handles.size(); start += BATCH_SIZE) {
+            Map<String, Long> batch = new HashMap<>();
+            for (String handle : handles.subList(start, Math.min(handles.size(), start + BATCH_SIZE))) {
+                batch.put(handle, hitsTally.get(handle));
             }
-            hitsTally.put(weblogHandle, count);
-        }
-
-        // iterate over the tallied hits and store them in the db
-        try {
-            long startTime = System.currentTimeMillis();
             
-            Weblog weblog;
-            for (Map.Entry<String, Long> entry : hitsTally.entrySet()) {
-                try {
-                    weblog = wmgr.getWeblogByHandle(entry.getKey());
-                    emgr.incrementHitCount(weblog, entry.getValue().intValue());
-                } catch (WebloggerException ex) {
-                    log.error(ex);
-                }
-            }
+            try {
+                // a few statements for all weblogs, instead of a lookup,
+                // modify and save for each one
+                emgr.incrementHitCounts(batch);
 
-            // flush the results to the db
-            WebloggerFactory.getWeblogger().flush();
-            
-            long endTime = System.currentTimeMillis();
-            
-            log.debug("Completed: "+ (endTime-startTime)/ RollerConstants.SEC_IN_MS + " secs");
-            
-        } catch (WebloggerException ex) {
-            log.error("Error persisting updated hit counts", ex);
-        } finally {
-            // release session
-            WebloggerFactory.getWeblogger().release();
+                // flush the results to the db
+                WebloggerFactory.getWeblogger().flush();
+                
+            } catch (WebloggerException | RuntimeException ex) {
+                log.error("Error persisting hit counts for " + batch.size()
+                        + " weblogs, they will be retried", ex);
+                hitCounter.requeueHits(batch);
+            } finally {
+                // release session, rolling back whatever failed
+                WebloggerFactory.getWeblogger().release();
+            }
         }
+        
+        long endTime = System.currentTimeMillis();
+        
+        log.debug("Completed: "+ (endTime-startTime)/ RollerConstants.SEC_IN_MS + " secs");
     }
     
     
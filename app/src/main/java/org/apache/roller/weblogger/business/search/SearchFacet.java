@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+/**
+ * Ways search hits can be counted up, to show how many hits there are in
+ * each weblog, category, tag or month alongside the results.
+ */
+public enum SearchFacet {
+
+    /** Hits per weblog, by weblog handle. */
+    WEBLOG,
+
+    /** Hits per category, by category name. */
+    CATEGORY,
+
+    /** Hits per tag, by tag name. */
+    TAG,
+
+    /** Hits per month of publication, as yyyy-MM. */
+    MONTH
+}
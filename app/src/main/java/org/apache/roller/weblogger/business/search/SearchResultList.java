@@ -20,21 +20,32 @@
 
 package org.apache.roller.weblogger.business.search;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
 public class SearchResultList {
     int limit;
     int offset;
+    int totalHits;
+    Supplier<Map<SearchFacet, Map<String, Integer>>> facetCounter = Collections::emptyMap;
+    Map<SearchFacet, Map<String, Integer>> facets;
     Set<String> categories;
     List<WeblogEntryWrapper> results;
     public SearchResultList(
         List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset) {
+        this(results, categories, limit, offset, offset + results.size());
+    }
+    public SearchResultList(
+        List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset, int totalHits) {
         this.results = results;
         this.categories = categories;
         this.limit = limit;
         this.offset = offset;
+        this.totalHits = totalHits;
     }
     public int getLimit() {
         return limit;
@@ -48,4 +59,26 @@ public class SearchResultList {
     public Set<String> getCategories() {
         return categories;
     }
+    /**
+     * Number of hits across all pages, which may be a lower bound if there
+     * are a great many.
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+    /**
+     * Hits counted up by each facet asked for in the search criteria, keyed
+     * by facet value in order of the most hits.  Hits are counted the first
+     * time the counts are asked for.
+     */
+    public synchronized Map<SearchFacet, Map<String, Integer>> getFacets() {
+        if (facets == null) {
+            facets = facetCounter.get();
+        }
+        return facets;
+    }
+    public synchronized void setFacetCounter(Supplier<Map<SearchFacet, Map<String, Integer>>> facetCounter) {
+        this.facetCounter = facetCounter;
+        this.facets = null;
+    }
 }
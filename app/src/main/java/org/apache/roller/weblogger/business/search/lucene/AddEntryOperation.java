@@ -75,6 +75,7 @@ public class AddEntryOperation extends WriteToIndexOperation {
         try {
             if (writer != null) {
                 writer.addDocument(getDocument(data));
+                manager.entryChanged(data.getId());
             }
         } catch (IOException e) {
             logger.error("Problems adding doc to index", e);
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.roller.weblogger.business.search.SearchFacet;
+
+/**
+ * Counts up the hits of a search by facet, reading the facet doc values of
+ * every hit in a single pass over the hits.
+ *
+ * Counts are kept by ordinal while collecting, for each segment, and only
+ * turned into values once collecting is done.
+ */
+class FacetCounter implements CollectorManager<FacetCounter.FacetCollector, Map<SearchFacet, Map<String, Integer>>> {
+
+    private final Set<SearchFacet> facets;
+
+    // max values returned per facet, the ones with the most hits
+    private final int maxValues;
+
+    FacetCounter(Set<SearchFacet> facets, int maxValues) {
+        this.facets = facets;
+        this.maxValues = maxValues;
+    }
+
+    static String getField(SearchFacet facet) {
+        switch (facet) {
+            case WEBLOG:
+                return FieldConstants.FACET_WEBLOG;
+            case CATEGORY:
+                return FieldConstants.FACET_CATEGORY;
+            case TAG:
+                return FieldConstants.FACET_TAG;
+            case MONTH:
+                return FieldConstants.FACET_MONTH;
+            default:
+                throw new IllegalArgumentException("Unknown facet " + facet);
+        }
+    }
+
+    @Override
+    public FacetCollector newCollector() {
+        return new FacetCollector();
+    }
+
+    @Override
+    public Map<SearchFacet, Map<String, Integer>> reduce(Collection<FacetCollector> collectors)
+            throws IOException {
+
+        Map<SearchFacet, Map<String, Integer>> totals = new EnumMap<>(SearchFacet.class);
+        for (SearchFacet facet : facets) {
+            totals.put(facet, new HashMap<>());
+        }
+        for (FacetCollector collector : collectors) {
+            for (SegmentCounts segment : collector.segments) {
+                segment.addTo(totals.get(segment.facet));
+            }
+        }
+
+        Map<SearchFacet, Map<String, Integer>> result = new EnumMap<>(SearchFacet.class);
+        for (Map.Entry<SearchFacet, Map<String, Integer>> facet : totals.entrySet()) {
+            result.put(facet.getKey(), top(facet.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * The values with the most hits, most first and then by value.
+     */
+    private Map<String, Integer> top(Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            if (top.size() >= maxValues) {
+                break;
+            }
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    final class FacetCollector implements Collector {
+
+        private final List<SegmentCounts> segments = new ArrayList<>();
+
+        @Override
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+
+            List<SegmentCounts> leafCounts = new ArrayList<>(facets.size());
+            for (SearchFacet facet : facets) {
+                SortedSetDocValues values = DocValues.getSortedSet(context.reader(), getField(facet));
+                if (values.getValueCount() > 0) {
+                    leafCounts.add(new SegmentCounts(facet, values));
+                }
+            }
+            segments.addAll(leafCounts);
+
+            return new LeafCollector() {
+                @Override
+                public void setScorer(Scorable scorer) {
+                    // scores are not needed
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    for (SegmentCounts counts : leafCounts) {
+                        counts.collect(doc);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+
+    /**
+     * Hits per ordinal of one facet in one segment.
+     */
+    private static final class SegmentCounts {
+
+        private final SearchFacet facet;
+        private final SortedSetDocValues values;
+        private final int[] counts;
+
+        SegmentCounts(SearchFacet facet, SortedSetDocValues values) {
+            this.facet = facet;
+            this.values = values;
+            this.counts = new int[(int) values.getValueCount()];
+        }
+
+        void collect(int doc) throws IOException {
+            if (values.advanceExact(doc)) {
+                for (int i = 0; i < values.docValueCount(); i++) {
+                    counts[(int) values.nextOrd()]++;
+                }
+            }
+        }
+
+        void addTo(Map<String, Integer> totals) throws IOException {
+            for (int ord = 0; ord < counts.length; ord++) {
+                if (counts[ord] > 0) {
+                    totals.merge(values.lookupOrd(ord).utf8ToString(), counts[ord], Integer::sum);
+                }
+            }
+        }
+    }
+}
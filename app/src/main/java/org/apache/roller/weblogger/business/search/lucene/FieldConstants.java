@@ -43,4 +43,10 @@ public final class FieldConstants {
     public static final String CONSTANT_V = "v";
     public static final String WEBSITE_HANDLE = "handle";
     public static final String LOCALE = "locale";
+
+    // doc values which search hits are counted up by
+    public static final String FACET_WEBLOG = "facet_weblog";
+    public static final String FACET_CATEGORY = "facet_cat";
+    public static final String FACET_TAG = "facet_tag";
+    public static final String FACET_MONTH = "facet_month";
 }
@@ -20,24 +20,24 @@
 
 package org.apache.roller.weblogger.business.search.lucene;
 
-import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.util.BytesRef;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryTag;
 
 /**
  * This is the base class for all index operation. These operations include:<br>
@@ -56,7 +56,6 @@ public abstract class IndexOperation implements Runnable {
     // ~ Instance fields
     // ========================================================
     protected LuceneIndexManager manager;
-    private IndexWriter writer;
 
     // ~ Constructors
     // ===========================================================
@@ -135,10 +134,9 @@ public abstract class IndexOperation implements Runnable {
         doc.add(new StringField(FieldConstants.UPDATED, data.getUpdateTime()
                 .toString(), Field.Store.YES));
 
-        // keyword
+        // publish time in milliseconds, SearchOperation sorts results by it
         if (data.getPubTime() != null) {
-            // SearchOperation sorts results by date
-            doc.add(new SortedDocValuesField(FieldConstants.PUBLISHED, new BytesRef(data.getPubTime().toString())));
+            doc.add(new NumericDocValuesField(FieldConstants.PUBLISHED, data.getPubTime().getTime()));
         }
 
         // index Category, needs to be in lower case as it is used in a term
@@ -148,6 +146,26 @@ public abstract class IndexOperation implements Runnable {
                     .getName().toLowerCase(), Field.Store.YES));
         }
 
+        // facets, for counting up hits
+        doc.add(new SortedSetDocValuesField(FieldConstants.FACET_WEBLOG,
+                new BytesRef(data.getWebsite().getHandle())));
+        if (categorydata != null) {
+            doc.add(new SortedSetDocValuesField(FieldConstants.FACET_CATEGORY,
+                    new BytesRef(categorydata.getName())));
+        }
+        if (data.getTags() != null) {
+            for (WeblogEntryTag tag : data.getTags()) {
+                doc.add(new SortedSetDocValuesField(FieldConstants.FACET_TAG,
+                        new BytesRef(tag.getName())));
+            }
+        }
+        if (data.getPubTime() != null) {
+            SimpleDateFormat month = new SimpleDateFormat("yyyy-MM");
+            month.setTimeZone(data.getWebsite().getTimeZoneInstance());
+            doc.add(new SortedSetDocValuesField(FieldConstants.FACET_MONTH,
+                    new BytesRef(month.format(data.getPubTime()))));
+        }
+
         // index Comments, unstored
         doc.add(new TextField(FieldConstants.C_CONTENT, commentContent,
                 Field.Store.NO));
@@ -164,39 +182,24 @@ public abstract class IndexOperation implements Runnable {
     }
 
     /**
-     * Begin writing.
+     * Begin writing.  The writer is shared with other operations and owned
+     * by the manager, so it must not be closed.
      * 
-     * @return the index writer
+     * @return the index writer, or null if the index is not available
      */
     protected IndexWriter beginWriting() {
-        try {
-
-            LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
-                    LuceneIndexManager.getAnalyzer(),
-                    WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount"));
-
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-
-            writer = new IndexWriter(manager.getIndexDirectory(), config);
-
-        } catch (IOException e) {
-            logger.error("ERROR creating writer", e);
+        IndexWriter writer = manager.getIndexWriter();
+        if (writer == null) {
+            logger.error("ERROR index writer is not available");
         }
-
         return writer;
     }
 
     /**
-     * End writing.
+     * End writing, letting the manager know that the index has changed.
      */
     protected void endWriting() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                logger.error("ERROR closing writer", e);
-            }
-        }
+        manager.indexChanged();
     }
 
     /**
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.apache.lucene.store.Directory;
+
+/**
+ * Where the search index is kept.  The store is chosen with the
+ * search.index.store.class property and opens the Lucene directory for each
+ * index the manager uses: the live index in search.index.dir and the shadow
+ * index a rebuild is made in next to it.
+ *
+ * Whatever the store, an index belongs to a directory on disk, which also
+ * holds the consistency marker and rebuild checkpoints, and is renamed when
+ * switching over to a rebuilt index.
+ */
+public interface IndexStore {
+
+    /**
+     * Open the index kept in a directory on disk, which may not exist yet.
+     */
+    Directory open(Path path) throws IOException;
+
+    /**
+     * Close an index once its writer has been closed, leaving it in the
+     * directory on disk it was opened from.
+     */
+    default void close(Directory directory, Path path) throws IOException {
+        directory.close();
+    }
+
+    /**
+     * True if commits are written to disk as they are made, so that an
+     * interrupted rebuild can carry on from its last checkpoint.
+     */
+    default boolean isPersistent() {
+        return true;
+    }
+
+}
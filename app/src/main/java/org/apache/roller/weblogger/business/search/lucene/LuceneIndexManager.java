@@ -23,14 +23,24 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 import org.apache.commons.beanutils.ConstructorUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,11 +49,18 @@ import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.roller.weblogger.WebloggerException;
@@ -63,6 +80,20 @@ import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 /**
  * Lucene implementation of IndexManager. This is the central entry point into
  * the Lucene searching API.
+ *
+ * The manager owns a single IndexWriter which is kept open for as long as
+ * the index is in use and shared by all index operations.  Searches use
+ * near-real-time searchers opened from that writer, which are refreshed
+ * every search.index.refreshInterval milliseconds, and changes are committed
+ * to disk every search.index.commitInterval seconds.
+ *
+ * Unless search.index.rebuild.shadow is false, the whole index is rebuilt
+ * in a shadow directory next to the index while the index carries on serving
+ * searches and taking changes, and the manager switches over to it once it is
+ * complete.  Changes made meanwhile are recorded and replayed into it first.
+ *
+ * How the index is kept, on disk or in memory, is up to the IndexStore named
+ * by search.index.store.class.
  * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  * @author mraible (formatting and making indexDir configurable)
@@ -70,7 +101,6 @@ import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 @com.google.inject.Singleton
 public class LuceneIndexManager implements IndexManager {
 
-    private IndexReader reader;
     private static final String INDEX_ERROR_MSG = "Problem accessing index directory";
     private final Weblogger roller;
 
@@ -86,6 +116,48 @@ public class LuceneIndexManager implements IndexManager {
 
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
 
+    // how long changes may take to show up in searches, in milliseconds
+    private final long refreshInterval;
+
+    // how often changes are committed to disk, in seconds
+    private final long commitInterval;
+
+    private final double ramBufferSize;
+
+    // true to rebuild the whole index in a shadow directory
+    private final boolean shadowRebuild;
+
+    // true while the index is one from before publish times were indexed
+    // as numbers, until it has been rebuilt
+    private volatile boolean legacyIndexFormat = false;
+
+    private final IndexStore store;
+
+    // shared by searches, for parsing queries
+    private final Analyzer searchAnalyzer;
+
+    private volatile Directory directory;
+    private volatile IndexWriter writer;
+    private volatile SearcherManager searcherManager;
+    private ScheduledExecutorService maintenance;
+
+    // true if the index has changes which searches may not see yet
+    private final AtomicBoolean refreshNeeded = new AtomicBoolean(false);
+
+    // true if the index has changes which are not yet committed
+    private final AtomicBoolean commitNeeded = new AtomicBoolean(false);
+
+    // rebuilds which were started but haven't completed, the index is
+    // incomplete until they are run again
+    private final AtomicInteger unfinishedRebuilds = new AtomicInteger(0);
+
+    // held while the whole index is rebuilt in the shadow directory
+    private final Lock shadowRebuildLock = new ReentrantLock();
+
+    // changes to the index while it is rebuilt in the shadow directory,
+    // null while it isn't
+    private volatile ShadowChangeLog shadowChanges;
+
     /**
      * Creates a new lucene index manager. This should only be created once.
      * Creating the index manager more than once will definitely result in
@@ -96,6 +168,17 @@ public class LuceneIndexManager implements IndexManager {
      */
     @com.google.inject.Inject
     protected LuceneIndexManager(Weblogger roller) {
+        // we also need to know what our index directory is
+        // Note: system property expansion is now handled by WebloggerConfig
+        this(roller, WebloggerConfig.getProperty("search.index.dir").replace('/', File.separatorChar),
+                instantiateIndexStore());
+    }
+
+    /**
+     * Creates a lucene index manager which keeps its index in the given
+     * directory and store, rather than the configured ones.
+     */
+    LuceneIndexManager(Weblogger roller, String indexDir, IndexStore store) {
         this.roller = roller;
 
         // check config to see if the internal search is enabled
@@ -104,14 +187,22 @@ public class LuceneIndexManager implements IndexManager {
             this.searchEnabled = false;
         }
 
-        // we also need to know what our index directory is
-        // Note: system property expansion is now handled by WebloggerConfig
-        String searchIndexDir = WebloggerConfig.getProperty("search.index.dir");
-        this.indexDir = searchIndexDir.replace('/', File.separatorChar);
+        this.indexDir = indexDir;
+
+        this.refreshInterval = WebloggerConfig.getIntProperty("search.index.refreshInterval", 1000);
+        this.commitInterval = WebloggerConfig.getIntProperty("search.index.commitInterval", 60);
+        this.ramBufferSize = WebloggerConfig.getIntProperty("search.index.ramBufferSizeMB",
+                (int) IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB);
+        this.shadowRebuild = WebloggerConfig.getBooleanProperty("search.index.rebuild.shadow", true);
+        this.store = store;
+        this.searchAnalyzer = instantiateAnalyzer();
 
         // a little debugging
         logger.info("search enabled: " + this.searchEnabled);
         logger.info("index dir: " + this.indexDir);
+        logger.info("index store: " + this.store.getClass().getName());
+        logger.info("index refresh interval: " + this.refreshInterval + "ms, commit interval: "
+                + this.commitInterval + "s");
 
         String test = indexDir + File.separator + ".index-inconsistent";
         indexConsistencyMarker = new File(test);
@@ -131,21 +222,48 @@ public class LuceneIndexManager implements IndexManager {
     }
 
     private void initializeSearchIndex() {
-        // delete index if inconsistency marker exists
-        if (indexConsistencyMarker.exists()) {
+        // an unfinished rebuild is carried on from its checkpoint
+        if (hasRebuildCheckpoint()) {
+            logger.info("Index rebuild was interrupted, it will be resumed");
+            inconsistentAtStartup = true;
+            if (!indexConsistencyMarker.exists()) {
+                createIndexDirAndMarker();
+            }
+        } else if (indexConsistencyMarker.exists()) {
+            // delete index if inconsistency marker exists, unless it can
+            // keep serving searches while it is rebuilt in a shadow directory
             logger.debug("Index inconsistent: marker exists");
             inconsistentAtStartup = true;
-            deleteIndex();
+            if (!shadowRebuild) {
+                deleteIndex();
+            }
         } else {
             createIndexDirAndMarker();
         }
 
+        try {
+            directory = store.open(Path.of(indexDir));
+        } catch (IOException e) {
+            logger.error(INDEX_ERROR_MSG, e);
+            return;
+        }
+
         if (indexExists()) {
             openExistingIndex();
         } else {
             createNewIndex();
         }
 
+        // left behind if the server stopped while switching to a rebuilt index
+        deleteDirectory(getOldIndexDir());
+
+        try {
+            openWriter();
+        } catch (IOException e) {
+            logger.error("Error opening index writer, search is not available", e);
+            return;
+        }
+
         if (inconsistentAtStartup) {
             rebuildInconsistentIndex();
         } else {
@@ -172,9 +290,25 @@ public class LuceneIndexManager implements IndexManager {
     private void openExistingIndex() {
         // test if the index is readable, if the version is outdated or it fails we
         // rebuild.
-        try {
-            synchronized (this) {
-                reader = DirectoryReader.open(getIndexDirectory());
+        try (DirectoryReader reader = DirectoryReader.open(getIndexDirectory())) {
+            logger.debug("Index contains " + reader.numDocs() + " documents");
+
+            FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+            FieldInfo published = fieldInfos.fieldInfo(FieldConstants.PUBLISHED);
+            if (reader.numDocs() > 0 && fieldInfos.fieldInfo(FieldConstants.FACET_WEBLOG) == null) {
+                // searches work, but hits can't be counted by facet until rebuilt
+                logger.info("Search index has no facets, scheduling rebuild.");
+                inconsistentAtStartup = true;
+            }
+            if (published != null && published.getDocValuesType() != DocValuesType.NUMERIC) {
+                logger.info("Search index is in an old format, scheduling rebuild.");
+                inconsistentAtStartup = true;
+                if (shadowRebuild) {
+                    // keeps serving searches until the rebuilt index takes over
+                    legacyIndexFormat = true;
+                } else {
+                    deleteIndex();
+                }
             }
         } catch (IOException | IllegalArgumentException ex) { // IAE for incompatible codecs
             logger.warn("Failed to open search index, scheduling rebuild.", ex);
@@ -187,7 +321,223 @@ public class LuceneIndexManager implements IndexManager {
         logger.debug("Creating index");
         inconsistentAtStartup = true;
         deleteIndex();
-        createIndex(getIndexDirectory());
+    }
+
+    /**
+     * Open the writer shared by all index operations, creating the index if
+     * there is none, and start refreshing searchers and committing changes.
+     */
+    private void openWriter() throws IOException {
+
+        // an inconsistent index is about to be rebuilt, so start it afresh
+        // unless the rebuild is to carry on from where it was interrupted
+        // or the index is to keep serving searches while it is rebuilt
+        writer = newIndexWriter(directory, inconsistentAtStartup && !hasRebuildCheckpoint() && !shadowRebuild
+                ? IndexWriterConfig.OpenMode.CREATE
+                : IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        // make sure there is an index on disk, even an empty one
+        writer.commit();
+        searcherManager = newSearcherManager(writer);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SearchIndexMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (refreshInterval > 0) {
+            maintenance.scheduleWithFixedDelay(this::refresh,
+                    refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+        if (commitInterval > 0) {
+            maintenance.scheduleWithFixedDelay(this::commit,
+                    commitInterval, commitInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    private IndexWriter newIndexWriter(Directory dir, IndexWriterConfig.OpenMode mode)
+            throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(new LimitTokenCountAnalyzer(
+                getAnalyzer(), WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount")));
+        config.setOpenMode(mode);
+        config.setRAMBufferSizeMB(ramBufferSize);
+        return new IndexWriter(dir, config);
+    }
+
+    private static SearcherManager newSearcherManager(IndexWriter indexWriter) throws IOException {
+        SearcherManager manager = new SearcherManager(indexWriter, new SearcherFactory());
+        // cached hits belong to the view of the index they were found in
+        manager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+                // nothing to do until the refresh is done
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    SearchResultCache.getInstance().clear();
+                }
+            }
+        });
+        return manager;
+    }
+
+    /**
+     * True if the index is one from before publish times were indexed as
+     * numbers, which is being rebuilt meanwhile.
+     */
+    boolean isLegacyIndexFormat() {
+        return legacyIndexFormat;
+    }
+
+    /**
+     * True if rebuilds of the whole index go to a shadow directory.
+     */
+    boolean isShadowRebuild() {
+        return shadowRebuild;
+    }
+
+    /**
+     * The directory next to the index which the whole index is rebuilt in.
+     */
+    Path getShadowIndexDir() {
+        Path live = Path.of(indexDir);
+        return live.resolveSibling(live.getFileName() + ".rebuild");
+    }
+
+    private Path getOldIndexDir() {
+        Path live = Path.of(indexDir);
+        return live.resolveSibling(live.getFileName() + ".old");
+    }
+
+    /**
+     * Open a writer on the shadow directory to rebuild the whole index into.
+     * A rebuild which was interrupted is carried on, otherwise the shadow
+     * directory starts out empty.
+     */
+    IndexWriter openShadowWriter() throws IOException {
+        Path shadow = getShadowIndexDir();
+        boolean resume = RebuildCheckpoint.load(getShadowCheckpointFile()) != null;
+        if (!resume) {
+            deleteDirectory(shadow);
+        }
+        Files.createDirectories(shadow);
+        return newIndexWriter(store.open(shadow), resume
+                ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                : IndexWriterConfig.OpenMode.CREATE);
+    }
+
+    /**
+     * Held by a rebuild of the whole index in the shadow directory, so that
+     * only one such rebuild runs at a time.
+     */
+    Lock getShadowRebuildLock() {
+        return shadowRebuildLock;
+    }
+
+    /**
+     * Start recording the changes made to the index, for a rebuild in the
+     * shadow directory to replay them.
+     *
+     * @return the changes, as they are recorded
+     */
+    ShadowChangeLog startRecordingChanges() {
+        ShadowChangeLog changes = new ShadowChangeLog();
+        shadowChanges = changes;
+        return changes;
+    }
+
+    /**
+     * Stop recording the changes made to the index.
+     */
+    void stopRecordingChanges() {
+        shadowChanges = null;
+    }
+
+    /**
+     * Called by index operations once they have added or reindexed an entry.
+     */
+    void entryChanged(String id) {
+        ShadowChangeLog changes = shadowChanges;
+        if (changes != null) {
+            changes.entryChanged(id);
+        }
+    }
+
+    /**
+     * Called by index operations once they have removed an entry.
+     */
+    void entryRemoved(String id) {
+        ShadowChangeLog changes = shadowChanges;
+        if (changes != null) {
+            changes.entryRemoved(id);
+        }
+    }
+
+    /**
+     * Called by index operations once they have removed a weblog.
+     */
+    void weblogRemoved(String handle) {
+        ShadowChangeLog changes = shadowChanges;
+        if (changes != null) {
+            changes.weblogRemoved(handle);
+        }
+    }
+
+    /**
+     * Switch over to the index rebuilt in the shadow directory, closing the
+     * writer it was built with.  Must be called while holding the write lock,
+     * so that no other operation is writing to the index.  Searches carry on
+     * with the searchers they hold while the directories are switched.
+     */
+    synchronized void switchToShadowIndex(IndexWriter shadowWriter) throws IOException {
+
+        Path live = Path.of(indexDir);
+        Path shadow = getShadowIndexDir();
+        Path old = getOldIndexDir();
+
+        shadowWriter.close();
+        store.close(shadowWriter.getDirectory(), shadow);
+
+        SearcherManager oldSearcherManager = searcherManager;
+        Directory oldDirectory = directory;
+        writer.close();
+
+        boolean switched = false;
+        try {
+            deleteDirectory(old);
+            Files.move(live, old, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Files.move(shadow, live, StandardCopyOption.ATOMIC_MOVE);
+                switched = true;
+            } finally {
+                if (!switched) {
+                    // carry on with the old index
+                    Files.move(old, live, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } finally {
+            if (switched) {
+                directory = store.open(live);
+                legacyIndexFormat = false;
+                if (!indexConsistencyMarker.createNewFile()) {
+                    logger.warn("Could not create index consistency marker");
+                }
+            }
+            writer = newIndexWriter(directory, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            searcherManager = newSearcherManager(writer);
+
+            // searchers still in use on the old index keep it open until released
+            oldSearcherManager.close();
+            if (switched) {
+                oldDirectory.close();
+                deleteDirectory(old);
+
+                // reader versions start over with the rebuilt index, so hits
+                // cached from the old one could pass for its own
+                SearchResultCache.getInstance().clear();
+            }
+        }
     }
 
     private void rebuildInconsistentIndex() {
@@ -237,15 +587,19 @@ public class LuceneIndexManager implements IndexManager {
         boolean weblogSpecific = !WebloggerRuntimeConfig.isSiteWideWeblog(criteria.getWeblogHandle());
 
         executeIndexOperationNow(search);
-        if (search.getResultsCount() >= 0) {
-            TopFieldDocs docs = search.getResults();
-            ScoreDoc[] hitsArr = docs.scoreDocs;
-            return convertHitsToEntryList(
-                    hitsArr,
-                    search,
-                    criteria,
-                    weblogSpecific,
-                    urlStrategy);
+        try {
+            if (search.getResultsCount() >= 0) {
+                TopFieldDocs docs = search.getResults();
+                ScoreDoc[] hitsArr = docs.scoreDocs;
+                return convertHitsToEntryList(
+                        hitsArr,
+                        search,
+                        criteria,
+                        weblogSpecific,
+                        urlStrategy);
+            }
+        } finally {
+            search.release();
         }
         throw new WebloggerException("Error executing search");
     }
@@ -268,6 +622,14 @@ public class LuceneIndexManager implements IndexManager {
         return instantiateAnalyzer();
     }
 
+    /**
+     * The analyzer searches parse queries with.  Unlike
+     * the one returned by getAnalyzer() it is shared, and must not be closed.
+     */
+    Analyzer getSearchAnalyzer() {
+        return searchAnalyzer;
+    }
+
     private static Analyzer instantiateAnalyzer() {
         final String className = WebloggerConfig.getProperty("lucene.analyzer.class");
         try {
@@ -287,6 +649,24 @@ public class LuceneIndexManager implements IndexManager {
         return new StandardAnalyzer();
     }
 
+    private static IndexStore instantiateIndexStore() {
+        final String className = WebloggerConfig.getProperty("search.index.store.class");
+        if (className == null || className.isBlank()) {
+            return new FSIndexStore();
+        }
+        try {
+            final Class<?> clazz = Class.forName(className.trim());
+            return (IndexStore) ConstructorUtils.invokeConstructor(clazz, null);
+        } catch (final ClassNotFoundException e) {
+            logger.error("failed to lookup index store class: " + className, e);
+            return new FSIndexStore();
+        } catch (final NoSuchMethodException | InstantiationException | IllegalAccessException
+                | InvocationTargetException | ClassCastException e) {
+            logger.error("failed to instantiate index store: " + className, e);
+            return new FSIndexStore();
+        }
+    }
+
     private void scheduleIndexOperation(final IndexOperation op) {
         try {
             // only if search is enabled
@@ -317,36 +697,140 @@ public class LuceneIndexManager implements IndexManager {
         }
     }
 
-    public synchronized void resetSharedReader() {
-        reader = null;
+    /**
+     * Get the writer shared by all index operations.  It must not be closed.
+     *
+     * @return the index writer, or null if the index could not be opened.
+     */
+    public IndexWriter getIndexWriter() {
+        return writer;
+    }
+
+    /**
+     * Called by index operations once they have changed the index, so that
+     * the changes get committed and become visible to searches.
+     */
+    public void indexChanged() {
+        refreshNeeded.set(true);
+        commitNeeded.set(true);
+
+        if (refreshInterval <= 0) {
+            refresh();
+        }
+        if (commitInterval <= 0) {
+            commit();
+        }
+    }
+
+    /**
+     * Acquire a searcher on the latest refreshed view of the index.  It
+     * must be handed back with releaseSearcher() once done with.
+     */
+    public IndexSearcher acquireSearcher() throws IOException {
+        while (true) {
+            SearcherManager current = searcherManager;
+            if (current == null) {
+                throw new IOException("Search index is not available");
+            }
+            try {
+                return current.acquire();
+            } catch (AlreadyClosedException e) {
+                // a switch to a rebuilt index closes the old manager only once
+                // the new one is in place, so try again with the new one
+                if (searcherManager == current) {
+                    throw new IOException("Search index is not available", e);
+                }
+            }
+        }
     }
 
-    public synchronized IndexReader getSharedIndexReader() {
-        if (reader == null) {
+    /**
+     * Hand back a searcher.  Searchers of the index before a switch to a
+     * rebuilt one keep its reader open until they are handed back, which
+     * any manager can do as it only releases the searcher's own reader.
+     */
+    public void releaseSearcher(IndexSearcher searcher) {
+        if (searcher != null && searcherManager != null) {
             try {
-                reader = DirectoryReader.open(getIndexDirectory());
+                searcherManager.release(searcher);
             } catch (IOException ex) {
-                logger.error("Error opening DirectoryReader", ex);
-                throw new RuntimeException(ex);
+                logger.error("Error releasing searcher", ex);
+            }
+        }
+    }
+
+    private synchronized void refresh() {
+        if (refreshNeeded.getAndSet(false)) {
+            try {
+                searcherManager.maybeRefreshBlocking();
+            } catch (IOException | RuntimeException ex) {
+                refreshNeeded.set(true);
+                logger.error("Error refreshing searcher", ex);
             }
         }
-        return reader;
+    }
+
+    private synchronized void commit() {
+        if (commitNeeded.getAndSet(false)) {
+            try {
+                writer.commit();
+            } catch (IOException | RuntimeException ex) {
+                commitNeeded.set(true);
+                logger.error("Error committing index", ex);
+            }
+        }
+    }
+
+    /**
+     * Get the file recording the progress of an unfinished rebuild.
+     *
+     * @return the file, or null if the index store can't resume rebuilds.
+     */
+    Path getRebuildCheckpointFile() {
+        return store.isPersistent() ? Path.of(indexDir, RebuildCheckpoint.FILE_NAME) : null;
+    }
+
+    /**
+     * Get the file recording the progress of an unfinished rebuild in the
+     * shadow directory.
+     *
+     * @return the file, or null if the index store can't resume rebuilds.
+     */
+    Path getShadowCheckpointFile() {
+        return store.isPersistent() ? getShadowIndexDir().resolve(RebuildCheckpoint.FILE_NAME) : null;
+    }
+
+    /**
+     * True if a rebuild, in the index or in the shadow directory, was
+     * interrupted and can be carried on from its checkpoint.
+     */
+    private boolean hasRebuildCheckpoint() {
+        return RebuildCheckpoint.load(getRebuildCheckpointFile()) != null
+                || RebuildCheckpoint.load(getShadowCheckpointFile()) != null;
+    }
+
+    /**
+     * Called by rebuild operations as they start, so that the index is known
+     * to be incomplete until they finish.
+     */
+    void rebuildStarted() {
+        unfinishedRebuilds.incrementAndGet();
+    }
+
+    /**
+     * Called by rebuild operations once they have completed.
+     */
+    void rebuildFinished() {
+        unfinishedRebuilds.decrementAndGet();
     }
 
     /**
-     * Get the directory that is used by the lucene index. This method will
-     * return null if there is no index at the directory location.
+     * Get the directory that is used by the lucene index.
      * 
      * @return Directory The directory containing the index, or null if error.
      */
     public Directory getIndexDirectory() {
-
-        try {
-            return FSDirectory.open(Path.of(indexDir));
-        } catch (IOException e) {
-            logger.error(INDEX_ERROR_MSG, e);
-        }
-        return null;
+        return directory;
     }
 
     private boolean indexExists() {
@@ -358,9 +842,30 @@ public class LuceneIndexManager implements IndexManager {
         return false;
     }
 
+    private void deleteDirectory(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ex) {
+            logger.error("Unable to delete " + dir, ex);
+        }
+    }
+
     private void deleteIndex() {
-        try (FSDirectory directory = FSDirectory.open(Path.of(indexDir))) {
-            String[] files = directory.listAll();
+        // the index may be held apart from the files on disk
+        if (directory != null) {
+            try {
+                for (String file : directory.listAll()) {
+                    directory.deleteFile(file);
+                }
+            } catch (IOException ex) {
+                logger.error(INDEX_ERROR_MSG, ex);
+            }
+        }
+        try (FSDirectory fsDirectory = FSDirectory.open(Path.of(indexDir))) {
+            String[] files = fsDirectory.listAll();
             for (String file : files) {
                 Files.deleteIfExists(Path.of(indexDir, file));
             }
@@ -369,15 +874,6 @@ public class LuceneIndexManager implements IndexManager {
         }
     }
 
-    private void createIndex(Directory dir) {
-        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(
-                new LimitTokenCountAnalyzer(LuceneIndexManager.getAnalyzer(), 128)))) {
-            // IndexWriter closed automatically
-        } catch (IOException e) {
-            logger.error("Error creating index", e);
-        }
-    }
-
     @Override
     public void release() {
         // no-op
@@ -386,15 +882,35 @@ public class LuceneIndexManager implements IndexManager {
     @Override
     public void shutdown() {
 
-        indexConsistencyMarker.delete();
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
 
-        if (reader != null) {
-            try {
-                reader.close();
-            } catch (IOException ex) {
-                logger.error("Unable to close reader.", ex);
+        try {
+            if (searcherManager != null) {
+                searcherManager.close();
             }
+            if (writer != null) {
+                // commits any outstanding changes
+                writer.close();
+            }
+            if (directory != null) {
+                store.close(directory, Path.of(indexDir));
+            }
+            searchAnalyzer.close();
+        } catch (IOException ex) {
+            logger.error("Unable to close index.", ex);
+            // leave the marker in place, so the index is rebuilt on startup
+            return;
+        }
+
+        if (unfinishedRebuilds.get() > 0) {
+            // leave the marker in place, so the rebuild is run again on startup
+            logger.info("Index rebuild is unfinished, it will be run again on startup");
+            return;
         }
+
+        indexConsistencyMarker.delete();
     }
 
     /**
@@ -460,7 +976,13 @@ public class LuceneIndexManager implements IndexManager {
                 categories = categorySet;
             }
 
-            return new SearchResultList(results, categories, limit, offset);
+            SearchResultList resultList = new SearchResultList(results, categories, limit, offset,
+                    search.getResultsCount());
+            // facets are only counted if the counts are asked for
+            if (criteria.getFacets() != null && !criteria.getFacets().isEmpty()) {
+                resultList.setFacetCounter(search::countFacets);
+            }
+            return resultList;
 
         } catch (IOException e) {
             throw new WebloggerException(e);
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+/**
+ * Keeps the index on disk and memory maps it, for large sites.
+ *
+ * Index files may be loaded into memory as soon as they are opened, so that
+ * the first searches don't wait on disk, and the small segments written
+ * between commits are held in memory rather than written out and soon
+ * merged away again.
+ */
+public class MMapIndexStore implements IndexStore {
+
+    // true to load index files into memory as they are opened
+    private final boolean preload;
+
+    // largest segment, and most of them in all, kept in memory until commit
+    private final double maxCachedSegmentMB;
+    private final double maxCachedMB;
+
+    public MMapIndexStore() {
+        this.preload = WebloggerConfig.getBooleanProperty("search.index.mmap.preload", false);
+        this.maxCachedSegmentMB = WebloggerConfig.getIntProperty("search.index.mmap.maxCachedSegmentMB", 5);
+        this.maxCachedMB = WebloggerConfig.getIntProperty("search.index.mmap.maxCachedMB", 60);
+    }
+
+    @Override
+    public Directory open(Path path) throws IOException {
+        MMapDirectory mmap = new MMapDirectory(path);
+        if (preload) {
+            mmap.setPreload(MMapDirectory.ALL_FILES);
+        }
+        if (maxCachedMB <= 0) {
+            return mmap;
+        }
+        return new NRTCachingDirectory(mmap, maxCachedSegmentMB, maxCachedMB);
+    }
+
+}
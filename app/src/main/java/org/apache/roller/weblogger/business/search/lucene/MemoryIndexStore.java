@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+
+/**
+ * Keeps the index in memory, for small sites and tests.
+ *
+ * The index is loaded from its directory on disk when opened and a snapshot
+ * of its last commit is saved back there when it is closed.  Commits in
+ * between are only held in memory, so an index which wasn't closed cleanly
+ * is rebuilt from scratch at startup.
+ */
+public class MemoryIndexStore implements IndexStore {
+
+    private static final Log logger = LogFactory.getLog(MemoryIndexStore.class);
+
+    @Override
+    public Directory open(Path path) throws IOException {
+        Directory directory = new ByteBuffersDirectory();
+        if (!Files.isDirectory(path)) {
+            return directory;
+        }
+        try (FSDirectory snapshot = FSDirectory.open(path)) {
+            if (DirectoryReader.indexExists(snapshot)) {
+                Collection<String> files = SegmentInfos.readLatestCommit(snapshot).files(true);
+                for (String file : files) {
+                    directory.copyFrom(snapshot, file, file, IOContext.READONCE);
+                }
+                logger.debug("Loaded " + files.size() + " index files from " + path);
+            }
+        } catch (IOException e) {
+            directory.close();
+            throw e;
+        }
+        return directory;
+    }
+
+    @Override
+    public void close(Directory directory, Path path) throws IOException {
+        try {
+            if (DirectoryReader.indexExists(directory)) {
+                saveSnapshot(directory, path);
+            }
+        } finally {
+            directory.close();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * Copy the last commit to disk, replacing the snapshot there.  The
+     * segments file, which makes the other files an index, is copied last.
+     */
+    private static void saveSnapshot(Directory directory, Path path) throws IOException {
+        Files.createDirectories(path);
+        SegmentInfos commit = SegmentInfos.readLatestCommit(directory);
+        String segmentsFile = commit.getSegmentsFileName();
+
+        try (FSDirectory snapshot = FSDirectory.open(path)) {
+            Set<String> files = new HashSet<>(commit.files(true));
+            List<String> copied = new ArrayList<>();
+            for (String file : files) {
+                if (!file.equals(segmentsFile)) {
+                    copyFile(directory, snapshot, file);
+                    copied.add(file);
+                }
+            }
+            snapshot.sync(copied);
+
+            copyFile(directory, snapshot, segmentsFile);
+            snapshot.sync(List.of(segmentsFile));
+            snapshot.syncMetaData();
+
+            // drop what is left of the old snapshot, but not the marker and
+            // checkpoint files kept alongside the index
+            for (String file : snapshot.listAll()) {
+                if (!files.contains(file) && !file.startsWith(".")) {
+                    snapshot.deleteFile(file);
+                }
+            }
+        }
+        logger.debug("Saved index snapshot to " + path);
+    }
+
+    private static void copyFile(Directory from, FSDirectory to, String file) throws IOException {
+        Files.deleteIfExists(to.getDirectory().resolve(file));
+        to.copyFrom(from, file, file, IOContext.DEFAULT);
+    }
+
+}
@@ -88,6 +88,7 @@ public class ReIndexEntryOperation extends WriteToIndexOperation {
 
                 // Add Doc
                 writer.addDocument(getDocument(data));
+                manager.entryChanged(data.getId());
             }
         } catch (IOException e) {
             logger.error("Problems adding/deleting doc to index", e);
@@ -21,6 +21,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
+ * An operation that reads from the index.  Reads go through near-real-time
+ * searchers, which see a fixed view of the index, so they do not need to
+ * wait for writes to finish.
+ *
  * @author aim4min
  */
 public abstract class ReadFromIndexOperation extends IndexOperation {
@@ -34,13 +38,9 @@ public abstract class ReadFromIndexOperation extends IndexOperation {
     @Override
     public final void run() {
         try {
-            manager.getReadWriteLock().readLock().lock();
             doRun();
-
         } catch (Exception e) {
-            logger.error("Error acquiring read lock on index", e);
-        } finally {
-            manager.getReadWriteLock().readLock().unlock();
+            logger.error("Error reading from index", e);
         }
     }
     
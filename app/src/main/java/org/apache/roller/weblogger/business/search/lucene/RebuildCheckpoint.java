@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Records how far a rebuild of the index got, so that a rebuild which was
+ * interrupted by a crash or shutdown can carry on where it left off rather
+ * than start over.  A checkpoint is only written once everything up to it
+ * has been committed to the index.
+ *
+ * No checkpoints are kept where the checkpoint file is null, which is the
+ * case when the index store doesn't write commits to disk.
+ */
+class RebuildCheckpoint {
+
+    // name of the file the checkpoint is kept in, in the index directory
+    static final String FILE_NAME = ".rebuild-checkpoint";
+
+    // used as the scope of rebuilds of the whole site
+    static final String ALL_WEBLOGS = "*";
+
+    private final String scope;
+    private final String lastId;
+    private final long indexed;
+
+    RebuildCheckpoint(String scope, String lastId, long indexed) {
+        this.scope = scope;
+        this.lastId = lastId;
+        this.indexed = indexed;
+    }
+
+    /**
+     * Handle of the weblog being rebuilt, or ALL_WEBLOGS.
+     */
+    String getScope() {
+        return scope;
+    }
+
+    /**
+     * Id of the last entry committed to the index.
+     */
+    String getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Number of entries committed to the index so far.
+     */
+    long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Read the checkpoint in a file.
+     *
+     * @return the checkpoint, or null if there is none or it can't be read.
+     */
+    static RebuildCheckpoint load(Path file) {
+        try {
+            if (file != null && Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                if (lines.size() >= 3) {
+                    return new RebuildCheckpoint(lines.get(0), lines.get(1),
+                            Long.parseLong(lines.get(2)));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // a checkpoint which can't be read is as good as none
+        }
+        return null;
+    }
+
+    /**
+     * Write the checkpoint to a file, replacing any earlier one atomically.
+     */
+    void save(Path file) throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, scope + "\n" + lastId + "\n" + indexed + "\n",
+                StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void delete(Path file) throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -18,25 +18,51 @@
 /* Created on Jul 16, 2003 */
 package org.apache.roller.weblogger.business.search.lucene;
 
-import java.text.MessageFormat;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
-import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
-import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 
 /**
  * An index operation that rebuilds a given users index (or all indexes).
+ *
+ * Entries are read from the database a page at a time, in order of id, so
+ * that only a few pages are ever held in memory however large the site is.
+ * Each page is turned into documents and handed to a pool of threads which
+ * add them to the index in a batch, analyzing several pages at once while
+ * the next page is read.  Every so often the index is committed and a
+ * checkpoint is written, so that a rebuild which is interrupted carries on
+ * after the last checkpoint when it is run again.
+ *
+ * The whole index is normally rebuilt in a shadow directory, which the index
+ * manager switches over to once the rebuild is complete, so that searches
+ * return full results all along.  Such a rebuild doesn't hold the index to
+ * itself, changes to entries carry on going into the live index and are
+ * recorded meanwhile.  Once the rebuild is complete they are replayed into
+ * the shadow index, and the index is only held for replaying those made
+ * while replaying and for the switch.  Changes made before a rebuild was
+ * interrupted are not recorded, entries indexed before its checkpoint keep
+ * their state as of then.
  * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  */
@@ -48,12 +74,27 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
     private static Log logger = LogFactory.getFactory().getInstance(
             RebuildWebsiteIndexOperation.class);
 
+    // how often progress is logged
+    private static final long PROGRESS_INTERVAL = 10 * RollerConstants.SEC_IN_MS;
+
     // ~ Instance fields
     // ========================================================
 
     private Weblog website;
     private Weblogger roller;
 
+    // number of entries read from the database at a time
+    private final int pageSize;
+
+    // number of threads adding documents to the index
+    private final int threads;
+
+    // number of entries between checkpoints
+    private final int checkpointInterval;
+
+    private volatile long indexed;
+    private volatile long total;
+
     // ~ Constructors
     // ===========================================================
 
@@ -68,11 +109,44 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
         super(mgr);
         this.roller = roller;
         this.website = website;
+
+        this.pageSize = Math.max(1,
+                WebloggerConfig.getIntProperty("search.index.rebuild.pageSize", 500));
+        int configuredThreads = WebloggerConfig.getIntProperty("search.index.rebuild.threads", 0);
+        this.threads = (configuredThreads > 0)
+                ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        this.checkpointInterval = Math.max(pageSize,
+                WebloggerConfig.getIntProperty("search.index.rebuild.checkpointInterval", 10000));
     }
 
     // ~ Methods
     // ================================================================
 
+    /**
+     * Number of entries indexed so far.
+     */
+    public long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Number of entries to index, as counted when the rebuild started.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public void run() {
+        if (website == null && manager.isShadowRebuild()) {
+            // the live index carries on taking changes, the rebuild only
+            // takes the write lock to switch over
+            doRun();
+        } else {
+            super.run();
+        }
+    }
+
     @Override
     public void doRun() {
 
@@ -94,48 +168,29 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
             logger.debug("Reindexining entire site");
         }
 
-        IndexWriter writer = beginWriting();
+        boolean shadow = (website == null) && manager.isShadowRebuild();
+        ForkJoinPool pool = new ForkJoinPool(threads);
 
+        // until it completes, shutting down leaves the index marked inconsistent
+        manager.rebuildStarted();
         try {
-            if (writer != null) {
-
-                // Delete Doc
-                Term tWebsite = null;
-                if (website != null) {
-                    tWebsite = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
-                            website.getHandle());
-                }
-                if (tWebsite != null) {
-                    writer.deleteDocuments(tWebsite);
-                } else {
-                    Term all = IndexUtil.getTerm(FieldConstants.CONSTANT,
-                            FieldConstants.CONSTANT_V);
-                    writer.deleteDocuments(all);
-                }
-
-                // Add Doc
-                WeblogEntryManager weblogManager = roller
-                        .getWeblogEntryManager();
-                WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-                wesc.setWeblog(website);
-                wesc.setStatus(PubStatus.PUBLISHED);
-                List<WeblogEntry> entries = weblogManager.getWeblogEntries(wesc);
-
-                logger.debug("Entries to index: " + entries.size());
-
-                for (WeblogEntry entry : entries) {
-                    writer.addDocument(getDocument(entry));
-                    logger.debug(MessageFormat.format(
-                            "Indexed entry {0}: {1}",
-                            entry.getPubTime(), entry.getAnchor()));
+            if (shadow) {
+                rebuildShadow(pool);
+                manager.rebuildFinished();
+            } else {
+                IndexWriter writer = beginWriting();
+                if (writer != null) {
+                    rebuild(writer, pool, manager.getRebuildCheckpointFile());
+                    manager.rebuildFinished();
                 }
-
-                // release the database connection
-                roller.release();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Rebuilding index was interrupted, it will resume from its last checkpoint");
         } catch (Exception e) {
             logger.error("ERROR adding/deleting doc to index", e);
         } finally {
+            pool.shutdownNow();
             endWriting();
             if (roller != null) {
                 roller.release();
@@ -153,4 +208,196 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
                     + website.getHandle() + "' in '" + length + "' seconds");
         }
     }
+
+    /**
+     * Rebuild the whole index in the shadow directory, replay the changes
+     * made to the live index meanwhile and switch over to it.
+     */
+    private void rebuildShadow(ForkJoinPool pool) throws Exception {
+        Lock rebuildLock = manager.getShadowRebuildLock();
+        rebuildLock.lockInterruptibly();
+        IndexWriter shadowWriter = null;
+        try {
+            ShadowChangeLog changes = manager.startRecordingChanges();
+            shadowWriter = manager.openShadowWriter();
+            rebuild(shadowWriter, pool, manager.getShadowCheckpointFile());
+
+            // catch up with the changes made while rebuilding, then with
+            // those made while catching up, with the index held for the switch
+            replayChanges(shadowWriter, changes);
+            Lock writeLock = manager.getReadWriteLock().writeLock();
+            writeLock.lock();
+            try {
+                replayChanges(shadowWriter, changes);
+                manager.stopRecordingChanges();
+                IndexWriter rebuilt = shadowWriter;
+                shadowWriter = null;
+                manager.switchToShadowIndex(rebuilt);
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            manager.stopRecordingChanges();
+            if (shadowWriter != null) {
+                // keep what was committed so far, for the rebuild to resume from
+                closeShadowWriter(shadowWriter);
+            }
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Replay changes made to the live index into the shadow index, reading
+     * changed entries again so that they are indexed as they are now.
+     */
+    private void replayChanges(IndexWriter shadowWriter, ShadowChangeLog changes)
+            throws WebloggerException, IOException {
+
+        for (String handle : changes.takeRemovedWeblogs()) {
+            shadowWriter.deleteDocuments(IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, handle));
+        }
+
+        WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+        Map<String, Boolean> entries = changes.takeEntries();
+        for (Map.Entry<String, Boolean> change : entries.entrySet()) {
+            shadowWriter.deleteDocuments(new Term(FieldConstants.ID, change.getKey()));
+            if (Boolean.FALSE.equals(change.getValue())) {
+                // only published entries are rebuilt
+                WeblogEntry entry = weblogManager.getWeblogEntry(change.getKey());
+                if (entry != null && entry.isPublished()) {
+                    shadowWriter.addDocument(getDocument(entry));
+                }
+            }
+        }
+        roller.release();
+
+        if (!entries.isEmpty()) {
+            logger.debug("Replayed " + entries.size() + " changed entries into the rebuilt index");
+        }
+    }
+
+    private void rebuild(IndexWriter writer, ForkJoinPool pool, Path checkpointFile)
+            throws Exception {
+
+        String scope = (website != null) ? website.getHandle() : RebuildCheckpoint.ALL_WEBLOGS;
+        RebuildCheckpoint checkpoint = RebuildCheckpoint.load(checkpointFile);
+        if (checkpoint != null && !checkpoint.getScope().equals(scope)) {
+            checkpoint = null;
+        }
+
+        WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+        total = (website != null)
+                ? weblogManager.getEntryCount(website) : weblogManager.getEntryCount();
+
+        String lastId = null;
+        // entries after the checkpoint may have been committed before the
+        // rebuild was interrupted, so replace rather than add them
+        final boolean resumed = (checkpoint != null);
+        if (resumed) {
+            lastId = checkpoint.getLastId();
+            indexed = checkpoint.getIndexed();
+            logger.info("Resuming index rebuild after " + indexed + " entries");
+        } else if (website != null) {
+            writer.deleteDocuments(IndexUtil.getTerm(
+                    FieldConstants.WEBSITE_HANDLE, website.getHandle()));
+        } else {
+            writer.deleteAll();
+        }
+
+        logger.debug("Entries to index: " + total);
+
+        // bounds the number of pages held in memory waiting to be indexed
+        Semaphore pending = new Semaphore(threads * 2);
+        List<ForkJoinTask<?>> batches = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        long startCount = indexed;
+        long lastCheckpoint = indexed;
+        long lastProgress = startTime;
+
+        List<WeblogEntry> page;
+        do {
+            page = weblogManager.getPublishedEntriesAfter(website, lastId, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            // documents are built on this thread, because building them reads
+            // lazily loaded data through this thread's persistence context
+            List<Document> docs = new ArrayList<>(page.size());
+            Term[] ids = new Term[page.size()];
+            for (int i = 0; i < page.size(); i++) {
+                WeblogEntry entry = page.get(i);
+                docs.add(getDocument(entry));
+                ids[i] = new Term(FieldConstants.ID, entry.getId());
+            }
+            lastId = page.get(page.size() - 1).getId();
+
+            // let go of the entries, so that memory use stays bounded
+            roller.release();
+
+            pending.acquire();
+            batches.add(pool.submit(() -> {
+                try {
+                    if (resumed) {
+                        writer.deleteDocuments(ids);
+                    }
+                    writer.addDocuments(docs);
+                    return null;
+                } finally {
+                    pending.release();
+                }
+            }));
+            indexed += page.size();
+
+            if (indexed - lastCheckpoint >= checkpointInterval) {
+                awaitBatches(batches);
+                writer.commit();
+                new RebuildCheckpoint(scope, lastId, indexed).save(checkpointFile);
+                lastCheckpoint = indexed;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL) {
+                logProgress(startTime, now, startCount);
+                lastProgress = now;
+            }
+        } while (page.size() == pageSize);
+
+        awaitBatches(batches);
+        writer.commit();
+        RebuildCheckpoint.delete(checkpointFile);
+    }
+
+    private static void closeShadowWriter(IndexWriter writer) {
+        try {
+            writer.rollback();
+            writer.getDirectory().close();
+        } catch (IOException e) {
+            logger.error("ERROR closing shadow index writer", e);
+        }
+    }
+
+    /**
+     * Wait for the batches handed to the pool to be added to the index.
+     */
+    private static void awaitBatches(List<ForkJoinTask<?>> batches)
+            throws InterruptedException, ExecutionException {
+        for (ForkJoinTask<?> batch : batches) {
+            batch.get();
+        }
+        batches.clear();
+    }
+
+    private void logProgress(long startTime, long now, long startCount) {
+        long done = indexed - startCount;
+        long remaining = Math.max(0, total - indexed);
+        String eta = "unknown";
+        if (done > 0) {
+            long etaSeconds = (now - startTime) * remaining / done / RollerConstants.SEC_IN_MS;
+            eta = etaSeconds + " secs";
+        }
+        long percent = (total > 0) ? Math.min(100, indexed * 100 / total) : 100;
+        logger.info("Rebuilding index: " + indexed + " of " + total + " entries ("
+                + percent + "%), about " + eta + " to go");
+    }
 }
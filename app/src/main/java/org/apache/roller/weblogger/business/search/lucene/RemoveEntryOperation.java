@@ -80,6 +80,7 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
             if (writer != null) {
                 Term term = new Term(FieldConstants.ID, data.getId());
                 writer.deleteDocuments(term);
+                manager.entryRemoved(data.getId());
             }
         } catch (IOException e) {
             logger.error("Error deleting doc from index", e);
@@ -95,6 +95,7 @@ public class RemoveWebsiteIndexOperation extends WriteToIndexOperation {
 
                 if (tHandle != null) {
                     writer.deleteDocuments(tHandle);
+                    manager.weblogRemoved(handle);
                 }
             }
         } catch (IOException e) {
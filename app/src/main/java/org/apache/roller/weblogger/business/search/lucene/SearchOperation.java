@@ -20,10 +20,13 @@ package org.apache.roller.weblogger.business.search.lucene;
 
 import org.apache.roller.weblogger.pojos.LuceneSearchCriteria;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -31,11 +34,13 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchFacet;
 
 /**
  * An operation that searches the index.
@@ -57,13 +62,25 @@ public class SearchOperation extends ReadFromIndexOperation {
     };
 
     private static final Sort SORTER = new Sort(new SortField(
+            FieldConstants.PUBLISHED, SortField.Type.LONG, true));
+
+    // sort for indexes from before publish times were indexed as numbers,
+    // used until such an index has been rebuilt
+    private static final Sort LEGACY_SORTER = new Sort(new SortField(
             FieldConstants.PUBLISHED, SortField.Type.STRING, true));
 
+    // number of hits collected at a time
+    private static final int DOC_LIMIT = 500;
+
+    // number of values returned per facet
+    private static final int MAX_FACET_VALUES = 20;
+
     // ~ Instance fields
     // ========================================================
 
     private IndexSearcher searcher;
     private TopFieldDocs searchresults;
+    private Query query;
 
     private LuceneSearchCriteria criteria;
     private String parseError;
@@ -97,49 +114,52 @@ public class SearchOperation extends ReadFromIndexOperation {
      */
     @Override
     public void doRun() {
-        final int docLimit = 500;
         searchresults = null;
-        searcher = null;
+        query = null;
+        release();
 
         try {
-            IndexReader reader = manager.getSharedIndexReader();
-            searcher = new IndexSearcher(reader);
-
-            MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
-                    SEARCH_FIELDS, LuceneIndexManager.getAnalyzer());
-
-            // Make it an AND by default. Comment this out for an or (default)
-            multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
-
-            // Create a query object out of our term
-            Query query = multiParser.parse(criteria.getTerm());
-
-            Term handleTerm = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, criteria.getWeblogHandle());
-            if (handleTerm != null) {
-                query = new BooleanQuery.Builder()
-                        .add(query, BooleanClause.Occur.MUST)
-                        .add(new TermQuery(handleTerm), BooleanClause.Occur.MUST)
-                        .build();
+            searcher = manager.acquireSearcher();
+            Sort sort = manager.isLegacyIndexFormat() ? LEGACY_SORTER : SORTER;
+
+            // the same search on the same view of the index finds the same hits
+            SearchResultCache cache = SearchResultCache.getInstance();
+            String cacheKey = cache.generateKey(criteria);
+            long readerVersion = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+            searchresults = cache.get(cacheKey, readerVersion);
+
+            boolean changed = false;
+            if (searchresults == null) {
+                query = buildQuery();
+                searchresults = searcher.search(query, DOC_LIMIT, sort);
+                changed = true;
             }
 
-            if (criteria.getCategoryName() != null) {
-                Term catTerm = new Term(FieldConstants.CATEGORY, criteria.getCategoryName().toLowerCase());
-                query = new BooleanQuery.Builder()
-                        .add(query, BooleanClause.Occur.MUST)
-                        .add(new TermQuery(catTerm), BooleanClause.Occur.MUST)
-                        .build();
+            // collect further hits after the last one held, rather than
+            // collecting all the hits up to the requested page again
+            while (hasMoreHits(searchresults, getHitsWanted())) {
+                if (query == null) {
+                    query = buildQuery();
+                }
+                ScoreDoc last = searchresults.scoreDocs[searchresults.scoreDocs.length - 1];
+                TopFieldDocs next = (TopFieldDocs) searcher.searchAfter(last, query, DOC_LIMIT, sort);
+                if (next.scoreDocs.length == 0) {
+                    break;
+                }
+                ScoreDoc[] hits = Arrays.copyOf(searchresults.scoreDocs,
+                        searchresults.scoreDocs.length + next.scoreDocs.length);
+                System.arraycopy(next.scoreDocs, 0, hits,
+                        searchresults.scoreDocs.length, next.scoreDocs.length);
+                searchresults = new TopFieldDocs(next.totalHits, hits, next.fields);
+                changed = true;
+                if (next.scoreDocs.length < DOC_LIMIT) {
+                    break;
+                }
             }
-
-            Term localeTerm = IndexUtil.getTerm(FieldConstants.LOCALE, criteria.getLocale());
-            if (localeTerm != null) {
-                query = new BooleanQuery.Builder()
-                        .add(query, BooleanClause.Occur.MUST)
-                        .add(new TermQuery(localeTerm), BooleanClause.Occur.MUST)
-                        .build();
+            if (changed) {
+                cache.put(cacheKey, readerVersion, searchresults);
             }
 
-            searchresults = searcher.search(query, docLimit, SORTER);
-
         } catch (IOException e) {
             logger.error("Error searching index", e);
             parseError = e.getMessage();
@@ -148,7 +168,89 @@ public class SearchOperation extends ReadFromIndexOperation {
             // who cares?
             parseError = e.getMessage();
         }
-        // don't need to close the reader, since we didn't do any writing!
+    }
+
+    /**
+     * Number of hits needed to show the requested page of results.
+     */
+    private int getHitsWanted() {
+        if (criteria.getMaxResults() < 0) {
+            return DOC_LIMIT;
+        }
+        return Math.max(0, criteria.getOffset()) + criteria.getMaxResults();
+    }
+
+    /**
+     * True if fewer hits are held than wanted, and the last collection
+     * filled up, so that there may be more.
+     */
+    private static boolean hasMoreHits(TopFieldDocs hits, int wanted) {
+        int held = hits.scoreDocs.length;
+        return held < wanted && held > 0 && held % DOC_LIMIT == 0
+                && hits.totalHits.value > held;
+    }
+
+    private Query buildQuery() throws ParseException {
+
+        MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
+                SEARCH_FIELDS, manager.getSearchAnalyzer());
+
+        // Make it an AND by default. Comment this out for an or (default)
+        multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
+
+        // Create a query object out of our term
+        Query query = multiParser.parse(criteria.getTerm());
+
+        Term handleTerm = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, criteria.getWeblogHandle());
+        if (handleTerm != null) {
+            query = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(handleTerm), BooleanClause.Occur.MUST)
+                    .build();
+        }
+
+        if (criteria.getCategoryName() != null) {
+            Term catTerm = new Term(FieldConstants.CATEGORY, criteria.getCategoryName().toLowerCase());
+            query = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(catTerm), BooleanClause.Occur.MUST)
+                    .build();
+        }
+
+        Term localeTerm = IndexUtil.getTerm(FieldConstants.LOCALE, criteria.getLocale());
+        if (localeTerm != null) {
+            query = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(localeTerm), BooleanClause.Occur.MUST)
+                    .build();
+        }
+
+        return query;
+    }
+
+    /**
+     * Get the query searched for, or null if the search term can't be parsed.
+     */
+    public Query getQuery() {
+        if (query == null) {
+            try {
+                query = buildQuery();
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Hand the searcher back to the index manager.  Must be called once the
+     * results, which are read through the searcher, are no longer needed.
+     */
+    public void release() {
+        if (searcher != null) {
+            manager.releaseSearcher(searcher);
+            searcher = null;
+        }
     }
 
     /**
@@ -179,6 +281,41 @@ public class SearchOperation extends ReadFromIndexOperation {
         return searchresults;
     }
 
+    /**
+     * Count up all the hits, not just the top ones, by each facet asked for.
+     * Counting reads every hit, so it is only done once the counts are asked
+     * for, through a searcher of its own on the latest view of the index.
+     *
+     * @return counts by facet, empty if no facets were asked for or the
+     *         search can't be done
+     */
+    public Map<SearchFacet, Map<String, Integer>> countFacets() {
+        if (criteria.getFacets() == null || criteria.getFacets().isEmpty() || getQuery() == null) {
+            return Collections.emptyMap();
+        }
+
+        IndexSearcher facetSearcher = null;
+        try {
+            facetSearcher = manager.acquireSearcher();
+            SearchResultCache cache = SearchResultCache.getInstance();
+            String facetsKey = cache.generateKey(criteria) + '/' + criteria.getFacets();
+            long readerVersion = ((DirectoryReader) facetSearcher.getIndexReader()).getVersion();
+            Map<SearchFacet, Map<String, Integer>> facets = cache.getFacets(facetsKey, readerVersion);
+            if (facets == null) {
+                facets = facetSearcher.search(getQuery(),
+                        new FacetCounter(criteria.getFacets(), MAX_FACET_VALUES));
+                cache.putFacets(facetsKey, readerVersion, facets);
+            }
+            return facets;
+
+        } catch (IOException e) {
+            logger.error("Error counting search hits by facet", e);
+            return Collections.emptyMap();
+        } finally {
+            manager.releaseSearcher(facetSearcher);
+        }
+    }
+
     /**
      * Gets the results count.
      * 
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.roller.weblogger.business.search.SearchFacet;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.LuceneSearchCriteria;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the top hits of searches, and their counts by facet.
+ *
+ * Hits are kept for a given view of the index, identified by the version of
+ * the index reader they were found with, and the whole cache is cleared
+ * whenever searches move on to a newer view.  Since all the top hits of a
+ * search are kept, later pages of the same search are served from memory.
+ */
+public final class SearchResultCache {
+    
+    private static final Log log = LogFactory.getLog(SearchResultCache.class);
+    
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.searchresults";
+    
+    private static final String FACETS_SUFFIX = "/facets";
+    
+    // keep cached content
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+    
+    // reference to our singleton instance
+    private static final SearchResultCache singletonInstance = new SearchResultCache();
+    
+    
+    private SearchResultCache() {
+        
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1), 
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(null, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+    
+    
+    public static SearchResultCache getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Get the hits of a search, if they were found with the given version
+     * of the index reader.
+     */
+    public TopFieldDocs get(String key, long readerVersion) {
+        return (TopFieldDocs) getValue(key, readerVersion);
+    }
+    
+    
+    public void put(String key, long readerVersion, TopFieldDocs results) {
+        putValue(key, readerVersion, results);
+    }
+    
+    
+    /**
+     * Get the facet counts of a search, if they were counted with the given
+     * version of the index reader.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<SearchFacet, Map<String, Integer>> getFacets(String key, long readerVersion) {
+        return (Map<SearchFacet, Map<String, Integer>>) getValue(key + FACETS_SUFFIX, readerVersion);
+    }
+    
+    
+    public void putFacets(String key, long readerVersion, Map<SearchFacet, Map<String, Integer>> facets) {
+        putValue(key + FACETS_SUFFIX, readerVersion, facets);
+    }
+    
+    
+    private Object getValue(String key, long readerVersion) {
+        
+        if (!cacheEnabled) {
+            return null;
+        }
+        
+        CachedValue cached = (CachedValue) contentCache.get(key);
+        if (cached != null && cached.readerVersion == readerVersion) {
+            log.debug("HIT "+key);
+            return cached.value;
+        }
+        
+        log.debug("MISS "+key);
+        return null;
+    }
+    
+    
+    private void putValue(String key, long readerVersion, Object value) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        contentCache.put(key, new CachedValue(readerVersion, value));
+        log.debug("PUT "+key);
+    }
+    
+    
+    public void clear() {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        contentCache.clear();
+        log.debug("CLEAR");
+    }
+    
+    
+    /**
+     * Generate a cache key from search criteria.
+     * This generates a key of the form ...
+     *
+     * <term>/<handle>/<category>/<locale>
+     *
+     * The term has its whitespace collapsed, and the category and locale are
+     * lower cased as they are when searched for.  Offset and max results are
+     * left out, so all pages of a search share its entry.
+     */
+    public String generateKey(LuceneSearchCriteria criteria) {
+        
+        StringBuilder key = new StringBuilder(128);
+        
+        key.append(CACHE_ID).append(':');
+        String term = criteria.getTerm();
+        key.append((term != null) ? term.trim().replaceAll("\\s+", " ") : "");
+        
+        key.append('/').append(criteria.getWeblogHandle());
+        
+        String category = criteria.getCategoryName();
+        key.append('/').append((category != null) ? category.toLowerCase(Locale.ENGLISH) : null);
+        
+        String locale = criteria.getLocale();
+        key.append('/').append((locale != null) ? locale.toLowerCase(Locale.ENGLISH) : null);
+        
+        return key.toString();
+    }
+    
+    
+    private static final class CachedValue {
+        
+        private final long readerVersion;
+        private final Object value;
+        
+        private CachedValue(long readerVersion, Object value) {
+            this.readerVersion = readerVersion;
+            this.value = value;
+        }
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the changes made to the live index while the whole index is
+ * rebuilt in the shadow directory, so that the rebuild can replay them into
+ * the shadow index before it takes over.
+ *
+ * Only the ids of entries and the handles of weblogs are recorded, the
+ * entries themselves are read again when the changes are replayed.
+ */
+class ShadowChangeLog {
+
+    // ids of changed entries, mapped to true if the entry was removed from
+    // the index and to false if it was added or reindexed
+    private final Map<String, Boolean> entries = new ConcurrentHashMap<>();
+
+    // handles of weblogs removed from the index
+    private final Set<String> removedWeblogs = ConcurrentHashMap.newKeySet();
+
+    void entryChanged(String id) {
+        entries.put(id, Boolean.FALSE);
+    }
+
+    void entryRemoved(String id) {
+        entries.put(id, Boolean.TRUE);
+    }
+
+    void weblogRemoved(String handle) {
+        removedWeblogs.add(handle);
+    }
+
+    /**
+     * Take the entries changed since they were last taken.
+     *
+     * @return entry ids, each mapped to true if the entry was removed
+     */
+    Map<String, Boolean> takeEntries() {
+        Map<String, Boolean> taken = new LinkedHashMap<>();
+        for (Map.Entry<String, Boolean> entry : entries.entrySet()) {
+            // leave an entry changed again meanwhile for the next time
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                taken.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Take the handles of weblogs removed since they were last taken.
+     */
+    List<String> takeRemovedWeblogs() {
+        List<String> taken = new ArrayList<>();
+        for (String handle : removedWeblogs) {
+            if (removedWeblogs.remove(handle)) {
+                taken.add(handle);
+            }
+        }
+        return taken;
+    }
+}
@@ -35,6 +35,11 @@ public class DateRangeSearchCriteria extends BaseSearchCriteria {
     // End date or null for no restriction
     protected Date endDate;
 
+    // Time and id of the result that results are to follow in sort order,
+    // or null to start from the first result
+    protected Date afterTime;
+    protected String afterId;
+
     public Weblog getWeblog() {
         return weblog;
     }
@@ -58,4 +63,26 @@ public class DateRangeSearchCriteria extends BaseSearchCriteria {
     public void setEndDate(Date endDate) {
         this.endDate = endDate;
     }
+
+    public Date getAfterTime() {
+        return afterTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * Start the results just past a result already seen, typically the last
+     * one of the page before, rather than skipping all the results before
+     * it with an offset.  Seeking this way costs the same however far into
+     * the results it starts.  Any offset still applies, counted from there.
+     *
+     * @param time the time of the result, as results are sorted by
+     * @param id the id of the result, which breaks ties on time
+     */
+    public void setAfter(Date time, String id) {
+        this.afterTime = time;
+        this.afterId = id;
+    }
 }
@@ -18,6 +18,10 @@
 
 package org.apache.roller.weblogger.pojos;
 
+import java.util.EnumSet;
+import java.util.Set;
+import org.apache.roller.weblogger.business.search.SearchFacet;
+
 /**
  * Represents the search criteria for Lucene search operations.
  */
@@ -27,6 +31,7 @@ public class LuceneSearchCriteria extends BaseSearchCriteria {
     private String weblogHandle;
     private String categoryName;
     private String locale;
+    private Set<SearchFacet> facets = EnumSet.noneOf(SearchFacet.class);
 
     public LuceneSearchCriteria() {
     }
@@ -63,6 +68,17 @@ public class LuceneSearchCriteria extends BaseSearchCriteria {
         this.locale = locale;
     }
 
+    /**
+     * Facets to count the hits by, none by default.
+     */
+    public Set<SearchFacet> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Set<SearchFacet> facets) {
+        this.facets = facets;
+    }
+
     @Override
     public String toString() {
         return "LuceneSearchCriteria{" +
@@ -70,6 +86,7 @@ public class LuceneSearchCriteria extends BaseSearchCriteria {
                 ", weblogHandle='" + weblogHandle + '\'' +
                 ", categoryName='" + categoryName + '\'' +
                 ", locale='" + locale + '\'' +
+                ", facets=" + facets +
                 ", offset=" + getOffset() +
                 ", maxResults=" + getMaxResults() +
                 '}';
@@ -23,6 +23,7 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
@@ -49,6 +51,8 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.plugins.TransformedContentCache;
+import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPluginPipeline;
 import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
@@ -95,6 +99,15 @@ public class WeblogEntry implements Serializable {
     // or subtracted (anything else)
     private Boolean   refreshAggregates = Boolean.FALSE;
 
+    // number of approved comments, counted when first asked for unless
+    // prefetched along with the rest of a page of entries
+    private Integer   commentCount = null;
+
+    // true while the text, summary and plugins are as they were last loaded
+    // or saved, so that content not saved as it stands is never cached once
+    // transformed
+    private transient boolean contentSaved = false;
+
     // Associated objects
     private Weblog        website  = null;
     private WeblogCategory category = null;
@@ -279,6 +292,7 @@ public class WeblogEntry implements Serializable {
      * Set summary for weblog entry (maps to RSS description and Atom summary).
      */
     public void setSummary(String summary) {
+        contentSaved &= Objects.equals(this.summary, summary);
         this.summary = summary;
     }
     
@@ -307,6 +321,7 @@ public class WeblogEntry implements Serializable {
      * Set content text for weblog entry (maps to RSS content:encoded and Atom content).
      */
     public void setText(String text) {
+        contentSaved &= Objects.equals(this.text, text);
         this.text = text;
     }
     
@@ -457,6 +472,7 @@ public class WeblogEntry implements Serializable {
     }
     
     public void setPlugins(String string) {
+        contentSaved &= Objects.equals(plugins, string);
         plugins = string;
     }
 
@@ -735,7 +751,23 @@ public class WeblogEntry implements Serializable {
     }
     
     public int getCommentCount() {
-        return getComments().size();
+        if (commentCount == null) {
+            try {
+                WeblogEntryManager wmgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+                commentCount = (int) wmgr.getCommentCount(this, WeblogEntryComment.ApprovalStatus.APPROVED);
+            } catch (WebloggerException alreadyLogged) {
+                return 0;
+            }
+        }
+        return commentCount;
+    }
+    
+    /**
+     * Set the number of approved comments, or null to have them counted
+     * again the next time the count is asked for.
+     */
+    public void setCommentCount(Integer commentCount) {
+        this.commentCount = commentCount;
     }
     
     //------------------------------------------------------------------------
@@ -895,14 +927,14 @@ public class WeblogEntry implements Serializable {
      * Get entry text, transformed by plugins enabled for entry.
      */
     public String getTransformedText() {
-        return render(getText());
+        return render(getText(), TransformedContentCache.TEXT);
     }
 
     /**
      * Get entry summary, transformed by plugins enabled for entry.
      */
     public String getTransformedSummary() {
-        return render(getSummary());
+        return render(getSummary(), TransformedContentCache.SUMMARY);
     }
 
     /**
@@ -938,11 +970,32 @@ public class WeblogEntry implements Serializable {
     }
     
     /**
-     * Transform string based on plugins enabled for this weblog entry.
+     * Called by the persistence layer once the entry has been loaded,
+     * persisted or updated, when its content is as it is in the database.
+     * Any change to the content after that is not saved until this is
+     * called again.
      */
-    private String render(String str) {
-        String ret = str;
+    public void markContentSaved() {
+        contentSaved = true;
+    }
+    
+    /**
+     * Transform string based on plugins enabled for this weblog entry, or
+     * get it as it was transformed before if the entry was saved since.
+     */
+    private String render(String str, String part) {
+        TransformedContentCache cache = TransformedContentCache.getInstance();
+        // entries never saved, or changed since, are transformed every time
+        boolean saved = (updateTime != null && contentSaved);
+        if (str != null && saved) {
+            String cached = cache.get(this, part);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
         mLogger.debug("Applying page plugins to string");
+        List<WeblogEntryPlugin> plugins = new ArrayList<>();
         Map<String, WeblogEntryPlugin> inPlugins = getWebsite().getInitializedPlugins();
         if (str != null && inPlugins != null) {
             List<String> entryPlugins = getPluginsList();
@@ -952,20 +1005,19 @@ public class WeblogEntry implements Serializable {
                 
                 // now loop over mPagePlugins, matching
                 // against Entry plugins (by name):
-                // where a match is found render Plugin.
+                // where a match is found apply Plugin.
                 for (Map.Entry<String, WeblogEntryPlugin> entry : inPlugins.entrySet()) {
                     if (entryPlugins.contains(entry.getKey())) {
-                        WeblogEntryPlugin pagePlugin = entry.getValue();
-                        try {
-                            ret = pagePlugin.render(this, ret);
-                        } catch (Exception e) {
-                            mLogger.error("ERROR from plugin: " + pagePlugin.getName(), e);
-                        }
+                        plugins.add(entry.getValue());
                     }
                 }
             }
         } 
-        return HTMLSanitizer.conditionallySanitize(ret);
+        String ret = WeblogEntryPluginPipeline.render(this, plugins, str);
+        if (str != null && ret != null && saved) {
+            cache.put(this, part, ret);
+        }
+        return ret;
     }
     
     
@@ -1001,14 +1053,16 @@ public class WeblogEntry implements Serializable {
                     // TODO: we need a more appropriate way to get the view locale here
                     String readMore = I18nMessages.getMessages(getWebsite().getLocaleInstance()).getString("macro.weblog.readMoreLink", args);
                     
-                    displayContent += readMore;
+                    // the transformed summary is sanitized already, only the
+                    // link with the url put into it needs to be
+                    displayContent += HTMLSanitizer.conditionallySanitize(readMore);
                 }
             } else {
                 displayContent = this.getTransformedText();
             }
         }
         
-        return HTMLSanitizer.conditionallySanitize(displayContent);
+        return displayContent;
     }
     
     
@@ -17,7 +17,9 @@
  */
 package org.apache.roller.weblogger.pojos;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 
 public class WeblogEntrySearchCriteria extends DateRangeSearchCriteria {
@@ -30,6 +32,27 @@ public class WeblogEntrySearchCriteria extends DateRangeSearchCriteria {
         PUBLICATION_TIME, UPDATE_TIME
     }
 
+    /**
+     * Associations of the entries found, which can be loaded for all of
+     * them at once rather than one entry at a time as each is touched.
+     */
+    public enum Fetch {
+        CATEGORY("category"),
+        WEBLOG("website"),
+        TAGS("tags"),
+        ATTRIBUTES("entryAttributes");
+
+        private final String attribute;
+
+        Fetch(String attribute) {
+            this.attribute = attribute;
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+    }
+
     // TODO: See if can switch from name of Category to Category object
 
     // User or null to get for all users.
@@ -49,6 +72,8 @@ public class WeblogEntrySearchCriteria extends DateRangeSearchCriteria {
     private SortOrder sortOrder = SortOrder.DESCENDING;
 
     private String locale;
+    // Associations to load along with the entries, the rest are loaded lazily
+    private Set<Fetch> fetches = EnumSet.noneOf(Fetch.class);
 
     public User getUser() {
         return user;
@@ -114,4 +139,24 @@ public class WeblogEntrySearchCriteria extends DateRangeSearchCriteria {
         this.locale = locale;
     }
 
+    /**
+     * Whether every entry found has the time the entries are sorted by, which
+     * seeking past an entry with setAfter() needs.  Entries which are neither
+     * published nor scheduled may have no publication time, and where those
+     * sort among the rest differs between databases, so listings which may
+     * include them are paged with offsets instead.
+     */
+    public boolean isSeekable() {
+        return SortBy.UPDATE_TIME.equals(sortBy)
+                || PubStatus.PUBLISHED.equals(status) || PubStatus.SCHEDULED.equals(status);
+    }
+
+    public Set<Fetch> getFetches() {
+        return fetches;
+    }
+
+    public void setFetches(Set<Fetch> fetches) {
+        this.fetches = fetches;
+    }
+
 }
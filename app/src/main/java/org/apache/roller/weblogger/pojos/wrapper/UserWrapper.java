@@ -22,6 +22,7 @@ import java.util.Date;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.util.HTMLSanitizer;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -40,6 +41,7 @@ public final class UserWrapper {
     // wrap the given pojo if it is not null
     public static UserWrapper wrap(User toWrap) {
         if(toWrap != null) {
+            CacheDependencies.record(CacheDependencies.USER, toWrap.getUserName());
             return new UserWrapper(toWrap);
         }
         return null;
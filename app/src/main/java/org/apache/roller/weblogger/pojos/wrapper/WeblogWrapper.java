@@ -31,6 +31,7 @@ import org.apache.roller.weblogger.util.HTMLSanitizer;
 import java.util.stream.Collectors;
 import org.apache.roller.weblogger.pojos.ThemeTemplate.ComponentType;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -54,6 +55,7 @@ public final class WeblogWrapper {
     // wrap the given pojo if it is not null with detected type
     public static WeblogWrapper wrap(Weblog toWrap, URLStrategy strat) {
         if (toWrap != null) {
+            CacheDependencies.record(CacheDependencies.WEBLOG, toWrap.getHandle());
             return new WeblogWrapper(toWrap, strat);
         }
         return null;
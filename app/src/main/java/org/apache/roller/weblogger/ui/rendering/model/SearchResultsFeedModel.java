@@ -40,6 +40,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.SearchResultsFeedPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
 import org.apache.roller.weblogger.util.Utilities;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 /**
  * Extends normal page renderer model to represent search results for Atom
@@ -61,6 +62,7 @@ public class SearchResultsFeedModel implements Model {
 	private Set<String> categories = Collections.emptySet();
 
 	private int hits = 0;
+	private int totalHits = 0;
 	private int offset = 0;
 	private int limit = 0;
 
@@ -110,6 +112,13 @@ public class SearchResultsFeedModel implements Model {
 			return;
 		}
 
+		// any entry published or changed may now match the search
+		if (WebloggerRuntimeConfig.isSiteWideWeblog(feedRequest.getWeblogHandle())) {
+			CacheDependencies.recordListing(CacheDependencies.ENTRIES, null);
+		} else {
+			CacheDependencies.recordListing(CacheDependencies.ENTRIES, feedRequest.getWeblogHandle());
+		}
+
 		int entryCount = WebloggerRuntimeConfig.getIntProperty("site.newsfeeds.defaultEntries");
 
 		// setup the search
@@ -127,6 +136,7 @@ public class SearchResultsFeedModel implements Model {
 			this.hits = searchResult.getResults().size();
 			this.offset = searchResult.getOffset();
 			this.limit = searchResult.getLimit();
+			this.totalHits = searchResult.getTotalHits();
 			this.results = searchResult.getResults();
 			this.categories = searchResult.getCategories();
 
@@ -137,7 +147,7 @@ public class SearchResultsFeedModel implements Model {
 		// search completed, setup pager based on results
 		pager = new SearchResultsFeedPager(urlStrategy, pagerUrl,
 				feedRequest.getPage(), feedRequest, results,
-				(hits > (offset + limit)));
+				(totalHits > (offset + limit)));
 	}
 
 	public Pager<WeblogEntryWrapper> getSearchResultsPager() {
@@ -21,6 +21,8 @@ package org.apache.roller.weblogger.ui.rendering.model;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -31,7 +33,9 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchFacet;
 import org.apache.roller.weblogger.business.search.SearchResultList;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.LuceneSearchCriteria;
 import org.apache.roller.weblogger.pojos.WeblogEntryWrapperComparator;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogCategoryWrapper;
@@ -60,9 +64,11 @@ public class SearchResultsModel extends PageModel {
 	private SearchResultsPager pager = null;
 
 	private int hits = 0;
+	private int totalHits = 0;
 	private int offset = 0;
 	private int limit = 0;
 	private Set<String> categories = new TreeSet<>();
+	private SearchResultList searchResults = null;
 	private String errorMessage = "";
 
 	@Override
@@ -99,12 +105,18 @@ public class SearchResultsModel extends PageModel {
 			criteria.setLocale(searchRequest.getLocale());
 			criteria.setOffset(searchRequest.getPageNum() * RESULTS_PER_PAGE);
 			criteria.setMaxResults(RESULTS_PER_PAGE);
+			if (WebloggerRuntimeConfig.isSiteWideWeblog(searchRequest.getWeblogHandle())) {
+				// counts for the site-wide faceted navigation
+				criteria.setFacets(EnumSet.allOf(SearchFacet.class));
+			}
 
 			SearchResultList searchResultList = indexMgr.search(criteria, urlStrategy);
 			hits = searchResultList.getResults().size();
 			offset = searchResultList.getOffset();
 			limit = searchResultList.getLimit();
+			totalHits = searchResultList.getTotalHits();
 			categories = searchResultList.getCategories();
+			searchResults = searchResultList;
 
 			Timestamp now = new Timestamp(new Date().getTime());
 			for (WeblogEntryWrapper entry : searchResultList.getResults()) {
@@ -119,7 +131,7 @@ public class SearchResultsModel extends PageModel {
 
 		// search completed, setup pager based on results
 		pager = new SearchResultsPager(
-				urlStrategy, searchRequest, results, (hits > (offset + limit)));
+				urlStrategy, searchRequest, results, (totalHits > (offset + limit)));
 	}
 
 	private void addEntryToResults(
@@ -173,6 +185,28 @@ public class SearchResultsModel extends PageModel {
 		return hits;
 	}
 
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * Hits per value of a facet (weblog, category, tag or month), most hits
+	 * first.  Only counted for searches of the site-wide weblog.
+	 */
+	public Map<String, Integer> getFacetCounts(String facet) {
+		if (facet == null || searchResults == null) {
+			return Collections.emptyMap();
+		}
+		try {
+			// hits are counted by facet the first time counts are asked for
+			Map<String, Integer> counts = searchResults.getFacets()
+					.get(SearchFacet.valueOf(facet.toUpperCase(Locale.ENGLISH)));
+			return (counts != null) ? counts : Collections.emptyMap();
+		} catch (IllegalArgumentException e) {
+			return Collections.emptyMap();
+		}
+	}
+
 	public int getOffset() {
 		return offset;
 	}
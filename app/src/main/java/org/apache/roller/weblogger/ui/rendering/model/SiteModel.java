@@ -54,6 +54,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.WeblogsPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -286,6 +287,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map<String, Long> getUserNameLetterMap() {
+        CacheDependencies.recordListing(CacheDependencies.USERS, null);
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
             UserManager umgr = roller.getUserManager();
@@ -303,6 +305,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map<String, Long> getWeblogHandleLetterMap() {
+        CacheDependencies.recordListing(CacheDependencies.WEBLOGS, null);
         try {
             return WebloggerFactory.getWeblogger().getWeblogManager().getWeblogHandleLetterMap();
         } catch (Exception e) {
@@ -390,6 +393,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<WeblogWrapper> getNewWeblogs(int sinceDays, int length) {
+        CacheDependencies.recordListing(CacheDependencies.WEBLOGS, null);
         List<WeblogWrapper> results = new ArrayList<>();
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {            
@@ -411,6 +415,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<UserWrapper> getNewUsers(int sinceDays, int length) {
+        CacheDependencies.recordListing(CacheDependencies.USERS, null);
         List<UserWrapper> results = new ArrayList<>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -433,6 +438,7 @@ public class SiteModel implements Model {
      */
     public List<StatCount> getHotWeblogs(int sinceDays, int length) {
         
+        CacheDependencies.recordListing(CacheDependencies.WEBLOGS, null);
         List<StatCount> results = new ArrayList<>();
         try {
             WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
@@ -464,6 +470,7 @@ public class SiteModel implements Model {
      * @param length   Max number of results to return
      */
     public List<StatCount> getMostCommentedWeblogs(int sinceDays , int length) {
+        CacheDependencies.recordListing(CacheDependencies.COMMENTS, null);
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {
             return WebloggerFactory.getWeblogger().getWeblogManager().getMostCommentedWeblogs(
@@ -483,6 +490,7 @@ public class SiteModel implements Model {
      * @param length      Max number of results to return
      */
     public List<StatCount> getMostCommentedWeblogEntries(List<String> cats, int sinceDays, int length) {
+        CacheDependencies.recordListing(CacheDependencies.COMMENTS, null);
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -500,6 +508,7 @@ public class SiteModel implements Model {
      * @param length    Max number of results to return
      */
     public List<WeblogEntryWrapper> getPinnedWeblogEntries(int length) {
+        CacheDependencies.recordListing(CacheDependencies.ENTRIES, null);
         List<WeblogEntryWrapper> results = new ArrayList<>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -521,6 +530,7 @@ public class SiteModel implements Model {
      * @return
      */
     public List<TagStat> getPopularTags(int sinceDays, int length) {
+        CacheDependencies.recordListing(CacheDependencies.ENTRIES, null);
         Date startDate = null;
         if(sinceDays > 0) {
             Calendar cal = Calendar.getInstance();
@@ -541,6 +551,7 @@ public class SiteModel implements Model {
     
     
     public long getCommentCount() {
+        CacheDependencies.recordListing(CacheDependencies.COMMENTS, null);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -554,6 +565,7 @@ public class SiteModel implements Model {
     
     
     public long getEntryCount() {
+        CacheDependencies.recordListing(CacheDependencies.ENTRIES, null);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -567,6 +579,7 @@ public class SiteModel implements Model {
     
     
     public long getWeblogCount() {
+        CacheDependencies.recordListing(CacheDependencies.WEBLOGS, null);
         long count = 0;
         try {
             count = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogCount();            
@@ -578,6 +591,7 @@ public class SiteModel implements Model {
     
     
     public long getUserCount() {
+        CacheDependencies.recordListing(CacheDependencies.USERS, null);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
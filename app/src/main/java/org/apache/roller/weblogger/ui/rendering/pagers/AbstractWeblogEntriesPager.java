@@ -20,14 +20,19 @@ package org.apache.roller.weblogger.ui.rendering.pagers;
 
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.util.I18nMessages;
@@ -111,6 +116,17 @@ public abstract class AbstractWeblogEntriesPager implements WeblogEntriesPager {
     }
     
     
+    /**
+     * Identifies the listing of entries this pager pages through among those
+     * of its weblog, by everything other than the weblog and page that picks
+     * out its entries.
+     */
+    String getListing() {
+        return getClass().getSimpleName() + '/' + locale + '/' + dateString
+                + '/' + catName + '/' + tags + '/' + length;
+    }
+    
+    
     @Override
     public String getHomeLink() {
         return createURL(0, 0, weblog, locale, pageLink, entryAnchor, dateString, catName, tags);
@@ -232,6 +248,20 @@ public abstract class AbstractWeblogEntriesPager implements WeblogEntriesPager {
     }
     
     
+    /**
+     * Count the comments of all the entries on a page with a single query,
+     * rather than a query per entry as the page shows their counts.
+     */
+    protected static void prefetchCommentCounts(Map<Date, List<WeblogEntry>> entries)
+            throws WebloggerException {
+        List<WeblogEntry> all = new ArrayList<>();
+        for (List<WeblogEntry> day : entries.values()) {
+            all.addAll(day);
+        }
+        WebloggerFactory.getWeblogger().getWeblogEntryManager().prefetchCommentCounts(all);
+    }
+    
+    
     /**
      * Create URL that encodes pager state using most appropriate forms of URL.
      * @param pageAdd To be added to page number, or 0 for no page number
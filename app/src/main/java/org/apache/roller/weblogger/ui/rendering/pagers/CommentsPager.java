@@ -34,6 +34,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryCommentWrapper;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -96,6 +97,8 @@ public class CommentsPager extends AbstractPager<WeblogEntryCommentWrapper> {
                 Weblogger roller = WebloggerFactory.getWeblogger();
                 WeblogEntryManager wmgr = roller.getWeblogEntryManager();
 
+                CacheDependencies.recordListing(CacheDependencies.COMMENTS,
+                        (weblog != null) ? weblog.getHandle() : null);
                 CommentSearchCriteria csc = new CommentSearchCriteria();
                 csc.setWeblog(weblog);
                 csc.setStartDate(startDate);
@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.wrapper.UserWrapper;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -123,6 +124,7 @@ public class UsersPager extends AbstractPager<UserWrapper> {
             
             List<UserWrapper> results = new ArrayList<>();
             try {
+                CacheDependencies.recordListing(CacheDependencies.USERS, null);
                 Weblogger roller = WebloggerFactory.getWeblogger();
                 UserManager umgr = roller.getUserManager();
                 List<User> rawUsers;
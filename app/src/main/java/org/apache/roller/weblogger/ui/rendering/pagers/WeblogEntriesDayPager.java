@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -36,6 +37,8 @@ import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.ui.rendering.util.cache.EntryCursorCache;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -118,6 +121,8 @@ public class WeblogEntriesDayPager extends AbstractWeblogEntriesPager {
         if (entries == null) {
             entries = new TreeMap<>(Collections.reverseOrder());
             try {
+                CacheDependencies.recordListing(CacheDependencies.ENTRIES,
+                        (weblog != null) ? weblog.getHandle() : null);
                 WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
                 wesc.setWeblog(weblog);
                 wesc.setStartDate(startDate);
@@ -126,20 +131,25 @@ public class WeblogEntriesDayPager extends AbstractWeblogEntriesPager {
                 wesc.setTags(tags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
+                EntryCursorCache cursors = EntryCursorCache.getInstance();
+                String cursorPrefix = cursors.seek(wesc, getListing(), page, length);
                 wesc.setMaxResults(length+1);
+                wesc.setFetches(EnumSet.allOf(WeblogEntrySearchCriteria.Fetch.class));
                 Map<Date, List<WeblogEntry>> mmap =
                         WebloggerFactory.getWeblogger().getWeblogEntryManager().getWeblogEntryObjectMap(wesc);
+                prefetchCommentCounts(mmap);
 
                 // need to wrap pojos
                 int count = 0;
+                WeblogEntry last = null;
                 for (Map.Entry<Date, List<WeblogEntry>> entry : mmap.entrySet()) {
                     // now we need to go through each entry in a day and wrap
                     List<WeblogEntryWrapper> wrapped = new ArrayList<>();
                     List<WeblogEntry> unwrapped = entry.getValue();
                     for (int i=0; i < unwrapped.size(); i++) {
                         if (count++ < length) {
-                            wrapped.add(i,WeblogEntryWrapper.wrap(unwrapped.get(i), urlStrategy));
+                            last = unwrapped.get(i);
+                            wrapped.add(i,WeblogEntryWrapper.wrap(last, urlStrategy));
                         } else {
                             more = true;
                         }
@@ -150,6 +160,9 @@ public class WeblogEntriesDayPager extends AbstractWeblogEntriesPager {
                         entries.put(entry.getKey(), wrapped);
                     }
                 }
+                if (more) {
+                    cursors.put(cursorPrefix, wesc, getListing(), page, last);
+                }
                 
                 
             } catch (Exception e) {
@@ -22,6 +22,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,6 +33,8 @@ import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.apache.roller.weblogger.ui.rendering.util.cache.EntryCursorCache;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -92,9 +95,6 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
     public List<WeblogEntryWrapper> getItems() {
         
         if (entries == null) {
-            // calculate offset
-            int offset = getPage() * length;
-
             List<WeblogEntryWrapper> results = new ArrayList<>();
             
             Date startDate = null;
@@ -106,6 +106,8 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
             }
             
             try {
+                CacheDependencies.recordListing(CacheDependencies.ENTRIES,
+                        (queryWeblog != null) ? queryWeblog.getHandle() : null);
                 WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
                 wesc.setWeblog(queryWeblog);
                 wesc.setUser(queryUser);
@@ -114,10 +116,14 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
                 wesc.setTags(queryTags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
+                EntryCursorCache cursors = EntryCursorCache.getInstance();
+                String cursorPrefix = cursors.seek(wesc, getListing(), getPage(), length);
                 wesc.setMaxResults(length+1);
+                wesc.setFetches(EnumSet.allOf(WeblogEntrySearchCriteria.Fetch.class));
                 List<WeblogEntry> rawEntries = WebloggerFactory.getWeblogger()
                         .getWeblogEntryManager().getWeblogEntries(wesc);
+                WebloggerFactory.getWeblogger().getWeblogEntryManager()
+                        .prefetchCommentCounts(rawEntries);
 
                 // wrap the results
                 int count = 0;
@@ -128,6 +134,7 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
                 }
                 if (rawEntries.size() > length) {
                     more = true;
+                    cursors.put(cursorPrefix, wesc, getListing(), getPage(), rawEntries.get(length - 1));
                 }
                 
             } catch (Exception e) {
@@ -141,6 +148,17 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
     }
     
     
+    /**
+     * Identifies the listing of entries this pager pages through among those
+     * of its weblog, by everything other than the weblog and page that picks
+     * out its entries.
+     */
+    private String getListing() {
+        return "list/" + ((queryUser != null) ? queryUser.getUserName() : null)
+                + '/' + locale + '/' + sinceDays + '/' + queryCat + '/' + queryTags + '/' + length;
+    }
+    
+    
     @Override
     public boolean hasMoreItems() {
         return more;
@@ -31,6 +31,7 @@ import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogManager;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogWrapper;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -135,6 +136,7 @@ public class WeblogsPager extends AbstractPager<WeblogWrapper> {
                 startDate = cal.getTime();
             }
             try {
+                CacheDependencies.recordListing(CacheDependencies.WEBLOGS, null);
                 Weblogger roller = WebloggerFactory.getWeblogger();
                 WeblogManager wmgr = roller.getWeblogManager();
                 List<Weblog> rawWeblogs;
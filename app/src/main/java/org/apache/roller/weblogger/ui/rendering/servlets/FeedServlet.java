@@ -19,6 +19,7 @@
 package org.apache.roller.weblogger.ui.rendering.servlets;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import javax.servlet.ServletConfig;
@@ -45,9 +46,13 @@ import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
 import org.apache.roller.weblogger.ui.rendering.model.SearchResultsFeedModel;
+import org.apache.roller.weblogger.ui.rendering.util.ContentEncodingUtil;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogFeedCache;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheWarmer;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.util.cache.SingleFlight;
 
 
 /**
@@ -59,6 +64,8 @@ public class FeedServlet extends HttpServlet {
 
     private WeblogFeedCache weblogFeedCache = null;
     private SiteWideCache siteWideCache = null;
+    private final SingleFlight<CachedContent> renderFlights = new SingleFlight<>();
+    private long coalesceTimeout = 0;
 
 
     /**
@@ -76,6 +83,10 @@ public class FeedServlet extends HttpServlet {
 
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
+
+        // how long to wait for another request rendering the same feed
+        this.coalesceTimeout = WebloggerConfig.getIntProperty(
+                "cache.coalesceTimeout", 10) * RollerConstants.SEC_IN_MS;
     }
 
 
@@ -168,9 +179,9 @@ public class FeedServlet extends HttpServlet {
 
         if (cachedContent != null) {
             log.debug("HIT " + cacheKey);
+            CacheWarmer.getInstance().recordHit(request, weblog.getHandle(), isSiteWide);
 
-            response.setContentLength(cachedContent.getContent().length);
-            response.getOutputStream().write(cachedContent.getContent());
+            ContentEncodingUtil.writeContent(request, response, cachedContent);
             return;
 
         } else {
@@ -217,57 +228,11 @@ public class FeedServlet extends HttpServlet {
         }
 
         // looks like we need to render content
-        HashMap<String, Object> model = new HashMap<>();
-        String pageId;
+        // determine what template to render with
+        String pageId = getTemplateId(feedRequest, isSiteWide);
+        Map<String, Object> model;
         try {
-            // determine what template to render with
-            boolean siteWide = WebloggerRuntimeConfig.isSiteWideWeblog(weblog
-                    .getHandle());
-            if (siteWide && "entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                pageId = "site-search-atom.vm";
-
-            } else if ("entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                pageId = "feeds/weblog-search-atom.vm";
-
-            } else if (siteWide) {
-                pageId = "site-" + feedRequest.getType() + "-"
-                        + feedRequest.getFormat() + ".vm";
-
-            } else {
-                pageId = "weblog-" + feedRequest.getType() + "-"
-                        + feedRequest.getFormat() + ".vm";
-            }
-
-            // populate the rendering model
-            Map<String, Object> initData = new HashMap<>();
-            initData.put("parsedRequest", feedRequest);
-
-            // define url strategy
-            initData.put("urlStrategy", WebloggerFactory.getWeblogger()
-                    .getUrlStrategy());
-
-            // Load models for feeds
-            String feedModels = WebloggerConfig
-                    .getProperty("rendering.feedModels");
-            ModelLoader.loadModels(feedModels, model, initData, true);
-
-            // Load special models for site-wide blog
-
-            if (siteWide) {
-                String siteModels = WebloggerConfig
-                        .getProperty("rendering.siteModels");
-                ModelLoader.loadModels(siteModels, model, initData, true);
-            }
-
-            // Load search models if search feed
-            if ("entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                ModelLoader.loadModels(SearchResultsFeedModel.class.getName(),
-                        model, initData, true);
-            }
-
+            model = loadModel(feedRequest, isSiteWide);
         } catch (WebloggerException ex) {
             log.error("ERROR loading model for page", ex);
 
@@ -282,9 +247,7 @@ public class FeedServlet extends HttpServlet {
         Renderer renderer;
         try {
             log.debug("Looking up renderer");
-            Template template = new StaticTemplate(pageId, TemplateLanguage.VELOCITY);
-            renderer = RendererManager.getRenderer(template,
-                    MobileDeviceRepository.DeviceType.standard);
+            renderer = getRenderer(pageId);
         } catch (Exception e) {
             // nobody wants to render my content :(
 
@@ -304,42 +267,193 @@ public class FeedServlet extends HttpServlet {
             return;
         }
 
+        // the feed exists, so it may be worth warming
+        CacheWarmer.getInstance().recordHit(request, weblog.getHandle(), isSiteWide);
+
+        // only one request renders the feed, concurrent requests for the
+        // same feed wait for its result
+        SingleFlight.Flight<CachedContent> flight = renderFlights.join(cacheKey);
+        if (!flight.isLeader()) {
+            CachedContent shared = flight.await(coalesceTimeout);
+            if (shared != null) {
+                log.debug("COALESCED " + cacheKey);
+                ContentEncodingUtil.writeContent(request, response, shared);
+                return;
+            }
+            // no result to share, so render it ourselves
+            flight = null;
+        }
+
         // render content. use default size of 24K for a standard page
         CachedContent rendererOutput = new CachedContent(RollerConstants.TWENTYFOUR_KB_IN_BYTES);
+
+        // land the flight whatever happens, so that waiting requests never
+        // sit out the whole timeout
+        CachedContent landed = null;
         try {
-            log.debug("Doing rendering");
-            renderer.render(model, rendererOutput.getCachedWriter());
+            // site-wide content is invalidated by what it was rendered from
+            CacheDependencies dependencies = null;
+            if (isSiteWide) {
+                CacheDependencies.begin();
+            }
+            try {
+                log.debug("Doing rendering");
+                renderer.render(model, rendererOutput.getCachedWriter());
+
+                // flush rendered output and close
+                rendererOutput.flush();
+                rendererOutput.close();
+            } catch (Exception e) {
+                // bummer, error during rendering
+                log.error("Error during rendering for page " + pageId, e);
+
+                if (!response.isCommitted()) {
+                    response.reset();
+                }
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            } finally {
+                if (isSiteWide) {
+                    dependencies = CacheDependencies.end();
+                }
+            }
 
-            // flush rendered output and close
-            rendererOutput.flush();
-            rendererOutput.close();
-        } catch (Exception e) {
-            // bummer, error during rendering
-            log.error("Error during rendering for page " + pageId, e);
+            // post rendering process
 
-            if (!response.isCommitted()) {
-                response.reset();
+            // cache rendered content. only cache if user is not logged in?
+            // this comes before the response so that the flight only lands once
+            // later requests can find the content in the cache
+            log.debug("PUT " + cacheKey);
+            if (isSiteWide) {
+                siteWideCache.put(cacheKey, rendererOutput, dependencies);
+            } else {
+                // feeds don't need the servlet request, so a stale copy of this
+                // one can be rendered again in the background, each time for
+                // a request of its own rather than this one, which holds the
+                // servlet request and entities loaded along with it
+                WeblogFeedRequest detached = detach(feedRequest);
+                weblogFeedCache.put(cacheKey, rendererOutput,
+                        () -> render(pageId, loadModel(detach(detached), false)));
             }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
 
-        // post rendering process
+            landed = rendererOutput;
+        } finally {
+            // with nothing to share, waiting requests try for themselves
+            if (flight != null) {
+                flight.land(landed);
+            }
+        }
 
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        ContentEncodingUtil.writeContent(request, response, rendererOutput);
+
+        log.debug("Exiting");
+    }
+
+    /**
+     * Determine the template a feed request is rendered with.
+     */
+    private static String getTemplateId(WeblogFeedRequest feedRequest,
+            boolean siteWide) {
+
+        if (siteWide && "entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            return "site-search-atom.vm";
+
+        } else if ("entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            return "feeds/weblog-search-atom.vm";
+
+        } else if (siteWide) {
+            return "site-" + feedRequest.getType() + "-"
+                    + feedRequest.getFormat() + ".vm";
 
-        // cache rendered content. only cache if user is not logged in?
-        log.debug("PUT " + cacheKey);
-        if (isSiteWide) {
-            siteWideCache.put(cacheKey, rendererOutput);
         } else {
-            weblogFeedCache.put(cacheKey, rendererOutput);
+            return "weblog-" + feedRequest.getType() + "-"
+                    + feedRequest.getFormat() + ".vm";
         }
+    }
 
-        log.debug("Exiting");
+    /**
+     * Populate the rendering model for a feed request.
+     */
+    private static Map<String, Object> loadModel(WeblogFeedRequest feedRequest,
+            boolean siteWide) throws WebloggerException {
+
+        HashMap<String, Object> model = new HashMap<>();
+
+        // populate the rendering model
+        Map<String, Object> initData = new HashMap<>();
+        initData.put("parsedRequest", feedRequest);
+
+        // define url strategy
+        initData.put("urlStrategy", WebloggerFactory.getWeblogger()
+                .getUrlStrategy());
+
+        // Load models for feeds
+        String feedModels = WebloggerConfig
+                .getProperty("rendering.feedModels");
+        ModelLoader.loadModels(feedModels, model, initData, true);
+
+        // Load special models for site-wide blog
+
+        if (siteWide) {
+            String siteModels = WebloggerConfig
+                    .getProperty("rendering.siteModels");
+            ModelLoader.loadModels(siteModels, model, initData, true);
+        }
+
+        // Load search models if search feed
+        if ("entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            ModelLoader.loadModels(SearchResultsFeedModel.class.getName(),
+                    model, initData, true);
+        }
+
+        return model;
+    }
+
+    /**
+     * Copy what identifies a feed out of a feed request, leaving behind the
+     * servlet request and any weblog or category looked up for it, which
+     * the copy looks up again when it is asked for them.
+     */
+    private static WeblogFeedRequest detach(WeblogFeedRequest feedRequest) {
+        WeblogFeedRequest copy = new WeblogFeedRequest();
+        copy.setWeblogHandle(feedRequest.getWeblogHandle());
+        copy.setLocale(feedRequest.getLocale());
+        copy.setPathInfo(feedRequest.getPathInfo());
+        copy.setDeviceType(feedRequest.getDeviceType());
+        copy.setType(feedRequest.getType());
+        copy.setFormat(feedRequest.getFormat());
+        copy.setWeblogCategoryName(feedRequest.getWeblogCategoryName());
+        if (feedRequest.getTags() != null) {
+            copy.setTags(new ArrayList<>(feedRequest.getTags()));
+        }
+        copy.setExcerpts(feedRequest.isExcerpts());
+        copy.setTerm(feedRequest.getTerm());
+        copy.setPage(feedRequest.getPage());
+        return copy;
+    }
+
+    private static Renderer getRenderer(String pageId) throws Exception {
+        Template template = new StaticTemplate(pageId, TemplateLanguage.VELOCITY);
+        return RendererManager.getRenderer(template,
+                MobileDeviceRepository.DeviceType.standard);
+    }
+
+    /**
+     * Render a feed outside of a request, used to refresh stale feeds.
+     */
+    private static CachedContent render(String pageId, Map<String, Object> model)
+            throws Exception {
+
+        CachedContent rendererOutput = new CachedContent(RollerConstants.TWENTYFOUR_KB_IN_BYTES);
+        getRenderer(pageId).render(model, rendererOutput.getCachedWriter());
+        rendererOutput.flush();
+        rendererOutput.close();
+        return rendererOutput;
     }
 
 }
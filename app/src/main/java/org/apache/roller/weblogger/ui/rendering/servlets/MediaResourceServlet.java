@@ -114,6 +114,17 @@ public class MediaResourceServlet extends HttpServlet {
                     resourceRequest.getDeviceType());
         }
 
+        // Respond with 304 Not Modified if the client has this version,
+        // thumbnails are tagged apart from the file they were made from.
+        String eTag = ModDateHeaderUtil.resourceETag(mediaFile.getLength(),
+                resourceLastMod);
+        if (resourceRequest.isThumbnail()) {
+            eTag = eTag.substring(0, eTag.length() - 1) + "-thumb\"";
+        }
+        if (ModDateHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        }
+
         // set the content type based on whatever is in our web.xml mime defs
         if (resourceRequest.isThumbnail()) {
             response.setContentType("image/png");
@@ -65,6 +65,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
+import org.apache.roller.weblogger.ui.rendering.util.ContentEncodingUtil;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheWarmer;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.util.cache.SingleFlight;
 
 /**
  * Provides access to weblog pages.
@@ -79,6 +83,9 @@ public class PageServlet extends HttpServlet {
     private boolean excludeOwnerPages = false;
     private WeblogPageCache weblogPageCache = null;
     private SiteWideCache siteWideCache = null;
+    private CacheWarmer cacheWarmer = null;
+    private final SingleFlight<CachedContent> renderFlights = new SingleFlight<>();
+    private long coalesceTimeout = 0;
 
     // Development theme reloading
     Boolean themeReload = false;
@@ -102,6 +109,13 @@ public class PageServlet extends HttpServlet {
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
 
+        // keeps track of the hottest pages to warm them after a change
+        this.cacheWarmer = CacheWarmer.getInstance();
+
+        // how long to wait for another request rendering the same page
+        this.coalesceTimeout = WebloggerConfig.getIntProperty(
+                "cache.coalesceTimeout", 10) * RollerConstants.SEC_IN_MS;
+
         // see if built-in referrer spam check is enabled
         this.processReferrers = WebloggerConfig
                 .getBooleanProperty("site.bannedwordslist.enable.referrers");
@@ -233,9 +247,10 @@ public class PageServlet extends HttpServlet {
         }
 
         // cached content checking
-        if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
+        boolean cacheChecked = (!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null
-                && request.getParameter("skipCache") == null) {
+                && request.getParameter("skipCache") == null;
+        if (cacheChecked) {
 
             CachedContent cachedContent;
             if (isSiteWide) {
@@ -247,17 +262,17 @@ public class PageServlet extends HttpServlet {
 
             if (cachedContent != null) {
                 log.debug("HIT " + cacheKey);
+                cacheWarmer.recordHit(request, weblog.getHandle(), isSiteWide);
 
                 // allow for hit counting
                 if (!isSiteWide
                         && (pageRequest.isWebsitePageHit() || pageRequest
                                 .isOtherPageHit())) {
-                    this.processHit(weblog);
+                    this.processHit(request, weblog);
                 }
 
-                response.setContentLength(cachedContent.getContent().length);
                 response.setContentType(cachedContent.getContentType());
-                response.getOutputStream().write(cachedContent.getContent());
+                ContentEncodingUtil.writeContent(request, response, cachedContent);
                 return;
             } else {
                 log.debug("MISS " + cacheKey);
@@ -415,7 +430,7 @@ public class PageServlet extends HttpServlet {
         if (!isSiteWide
                 && (pageRequest.isWebsitePageHit() || pageRequest
                         .isOtherPageHit())) {
-            this.processHit(weblog);
+            this.processHit(request, weblog);
         }
 
         // looks like we need to render content
@@ -503,49 +518,98 @@ public class PageServlet extends HttpServlet {
             return;
         }
 
+        // the content exists, so it may be worth warming
+        if (cacheChecked) {
+            cacheWarmer.recordHit(request, weblog.getHandle(), isSiteWide);
+        }
+
+        // only one request renders content which is going to be cached,
+        // concurrent requests for the same content wait for its result
+        boolean cacheable = (!this.excludeOwnerPages || !pageRequest.isLoggedIn())
+                && request.getAttribute("skipCache") == null;
+        SingleFlight.Flight<CachedContent> flight = null;
+        // a comment form being posted back must be rendered for its poster
+        if (cacheable && request.getParameter("skipCache") == null
+                && request.getAttribute("commentForm") == null) {
+            flight = renderFlights.join(cacheKey);
+            if (!flight.isLeader()) {
+                CachedContent shared = flight.await(coalesceTimeout);
+                if (shared != null) {
+                    log.debug("COALESCED " + cacheKey);
+                    response.setContentType(contentType);
+                    ContentEncodingUtil.writeContent(request, response, shared);
+                    return;
+                }
+                // no result to share, so render it ourselves
+                flight = null;
+            }
+        }
+
         // render content
         CachedContent rendererOutput = new CachedContent(
                 RollerConstants.TWENTYFOUR_KB_IN_BYTES, contentType);
+
+        // land the flight whatever happens, so that waiting requests never
+        // sit out the whole timeout
+        CachedContent landed = null;
         try {
-            log.debug("Doing rendering");
-            renderer.render(model, rendererOutput.getCachedWriter());
+            // site-wide content is invalidated by what it was rendered from
+            CacheDependencies dependencies = null;
+            if (isSiteWide) {
+                CacheDependencies.begin();
+            }
+            try {
+                log.debug("Doing rendering");
+                renderer.render(model, rendererOutput.getCachedWriter());
 
-            // flush rendered output and close
-            rendererOutput.flush();
-            rendererOutput.close();
-        } catch (Exception e) {
-            // bummer, error during rendering
-            log.error("Error during rendering for page " + page.getId(), e);
+                // flush rendered output and close
+                rendererOutput.flush();
+                rendererOutput.close();
+            } catch (Exception e) {
+                // bummer, error during rendering
+                log.error("Error during rendering for page " + page.getId(), e);
 
-            if (!response.isCommitted()) {
-                response.reset();
+                if (!response.isCommitted()) {
+                    response.reset();
+                }
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            } finally {
+                if (isSiteWide) {
+                    dependencies = CacheDependencies.end();
+                }
             }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
 
-        // post rendering process
-        // flush rendered content to response
-        log.debug("Flushing response output");
-        response.setContentType(contentType);
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
-
-        // cache rendered content. only cache if user is not logged in?
-        if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
-                && request.getAttribute("skipCache") == null) {
-            log.debug("PUT " + cacheKey);
+            // post rendering process
+            // cache rendered content. only cache if user is not logged in?
+            // this comes before the response so that the flight only lands once
+            // later requests can find the content in the cache
+            if (cacheable) {
+                log.debug("PUT " + cacheKey);
 
-            // put it in the right cache
-            if (isSiteWide) {
-                siteWideCache.put(cacheKey, rendererOutput);
+                // put it in the right cache
+                if (isSiteWide) {
+                    siteWideCache.put(cacheKey, rendererOutput, dependencies);
+                } else {
+                    weblogPageCache.put(cacheKey, rendererOutput);
+                }
             } else {
-                weblogPageCache.put(cacheKey, rendererOutput);
+                log.debug("SKIPPED " + cacheKey);
+            }
+
+            landed = rendererOutput;
+        } finally {
+            // with nothing to share, waiting requests try for themselves
+            if (flight != null) {
+                flight.land(landed);
             }
-        } else {
-            log.debug("SKIPPED " + cacheKey);
         }
 
+        // flush rendered content to response
+        log.debug("Flushing response output");
+        response.setContentType(contentType);
+        ContentEncodingUtil.writeContent(request, response, rendererOutput);
+
         log.debug("Exiting");
     }
 
@@ -571,7 +635,12 @@ public class PageServlet extends HttpServlet {
     /**
      * Notify the hit tracker that it has an incoming page hit.
      */
-    private void processHit(Weblog weblog) {
+    private void processHit(HttpServletRequest request, Weblog weblog) {
+
+        // requests made to warm the cache are not views
+        if (cacheWarmer.isWarmup(request)) {
+            return;
+        }
 
         HitCountQueue counter = HitCountQueue.getInstance();
         counter.processHit(weblog);
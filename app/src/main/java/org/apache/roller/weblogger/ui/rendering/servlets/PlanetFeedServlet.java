@@ -37,6 +37,7 @@ import org.apache.roller.planet.business.PlanetManager;
 import org.apache.roller.planet.config.PlanetRuntimeConfig;
 import org.apache.roller.planet.pojos.Planet;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.StaticTemplate;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
@@ -44,10 +45,12 @@ import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.DeviceType;
 import org.apache.roller.weblogger.ui.rendering.model.UtilitiesModel;
+import org.apache.roller.weblogger.ui.rendering.util.ContentEncodingUtil;
 import org.apache.roller.weblogger.ui.rendering.util.cache.PlanetCache;
 import org.apache.roller.weblogger.ui.rendering.util.PlanetRequest;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.apache.roller.weblogger.util.cache.SingleFlight;
 
 /**
  * Planet Roller RSS feed.
@@ -56,6 +59,8 @@ public class PlanetFeedServlet extends HttpServlet {
 
     private static Log log = LogFactory.getLog(PlanetFeedServlet.class);
     private PlanetCache planetCache = null;
+    private final SingleFlight<CachedContent> renderFlights = new SingleFlight<>();
+    private long coalesceTimeout = 0;
 
     /**
      * Init method for this servlet
@@ -68,6 +73,10 @@ public class PlanetFeedServlet extends HttpServlet {
         log.info("Initializing PlanetRssServlet");
 
         this.planetCache = PlanetCache.getInstance();
+
+        // how long to wait for another request rendering the same feed
+        this.coalesceTimeout = WebloggerConfig.getIntProperty(
+                "cache.coalesceTimeout", 10) * RollerConstants.SEC_IN_MS;
     }
 
     /**
@@ -124,8 +133,7 @@ public class PlanetFeedServlet extends HttpServlet {
                 + this.generateKey(planetRequest);
         CachedContent entry = (CachedContent) planetCache.get(cacheKey);
         if (entry != null) {
-            response.setContentLength(entry.getContent().length);
-            response.getOutputStream().write(entry.getContent());
+            ContentEncodingUtil.writeContent(request, response, entry);
             return;
         }
 
@@ -213,34 +221,61 @@ public class PlanetFeedServlet extends HttpServlet {
             return;
         }
 
+        // only one request renders the feed, concurrent requests for the
+        // same feed wait for its result
+        SingleFlight.Flight<CachedContent> flight = renderFlights.join(cacheKey);
+        if (!flight.isLeader()) {
+            CachedContent shared = flight.await(coalesceTimeout);
+            if (shared != null) {
+                log.debug("COALESCED " + cacheKey);
+                ContentEncodingUtil.writeContent(request, response, shared);
+                return;
+            }
+            // no result to share, so render it ourselves
+            flight = null;
+        }
+
         // render content
         CachedContent rendererOutput = new CachedContent(RollerConstants.TWENTYFOUR_KB_IN_BYTES);
+
+        // land the flight whatever happens, so that waiting requests never
+        // sit out the whole timeout
+        CachedContent landed = null;
         try {
-            log.debug("Doing rendering");
-            renderer.render(model, rendererOutput.getCachedWriter());
+            try {
+                log.debug("Doing rendering");
+                renderer.render(model, rendererOutput.getCachedWriter());
+
+                // flush rendered output and close
+                rendererOutput.flush();
+                rendererOutput.close();
+            } catch (Exception e) {
+                // bummer, error during rendering
+                log.error("Error during rendering for planet rss", e);
+
+                if (!response.isCommitted()) {
+                    response.reset();
+                }
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
 
-            // flush rendered output and close
-            rendererOutput.flush();
-            rendererOutput.close();
-        } catch (Exception e) {
-            // bummer, error during rendering
-            log.error("Error during rendering for planet rss", e);
+            // post rendering process
+            // cache rendered content, before the response so that the flight
+            // only lands once later requests can find the content in the cache
+            this.planetCache.put(cacheKey, rendererOutput);
 
-            if (!response.isCommitted()) {
-                response.reset();
+            landed = rendererOutput;
+        } finally {
+            // with nothing to share, waiting requests try for themselves
+            if (flight != null) {
+                flight.land(landed);
             }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
         }
 
-        // post rendering process
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
-
-        // cache rendered content.
-        this.planetCache.put(cacheKey, rendererOutput);
+        ContentEncodingUtil.writeContent(request, response, rendererOutput);
 
         log.debug("Exiting");
     }
@@ -99,6 +99,7 @@ public class ResourceServlet extends HttpServlet {
                 + "]");
 
         long resourceLastMod = 0;
+        long resourceLength = 0;
         InputStream resourceStream = null;
 
         // first see if resource comes from weblog's shared theme
@@ -109,6 +110,7 @@ public class ResourceServlet extends HttpServlet {
                         .getResource(resourceRequest.getResourcePath());
                 if (resource != null) {
                     resourceLastMod = resource.getLastModified();
+                    resourceLength = resource.getLength();
                     resourceStream = resource.getInputStream();
                 }
             }
@@ -132,6 +134,7 @@ public class ResourceServlet extends HttpServlet {
                 MediaFile mf = mmgr.getMediaFileByOriginalPath(weblog,
                         resourceRequest.getResourcePath());
                 resourceLastMod = mf.getLastModified();
+                resourceLength = mf.getLength();
                 resourceStream = mf.getInputStream();
 
             } catch (Exception ex) {
@@ -158,6 +161,13 @@ public class ResourceServlet extends HttpServlet {
                     resourceRequest.getDeviceType());
         }
 
+        // Respond with 304 Not Modified if the client has this version.
+        if (ModDateHeaderUtil.respondIfNoneMatch(request, response,
+                ModDateHeaderUtil.resourceETag(resourceLength, resourceLastMod))) {
+            resourceStream.close();
+            return;
+        }
+
         // set the content type based on whatever is in our web.xml mime defs
         response.setContentType(this.context.getMimeType(resourceRequest
                 .getResourcePath()));
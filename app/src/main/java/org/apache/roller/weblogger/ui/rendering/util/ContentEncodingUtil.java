@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import java.io.IOException;
+import java.util.Locale;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+/**
+ * Utility class to write rendered content to the response, using the gzip
+ * copy kept with the content when the client accepts it.  Content the client
+ * already holds is answered with a 304 and no body, based on the entity tag
+ * computed when the content was rendered.
+ */
+public final class ContentEncodingUtil {
+
+    // not worth compressing anything smaller than this
+    private static final int MIN_COMPRESS_SIZE = 512;
+
+    private static final boolean gzipEnabled =
+            WebloggerConfig.getBooleanProperty("compression.gzipResponse.enabled");
+
+    private ContentEncodingUtil() {
+    }
+
+    /**
+     * Write the given content to the response, compressed if the request
+     * allows it.  This sets the content length, encoding, ETag and Vary
+     * headers, and sends a 304 instead of the content if the request's
+     * If-None-Match header lists the content's entity tag.
+     */
+    public static void writeContent(HttpServletRequest request,
+            HttpServletResponse response, CachedContent content) throws IOException {
+
+        boolean compress = false;
+        if (gzipEnabled) {
+            // the response depends on this header whether or not we compress
+            response.addHeader("Vary", "Accept-Encoding");
+
+            compress = content.getContentLength() >= MIN_COMPRESS_SIZE
+                    && acceptsGzip(request.getHeader("Accept-Encoding"));
+        }
+
+        // each encoding of the content is a different representation, and
+        // a strong tag must not be shared between them
+        String eTag = compress ? gzipETag(content.getETag()) : content.getETag();
+        if (ModDateHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        }
+
+        if (compress) {
+            byte[] compressed = content.getGzipContent();
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(compressed.length);
+            response.getOutputStream().write(compressed);
+            return;
+        }
+
+        response.setContentLength(content.getContentLength());
+        content.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * The entity tag of the gzip encoding of content with the given tag.
+     */
+    static String gzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + "-gz\"";
+    }
+
+    /**
+     * Check if an Accept-Encoding header allows a gzip response, taking
+     * quality values and the wildcard into account.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ENGLISH);
+
+            boolean accepted = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                // an explicit entry always wins over the wildcard
+                return accepted;
+            } else if ("*".equals(coding)) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+}
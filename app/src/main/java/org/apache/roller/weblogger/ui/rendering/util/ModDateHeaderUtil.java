@@ -120,6 +120,84 @@ public final class ModDateHeaderUtil {
 		}
 	}
 
+	/**
+	 * Sets the ETag header to the given entity tag, and the HTTP response
+	 * status to 304 (NOT MODIFIED) if the request contains an If-None-Match
+	 * header which lists that tag or is "*". Returns true if the response
+	 * status was set, false if not.
+	 * <p/>
+	 * Tags are compared with the weak comparison, as the spec requires for
+	 * If-None-Match, so a "W/" prefix added by a proxy does not matter.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            the quoted entity tag of the content being served
+	 * 
+	 * @return true if a response status was sent, false otherwise.
+	 */
+	public static boolean respondIfNoneMatch(HttpServletRequest request,
+			HttpServletResponse response, String eTag) {
+
+		response.setHeader("ETag", eTag);
+
+		String previousTokens = request.getHeader("If-None-Match");
+		if (previousTokens != null && matchesETag(previousTokens, eTag)) {
+
+			if (log.isDebugEnabled()) {
+				log.debug("NOT MODIFIED (ETag) " + request.getRequestURL());
+			}
+
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if an If-None-Match header value lists the given entity tag.
+	 * 
+	 * @param previousTokens
+	 *            the comma separated entity tags of the header
+	 * @param eTag
+	 *            the quoted entity tag of the content being served
+	 * 
+	 * @return true if the tag is listed or the header is "*".
+	 */
+	public static boolean matchesETag(String previousTokens, String eTag) {
+
+		String opaqueTag = stripWeak(eTag);
+		for (String token : previousTokens.split(",")) {
+			token = token.trim();
+			if ("*".equals(token) || stripWeak(token).equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeak(String eTag) {
+		return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+	}
+
+	/**
+	 * Build an entity tag for a static resource from its length and last
+	 * modified time, which is how most web servers tag files.
+	 * 
+	 * @param length
+	 *            the length of the resource in bytes
+	 * @param lastModifiedTimeMillis
+	 *            the last modified time millis
+	 * 
+	 * @return the quoted entity tag.
+	 */
+	public static String resourceETag(long length, long lastModifiedTimeMillis) {
+		return '"' + Long.toHexString(length) + '-'
+				+ Long.toHexString(lastModifiedTimeMillis) + '"';
+	}
+
 	/**
 	 * Set the Last-Modified header using the given time in milliseconds. Note
 	 * that because the header has the granularity of one second, the value will
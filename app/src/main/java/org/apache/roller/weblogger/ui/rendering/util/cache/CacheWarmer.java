@@ -0,0 +1,551 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogHitCount;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CountMinSketch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+
+/**
+ * Warms the rendering caches with the content readers actually ask for.
+ *
+ * The page and feed servlets record every cacheable request they serve.
+ * Requests are counted in a count-min sketch, and the most requested ones
+ * are kept in a small table along with the weblog they belong to.  When a
+ * weblog is invalidated we request its hottest urls again in the background,
+ * a few at a time, so that the caches are full again by the time readers
+ * come back instead of the first readers after a publish paying for the
+ * renders.
+ *
+ * The table is saved to disk periodically and used to warm the caches once
+ * a node starts.  Without a saved table, the front pages and feeds of the
+ * weblogs with the most hits are warmed instead.
+ *
+ * Warming is done by requesting the urls over http, so that the content goes
+ * through exactly the same path as a reader's request and lands in whichever
+ * cache it belongs to.  The urls are requested at cache.warmup.baseUrl, which
+ * should lead to this node.  Without it the absolute site url is used, which
+ * behind a load balancer may lead to another node, so a node of a cluster
+ * only warms its caches once the base url is set.
+ */
+public final class CacheWarmer implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(CacheWarmer.class);
+    
+    /** Header sent with warmup requests, which are not counted as hits. */
+    public static final String WARMUP_HEADER = "X-Roller-Warmup";
+    
+    // value of the warmup header, known only to this process so that other
+    // clients can't pass their requests off as warmups
+    private final byte[] warmupToken = newWarmupToken();
+    
+    private static final String SAVED_TABLE = "warmup-urls.txt";
+    
+    private static final CacheWarmer singletonInstance = new CacheWarmer();
+    
+    private final boolean enabled;
+    private final int tableSize;
+    private final int perWeblog;
+    private final long delay;
+    private final String baseUrl;
+    private final File savedTable;
+    
+    private final CountMinSketch sketch = new CountMinSketch(4, 8192);
+    
+    // the most requested urls, and the estimate a url must beat to get in
+    private final Map<String, Target> hottest = new ConcurrentHashMap<>();
+    private volatile long threshold = 0;
+    
+    // handles of the weblogs invalidated since the last warmup
+    private final Set<String> pendingWeblogs = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean warmupScheduled = new AtomicBoolean(false);
+    
+    // urls queued for warming, so that each is only queued once
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    
+    private ScheduledExecutorService scheduler = null;
+    private ExecutorService warmers = null;
+    
+    // for metrics
+    private final LongAdder warmed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    
+    
+    private CacheWarmer() {
+        
+        baseUrl = WebloggerConfig.getProperty("cache.warmup.baseUrl");
+        if (WebloggerConfig.getBooleanProperty("cache.warmup.enabled")
+                && StringUtils.isEmpty(baseUrl)
+                && WebloggerConfig.getBooleanProperty("cache.cluster.enabled")) {
+            // the site url may lead to any node of the cluster
+            log.warn("Cache warmup disabled, cache.warmup.baseUrl must be set to"
+                    + " the url of this node when cache.cluster.enabled is set");
+            enabled = false;
+        } else {
+            enabled = WebloggerConfig.getBooleanProperty("cache.warmup.enabled");
+        }
+        tableSize = WebloggerConfig.getIntProperty("cache.warmup.urls", 500);
+        perWeblog = WebloggerConfig.getIntProperty("cache.warmup.perWeblog", 20);
+        delay = WebloggerConfig.getIntProperty("cache.warmup.delay", 2) * (long) RollerConstants.SEC_IN_MS;
+        savedTable = new File(WebloggerConfig.getProperty("cache.disk.dir"), SAVED_TABLE);
+        
+        if (!enabled) {
+            return;
+        }
+        
+        int threads = Math.max(1, WebloggerConfig.getIntProperty("cache.warmup.threads", 2));
+        AtomicInteger count = new AtomicInteger();
+        warmers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "CacheWarmer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ((ThreadPoolExecutor) warmers).allowCoreThreadTimeOut(true);
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CacheWarmerScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // age the counts so the table follows current traffic, and save it
+        long agePeriod = WebloggerConfig.getIntProperty("cache.warmup.agePeriod", 600);
+        scheduler.scheduleWithFixedDelay(this::age, agePeriod, agePeriod, TimeUnit.SECONDS);
+        
+        // warm up once the node is serving requests
+        long startupDelay = WebloggerConfig.getIntProperty("cache.warmup.startupDelay", 30);
+        scheduler.schedule(this::warmOnStartup, startupDelay, TimeUnit.SECONDS);
+        
+        CacheManager.registerHandler(this);
+        CacheManager.registerStats(WeblogPageCache.CACHE_ID, this::getStats);
+        
+        log.info("Cache warmup enabled, tracking the " + tableSize + " most requested urls");
+    }
+    
+    
+    public static CacheWarmer getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Is a request one made by this node to warm its caches?
+     */
+    public boolean isWarmup(HttpServletRequest request) {
+        String token = request.getHeader(WARMUP_HEADER);
+        return token != null && MessageDigest.isEqual(warmupToken, token.getBytes(UTF_8));
+    }
+    
+    
+    /**
+     * Record a request for cacheable content.  Only requests for content
+     * which exists should be recorded, so that made up urls never get warmed.
+     */
+    public void recordHit(HttpServletRequest request, String weblogHandle, boolean siteWide) {
+        
+        if (!enabled || isWarmup(request)) {
+            return;
+        }
+        
+        String url = request.getRequestURI().substring(request.getContextPath().length());
+        if (request.getQueryString() != null) {
+            url += "?" + request.getQueryString();
+        }
+        recordHit(url, weblogHandle, siteWide);
+    }
+    
+    
+    void recordHit(String url, String weblogHandle, boolean siteWide) {
+        
+        long estimate = sketch.add(url);
+        
+        Target target = hottest.get(url);
+        if (target != null) {
+            target.estimate = estimate;
+        } else if (hottest.size() < tableSize || estimate > threshold) {
+            admit(new Target(url, weblogHandle, siteWide, estimate));
+        }
+    }
+    
+    
+    private synchronized void admit(Target target) {
+        
+        if (hottest.size() >= tableSize) {
+            Target coldest = coldest();
+            if (coldest == null || coldest.estimate >= target.estimate) {
+                return;
+            }
+            hottest.remove(coldest.url);
+        }
+        hottest.put(target.url, target);
+        
+        if (hottest.size() >= tableSize) {
+            Target coldest = coldest();
+            threshold = (coldest != null) ? coldest.estimate : 0;
+        }
+    }
+    
+    
+    private Target coldest() {
+        Target coldest = null;
+        for (Target target : hottest.values()) {
+            if (coldest == null || target.estimate < coldest.estimate) {
+                coldest = target;
+            }
+        }
+        return coldest;
+    }
+    
+    
+    /**
+     * The hottest urls which would be warmed for a weblog, hottest first.
+     */
+    List<String> getHottest(String weblogHandle) {
+        
+        List<Target> targets = new ArrayList<>();
+        for (Target target : hottest.values()) {
+            if (weblogHandle == null || target.siteWide
+                    || weblogHandle.equals(target.weblogHandle)) {
+                targets.add(target);
+            }
+        }
+        targets.sort(Comparator.comparingLong((Target target) -> target.estimate).reversed());
+        
+        List<String> urls = new ArrayList<>();
+        Map<String, Integer> perWeblogCounts = new HashMap<>();
+        for (Target target : targets) {
+            // keep one busy weblog from taking all of the warmup
+            int count = perWeblogCounts.merge(String.valueOf(target.weblogHandle), 1, Integer::sum);
+            if (count <= perWeblog || weblogHandle == null) {
+                urls.add(target.url);
+            }
+        }
+        return urls;
+    }
+    
+    
+    /**
+     * Warm the hottest urls of all weblogs now.
+     */
+    public void warmHottest() {
+        if (enabled) {
+            warm(getHottest(null));
+        }
+    }
+    
+    
+    private void scheduleWarmup(Weblog weblog) {
+        
+        if (!enabled || weblog == null) {
+            return;
+        }
+        
+        pendingWeblogs.add(weblog.getHandle());
+        
+        // wait for a moment so that the changes are committed, and so that
+        // a burst of invalidations only warms each url once
+        if (warmupScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::warmPending, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    
+    private void warmPending() {
+        
+        warmupScheduled.set(false);
+        
+        Set<String> urls = new HashSet<>();
+        for (String weblogHandle : new ArrayList<>(pendingWeblogs)) {
+            pendingWeblogs.remove(weblogHandle);
+            urls.addAll(getHottest(weblogHandle));
+        }
+        
+        // warm in order of how hot the urls are
+        List<String> ordered = new ArrayList<>(urls);
+        ordered.sort(Comparator.comparingLong((String url) -> {
+            Target target = hottest.get(url);
+            return (target != null) ? target.estimate : 0;
+        }).reversed());
+        warm(ordered);
+    }
+    
+    
+    private void warm(List<String> urls) {
+        
+        // without a cluster the site url leads back to this node
+        String base = StringUtils.isNotEmpty(baseUrl) ? baseUrl
+                : WebloggerRuntimeConfig.getAbsoluteContextURL();
+        if (StringUtils.isEmpty(base) || urls.isEmpty()) {
+            return;
+        }
+        
+        log.debug("Warming " + urls.size() + " urls");
+        
+        for (String url : urls) {
+            if (queued.add(url)) {
+                warmers.execute(() -> {
+                    try {
+                        fetch(base, url);
+                    } finally {
+                        queued.remove(url);
+                    }
+                });
+            }
+        }
+    }
+    
+    
+    private void fetch(String base, String url) {
+        
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(base + url).openConnection();
+            connection.setRequestProperty(WARMUP_HEADER, new String(warmupToken, UTF_8));
+            connection.setConnectTimeout(5 * RollerConstants.SEC_IN_MS);
+            connection.setReadTimeout(30 * RollerConstants.SEC_IN_MS);
+            
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_OK) {
+                // read all of it so that the page is rendered in full
+                try (InputStream in = connection.getInputStream()) {
+                    byte[] buffer = new byte[RollerConstants.EIGHT_KB_IN_BYTES];
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+                warmed.increment();
+            } else {
+                log.debug("Warming " + url + " returned " + status);
+                failed.increment();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    // gone for good, don't waste any more time on it
+                    hottest.remove(url);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Unable to warm " + url, e);
+            failed.increment();
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+    
+    
+    /**
+     * Halve all counts, and save the table while we are at it.
+     */
+    void age() {
+        
+        sketch.halve();
+        for (Target target : hottest.values()) {
+            target.estimate >>>= 1;
+        }
+        threshold >>>= 1;
+        
+        try {
+            save();
+        } catch (IOException e) {
+            log.warn("Unable to save cache warmup urls to " + savedTable, e);
+        }
+    }
+    
+    
+    private void save() throws IOException {
+        
+        File dir = savedTable.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("unable to create " + dir);
+        }
+        
+        File tmp = new File(savedTable.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), UTF_8)) {
+            for (Target target : hottest.values()) {
+                writer.write(target.estimate + "\t" + target.siteWide + "\t"
+                        + target.weblogHandle + "\t" + target.url);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp.toPath(), savedTable.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    
+    private void warmOnStartup() {
+        
+        if (savedTable.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(savedTable.toPath(), UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 4);
+                    if (fields.length == 4) {
+                        admit(new Target(fields[3], fields[2],
+                                Boolean.parseBoolean(fields[1]), Long.parseLong(fields[0])));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.warn("Unable to read cache warmup urls from " + savedTable, e);
+            }
+        }
+        
+        if (hottest.isEmpty() && WebloggerFactory.isBootstrapped()) {
+            // nothing recorded yet, so go by the weblogs with the most hits
+            try {
+                List<WeblogHitCount> hotWeblogs = WebloggerFactory.getWeblogger()
+                        .getWeblogEntryManager().getHotWeblogs(1, 0, tableSize / 2);
+                for (WeblogHitCount hitCount : hotWeblogs) {
+                    String handle = hitCount.getWeblog().getHandle();
+                    admit(new Target("/" + handle + "/", handle, false, hitCount.getDailyHits()));
+                    admit(new Target("/" + handle + "/feed/entries/atom", handle, false, hitCount.getDailyHits()));
+                }
+            } catch (WebloggerException e) {
+                log.warn("Unable to find the weblogs with the most hits", e);
+            } finally {
+                WebloggerFactory.getWeblogger().release();
+            }
+        }
+        
+        warmHottest();
+    }
+    
+    
+    private static byte[] newWarmupToken() {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random).getBytes(UTF_8);
+    }
+    
+    
+    private Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("warmupUrls", (double) hottest.size());
+        stats.put("warmupQueued", (double) queued.size());
+        stats.put("warmed", (double) warmed.sum());
+        stats.put("warmupFailures", (double) failed.sum());
+        return stats;
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        scheduleWarmup(entry.getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(Weblog website) {
+        scheduleWarmup(website);
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        scheduleWarmup(bookmark.getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        scheduleWarmup(folder.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        scheduleWarmup(comment.getWeblogEntry().getWebsite());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogCategory category) {
+        scheduleWarmup(category.getWeblog());
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        scheduleWarmup(template.getWeblog());
+    }
+    
+    
+    private static final class Target {
+        private final String url;
+        private final String weblogHandle;
+        private final boolean siteWide;
+        private volatile long estimate;
+        
+        Target(String url, String weblogHandle, boolean siteWide, long estimate) {
+            this.url = url;
+            this.weblogHandle = weblogHandle;
+            this.siteWide = siteWide;
+            this.estimate = estimate;
+        }
+    }
+    
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache of where the pages of listings of entries end, so that the next page
+ * of a listing can be found by seeking past the last entry of the page before
+ * rather than by skipping every entry on the pages before with an offset.
+ * This keeps deep pages of a weblog as cheap to render as its first.
+ *
+ * Page urls only carry page numbers, so where each page ends is remembered
+ * here rather than in the url.  Cursors are kept by weblog and listing, along
+ * with a generation for the weblog which moves on whenever its entries or
+ * categories change, so that a page found by seeking always holds the same
+ * entries as the page found by offset would.
+ */
+public final class EntryCursorCache implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(EntryCursorCache.class);
+    
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.entrycursors";
+    
+    // keep cached cursors
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+    
+    // pages before the one wanted which are looked for, pagers go from one
+    // page to the next so the page before is nearly always the one known
+    private static final int MAX_PAGES_BACK = 3;
+    
+    // generation of the cursors of each weblog, by handle
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    
+    // reference to our singleton instance
+    private static final EntryCursorCache singletonInstance = new EntryCursorCache();
+    
+    
+    private EntryCursorCache() {
+        
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1), 
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+    
+    
+    public static EntryCursorCache getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Set where a page of a listing starts.  The page starts past the end of
+     * the nearest of the few pages before it which is known, skipping only
+     * the entries of the pages in between, or else from the first entry with
+     * an offset.
+     *
+     * @param wesc the criteria for the listing, of the weblog it is limited to
+     * @param listing identifies the listing among those of the weblog
+     * @param page the page wanted, counting from zero
+     * @param length the number of entries on a page
+     * @return the start of the keys of the listing's cursors, to pass to put()
+     *         once the page is found, or null if its cursors are not cached
+     */
+    public String seek(WeblogEntrySearchCriteria wesc, String listing, int page, int length) {
+        
+        // cursors are of publication times, which only some listings all have
+        String prefix = null;
+        if (cacheEnabled && wesc.isSeekable()
+                && WeblogEntrySearchCriteria.SortBy.PUBLICATION_TIME.equals(wesc.getSortBy())) {
+            prefix = generateKeyPrefix(wesc, listing);
+        }
+        
+        int offset = page * length;
+        if (prefix != null && page > 0) {
+            for (int known = page - 1; known >= Math.max(0, page - MAX_PAGES_BACK); known--) {
+                Cursor cursor = (Cursor) contentCache.get(prefix + known);
+                if (cursor != null) {
+                    log.debug("HIT "+prefix+known);
+                    wesc.setAfter(cursor.time, cursor.id);
+                    offset = (page - 1 - known) * length;
+                    break;
+                }
+            }
+        }
+        wesc.setOffset(offset);
+        return prefix;
+    }
+    
+    
+    /**
+     * Remember the last entry of a page of a listing, for the page after it.
+     * Nothing is remembered if the weblog changed since the page was sought,
+     * as the page may have been found among entries from before the change.
+     *
+     * @param prefix what seek() returned for the page
+     * @param wesc the criteria the page was found with
+     * @param listing identifies the listing among those of the weblog
+     * @param page the page found, counting from zero
+     * @param last the last entry of the page
+     */
+    public void put(String prefix, WeblogEntrySearchCriteria wesc, String listing, int page,
+            WeblogEntry last) {
+        
+        if (prefix == null || last == null || last.getPubTime() == null) {
+            return;
+        }
+        if (!prefix.equals(generateKeyPrefix(wesc, listing))) {
+            log.debug("CHANGED "+prefix);
+            return;
+        }
+        
+        String key = prefix + page;
+        contentCache.put(key, new Cursor(last.getPubTime(), last.getId()));
+        log.debug("PUT "+key);
+    }
+    
+    
+    /**
+     * Clear the entire cache.
+     */
+    public void clear() {
+        if (cacheEnabled) {
+            contentCache.clear();
+        }
+    }
+    
+    
+    /**
+     * An entry has changed, moving every page of its weblog after it along.
+     */
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        if (entry.getWebsite() != null) {
+            changed(entry.getWebsite().getHandle());
+        }
+    }
+    
+    
+    /**
+     * A weblog has changed, which may have hidden its entries from or shown
+     * them in listings across the site.
+     */
+    @Override
+    public void invalidate(Weblog website) {
+        changed(website.getHandle());
+    }
+    
+    
+    /**
+     * A category has changed, which may have been renamed.
+     */
+    @Override
+    public void invalidate(WeblogCategory category) {
+        if (category.getWeblog() != null) {
+            changed(category.getWeblog().getHandle());
+        }
+    }
+    
+    
+    /**
+     * Move on the generation of the cursors of a weblog, and of listings
+     * across the site which include its entries.  Cursors of the old
+     * generation are never read again and age out of the cache.
+     */
+    private void changed(String weblogHandle) {
+        if (weblogHandle != null) {
+            generation(weblogHandle).incrementAndGet();
+        }
+        generation(CacheDependencies.ANY).incrementAndGet();
+    }
+    
+    
+    private AtomicLong generation(String weblogHandle) {
+        return generations.computeIfAbsent(weblogHandle, k -> new AtomicLong());
+    }
+    
+    
+    /**
+     * Generate the start of the cache keys for the pages of a listing.
+     * This generates a key of the form ...
+     *
+     * <weblog handle or *>@<generation>/<listing>/
+     */
+    private String generateKeyPrefix(WeblogEntrySearchCriteria wesc, String listing) {
+        String handle = (wesc.getWeblog() != null)
+                ? wesc.getWeblog().getHandle() : CacheDependencies.ANY;
+        return CACHE_ID + ':' + handle + '@' + generation(handle).get() + '/' + listing + '/';
+    }
+    
+    
+    private static final class Cursor {
+        
+        private final Date time;
+        private final String id;
+        
+        private Cursor(Date time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+    }
+    
+}
@@ -18,13 +18,19 @@
 
 package org.apache.roller.weblogger.ui.rendering.util.cache;
 
+import java.io.Serializable;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -42,13 +48,21 @@ import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 import org.apache.roller.weblogger.util.cache.CacheHandler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
+import org.apache.roller.weblogger.util.cache.WrappedCacheEntry;
 
 
 /**
  * Cache for site-wide weblog content.
+ *
+ * Site-wide content aggregates data from all weblogs, so rather than clearing
+ * the whole cache whenever anything changes each cached item carries the set
+ * of objects it was rendered from (see CacheDependencies).  Invalidation just
+ * notes the time an object changed, and cached items which depend on it are
+ * lazily dropped the next time they are requested.
  */
 public final class SiteWideCache implements CacheHandler {
     
@@ -64,6 +78,23 @@ public final class SiteWideCache implements CacheHandler {
     
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
+    
+    // last time each dependency was invalidated
+    private final Map<String, Long> invalidations = new ConcurrentHashMap<>();
+    
+    // content built before this time is always considered invalid, which
+    // lets us prune old invalidation times
+    private volatile long invalidBefore = 0;
+    
+    // last time anything at all was invalidated
+    private volatile long lastInvalidation = 0;
+    
+    // once we track this many invalidation times we prune the oldest ones
+    private static final int MAX_INVALIDATIONS = 10000;
+    
+    // for metrics
+    private final LongAdder invalidationCount = new LongAdder();
+    private final LongAdder dependencyMisses = new LongAdder();
 
     // reference to our singleton instance
     private static final SiteWideCache singletonInstance = new SiteWideCache();
@@ -87,10 +118,17 @@ public final class SiteWideCache implements CacheHandler {
             }
         }
         
+        // entries are validated against invalidation times which are only
+        // kept in memory, so entries kept on disk could not be trusted
+        if(cacheProps.remove("diskStore") != null) {
+            log.warn("The site-wide cache does not support a disk store, ignoring it");
+        }
+        
         log.info(cacheProps);
         
         if(cacheEnabled) {
             contentCache = CacheManager.constructCache(this, cacheProps);
+            CacheManager.registerStats(contentCache.getId(), this::getDependencyStats);
         } else {
             log.warn("Caching has been DISABLED");
         }
@@ -112,21 +150,41 @@ public final class SiteWideCache implements CacheHandler {
         
         if(entry == null) {
             log.debug("MISS "+key);
-        } else {
-            log.debug("HIT "+key);
+            return null;
         }
         
-        return entry;
+        DependentCacheEntry dependentEntry = (DependentCacheEntry) entry;
+        if(isInvalid(dependentEntry)) {
+            log.debug("HIT-INVALIDATED "+key);
+            dependencyMisses.increment();
+            contentCache.remove(key);
+            return null;
+        }
+        
+        log.debug("HIT "+key);
+        return dependentEntry.getValue();
     }
     
     
+    /**
+     * Cache content without knowing what it depends on, so that any change
+     * in the system invalidates it.
+     */
     public void put(String key, Object value) {
+        put(key, value, null);
+    }
+    
+    
+    /**
+     * Cache content along with the dependencies recorded while building it.
+     */
+    public void put(String key, Object value, CacheDependencies dependencies) {
         
         if (!cacheEnabled) {
             return;
         }
         
-        contentCache.put(key, value);
+        contentCache.put(key, new DependentCacheEntry(value, dependencies));
         log.debug("PUT "+key);
     }
 
@@ -150,6 +208,11 @@ public final class SiteWideCache implements CacheHandler {
         
         contentCache.clear();
         this.lastUpdateTime = null;
+        this.invalidations.clear();
+        this.invalidBefore = 0;
+        this.lastInvalidation = 0;
+        invalidationCount.reset();
+        dependencyMisses.reset();
         log.debug("CLEAR");
     }
     
@@ -307,6 +370,9 @@ public final class SiteWideCache implements CacheHandler {
     
     /**
      * A weblog entry has changed.
+     *
+     * Besides the content which showed the entry, any listing of entries
+     * for its weblog or for the whole site may now include it.
      */
     @Override
     public void invalidate(WeblogEntry entry) {
@@ -315,13 +381,19 @@ public final class SiteWideCache implements CacheHandler {
             return;
         }
         
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        String handle = entry.getWebsite().getHandle();
+        invalidateDependencies(
+                CacheDependencies.key(CacheDependencies.ENTRY, entry.getId()),
+                CacheDependencies.key(CacheDependencies.ENTRIES, handle),
+                CacheDependencies.key(CacheDependencies.ENTRIES, CacheDependencies.ANY));
     }
     
     
     /**
      * A weblog has changed.
+     *
+     * Changes to the site-wide weblog itself may affect any content, so they
+     * clear the whole cache.
      */
     @Override
     public void invalidate(Weblog website) {
@@ -330,8 +402,24 @@ public final class SiteWideCache implements CacheHandler {
             return;
         }
         
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        if(WebloggerRuntimeConfig.isSiteWideWeblog(website.getHandle())) {
+            this.contentCache.clear();
+            this.invalidations.clear();
+            this.invalidBefore = System.currentTimeMillis();
+            this.lastUpdateTime = null;
+            return;
+        }
+        
+        // weblog changes are also used to signal bulk entry and comment
+        // changes, so refresh the listings of the weblog as well
+        String handle = website.getHandle();
+        invalidateDependencies(
+                CacheDependencies.key(CacheDependencies.WEBLOG, handle),
+                CacheDependencies.key(CacheDependencies.ENTRIES, handle),
+                CacheDependencies.key(CacheDependencies.ENTRIES, CacheDependencies.ANY),
+                CacheDependencies.key(CacheDependencies.COMMENTS, handle),
+                CacheDependencies.key(CacheDependencies.COMMENTS, CacheDependencies.ANY),
+                CacheDependencies.key(CacheDependencies.WEBLOGS, CacheDependencies.ANY));
     }
     
     
@@ -362,9 +450,17 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogEntryComment comment) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(comment.getWeblogEntry().getWebsite().getHandle())) {
-            invalidate(comment.getWeblogEntry().getWebsite());
+        
+        if (!cacheEnabled) {
+            return;
         }
+        
+        WeblogEntry entry = comment.getWeblogEntry();
+        String handle = entry.getWebsite().getHandle();
+        invalidateDependencies(
+                CacheDependencies.key(CacheDependencies.ENTRY, entry.getId()),
+                CacheDependencies.key(CacheDependencies.COMMENTS, handle),
+                CacheDependencies.key(CacheDependencies.COMMENTS, CacheDependencies.ANY));
     }
     
     
@@ -373,7 +469,14 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(User user) {
-        // ignored
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        invalidateDependencies(
+                CacheDependencies.key(CacheDependencies.USER, user.getUserName()),
+                CacheDependencies.key(CacheDependencies.USERS, CacheDependencies.ANY));
     }
     
     
@@ -384,6 +487,9 @@ public final class SiteWideCache implements CacheHandler {
     public void invalidate(WeblogCategory category) {
         if(WebloggerRuntimeConfig.isSiteWideWeblog(category.getWeblog().getHandle())) {
             invalidate(category.getWeblog());
+        } else if (cacheEnabled) {
+            invalidateDependencies(
+                    CacheDependencies.key(CacheDependencies.CATEGORY, category.getId()));
         }
     }
     
@@ -399,6 +505,132 @@ public final class SiteWideCache implements CacheHandler {
     }
     
     
+    /**
+     * Note that the given dependencies changed now.  Cached content which
+     * depends on any of them will be dropped when it is next requested.
+     */
+    private void invalidateDependencies(String... dependencies) {
+        
+        long now = System.currentTimeMillis();
+        for (String dependency : dependencies) {
+            invalidations.put(dependency, now);
+        }
+        invalidationCount.increment();
+        this.lastInvalidation = now;
+        this.lastUpdateTime = null;
+        
+        if (invalidations.size() > MAX_INVALIDATIONS) {
+            pruneInvalidations(now);
+        }
+    }
+    
+    
+    /**
+     * Forget about the older half of the invalidation times, and treat all
+     * content built before the newest forgotten time as invalid.
+     */
+    private synchronized void pruneInvalidations(long now) {
+        
+        if (invalidations.size() <= MAX_INVALIDATIONS) {
+            return;
+        }
+        
+        long[] times = invalidations.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        long cutoff = times[times.length / 2];
+        
+        invalidBefore = Math.max(invalidBefore, cutoff);
+        invalidations.values().removeIf(time -> time <= cutoff);
+        
+        log.debug("PRUNED invalidations up to "+cutoff);
+    }
+    
+    
+    private boolean isInvalid(DependentCacheEntry entry) {
+        
+        if (entry.getTimeCached() <= invalidBefore) {
+            return true;
+        }
+        
+        if (entry.getDependencies() == null) {
+            // content without known dependencies is invalidated by anything
+            return entry.getTimeCached() <= lastInvalidation;
+        }
+        
+        for (String dependency : entry.getDependencies()) {
+            Long time = invalidations.get(dependency);
+            if (time != null && entry.getTimeCached() <= time) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    private Map<String, Object> getDependencyStats() {
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("invalidations", (double) invalidationCount.sum());
+        stats.put("dependencyMisses", (double) dependencyMisses.sum());
+        stats.put("trackedDependencies", invalidations.size());
+        
+        // the cache itself counts content dropped because of a dependency
+        // as a hit, so work out the efficiency as seen by our callers
+        Map<String, Object> cacheStats = contentCache.getStats();
+        if (cacheStats.get("hits") instanceof Number && cacheStats.get("misses") instanceof Number) {
+            double hits = ((Number) cacheStats.get("hits")).doubleValue() - dependencyMisses.sum();
+            double misses = ((Number) cacheStats.get("misses")).doubleValue() + dependencyMisses.sum();
+            if ((hits + misses) > 0) {
+                stats.put("effectiveEfficiency", Math.max(0, hits) / (hits + misses) * RollerConstants.PERCENT_100);
+            }
+        }
+        
+        return stats;
+    }
+    
+    
+    /**
+     * Cached content along with what it depends on.
+     */
+    private static final class DependentCacheEntry implements WrappedCacheEntry, Serializable {
+        
+        private static final long serialVersionUID = 768888410022337580L;
+        
+        private final Object value;
+        private final long timeCached;
+        private final Set<String> dependencies;
+        
+        DependentCacheEntry(Object value, CacheDependencies deps) {
+            this.value = value;
+            if (deps != null) {
+                this.timeCached = deps.getStartTime();
+                // content which recorded nothing may still depend on anything
+                this.dependencies = deps.getDependencies().isEmpty() ? null
+                        : Collections.unmodifiableSet(new HashSet<>(deps.getDependencies()));
+            } else {
+                this.timeCached = System.currentTimeMillis();
+                this.dependencies = null;
+            }
+        }
+        
+        Object getValue() {
+            return value;
+        }
+        
+        @Override
+        public Object peekValue() {
+            return value;
+        }
+        
+        long getTimeCached() {
+            return timeCached;
+        }
+        
+        Set<String> getDependencies() {
+            return dependencies;
+        }
+    }
+    
+    
     private String paramsToString(Map<String, String[]> map) {
         
         if (map == null) {
@@ -44,7 +44,8 @@ import org.apache.roller.weblogger.util.cache.CachedContent;
  * over all weblogs in the system and rendering a set of their content to put
  * in the caches for later use.
  *
- * Currently only supports warming up the feed cache.
+ * Given a list of weblogs only their feeds are warmed up.  Without one, the
+ * most requested pages and feeds are warmed up by the CacheWarmer.
  */
 public class WeblogCacheWarmupJob implements Job {
     
@@ -66,6 +67,7 @@ public class WeblogCacheWarmupJob implements Job {
             @SuppressWarnings("unchecked")
             List<String> weblogs = (List<String>) inputs.get("weblogs");
             if(weblogs == null) {
+                CacheWarmer.getInstance().warmHottest();
                 return;
             }
             
@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -116,11 +117,21 @@ public final class WeblogFeedCache {
     
     public void put(String key, Object value) {
         
+        put(key, value, null);
+    }
+    
+    
+    /**
+     * Put an entry in the cache along with a loader which can render it
+     * again, so that a stale entry can be refreshed in the background.
+     */
+    public void put(String key, Object value, Callable<?> loader) {
+        
         if (!cacheEnabled) {
             return;
         }
         
-        contentCache.put(key, new LazyExpiringCacheEntry(value));
+        contentCache.put(key, new LazyExpiringCacheEntry(value, loader));
         log.debug("PUT "+key);
     }
     
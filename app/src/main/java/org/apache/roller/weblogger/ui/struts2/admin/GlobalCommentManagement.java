@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.ui.struts2.admin;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -110,7 +111,11 @@ public class GlobalCommentManagement extends UIAction implements ServletRequestA
             csc.setEndDate(getBean().getEndDate());
             csc.setStatus(getBean().getStatus());
             csc.setReverseChrono(true);
-            csc.setOffset(getBean().getPage() * COUNT);
+            if (getBean().getAfterTime() != null && getBean().getAfterId() != null) {
+                csc.setAfter(new Date(getBean().getAfterTime()), getBean().getAfterId());
+            } else {
+                csc.setOffset(getBean().getPage() * COUNT);
+            }
             csc.setMaxResults(COUNT+1);
 
             List<WeblogEntryComment> rawComments = wmgr.getComments(csc);
@@ -40,6 +40,10 @@ public class GlobalCommentManagementBean {
     private String endDateString = null;
     private String approvedString = "ALL";
     private int page = 0;
+
+    // time in millis and id of the last item of the page before, if known
+    private Long afterTime = null;
+    private String afterId = null;
     
     private String[] spamComments = new String[0];
     private String[] deleteComments = new String[0];
@@ -159,6 +163,22 @@ public class GlobalCommentManagementBean {
         this.page = page;
     }
 
+    public Long getAfterTime() {
+        return afterTime;
+    }
+
+    public void setAfterTime(Long afterTime) {
+        this.afterTime = afterTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    public void setAfterId(String afterId) {
+        this.afterId = afterId;
+    }
+
     public String getStartDateString() {
         return startDateString;
     }
@@ -40,6 +40,7 @@ import org.apache.roller.weblogger.pojos.WeblogPermission;
 import org.apache.roller.weblogger.ui.core.RollerLoginSessionManager;
 import org.apache.roller.weblogger.ui.struts2.core.Register;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.interceptor.validation.SkipValidation;
 
 
@@ -211,6 +212,9 @@ public class UserEdit extends UIAction {
                     mgr.grantRole("admin", user);
                 }
                 WebloggerFactory.getWeblogger().flush();
+                
+                // notify caches of user profile change
+                CacheManager.invalidate(user);
 
                 // successful add or edit: send user back to user admin page
                 bean = new CreateUserBean();
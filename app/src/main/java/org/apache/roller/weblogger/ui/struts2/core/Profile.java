@@ -28,6 +28,7 @@ import org.apache.roller.weblogger.config.AuthMethod;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.interceptor.validation.SkipValidation;
 
 import java.util.Arrays;
@@ -122,6 +123,9 @@ public class Profile extends UIAction {
                 UserManager mgr = WebloggerFactory.getWeblogger().getUserManager();
                 mgr.saveUser(existingUser);
                 WebloggerFactory.getWeblogger().flush();
+                
+                // notify caches of user profile change
+                CacheManager.invalidate(existingUser);
                 addMessage("generic.changes.saved");
                 return SUCCESS;
             } catch (WebloggerException ex) {
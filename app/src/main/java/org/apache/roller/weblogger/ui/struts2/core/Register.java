@@ -37,6 +37,7 @@ import org.apache.roller.weblogger.ui.core.RollerSession;
 import org.apache.roller.weblogger.ui.core.security.CustomUserRegistry;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
 import org.apache.roller.weblogger.util.MailUtil;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.convention.annotation.AllowedMethods;
 import org.apache.struts2.interceptor.ServletRequestAware;
 import org.apache.struts2.interceptor.validation.SkipValidation;
@@ -310,6 +311,9 @@ public class Register extends UIAction implements ServletRequestAware {
                     mgr.saveUser(user);
                     WebloggerFactory.getWeblogger().flush();
                     
+                    // notify caches of the newly active user
+                    CacheManager.invalidate(user);
+                    
                     setActivationStatus("active");
                     
                 } else {
@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.ui.struts2.editor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -106,7 +107,11 @@ public class Comments extends UIAction {
             }
 
             CommentSearchCriteria csc = getCommentSearchCriteria();
-            csc.setOffset(getBean().getPage() * COUNT);
+            if (getBean().getAfterTime() != null && getBean().getAfterId() != null) {
+                csc.setAfter(new Date(getBean().getAfterTime()), getBean().getAfterId());
+            } else {
+                csc.setOffset(getBean().getPage() * COUNT);
+            }
             csc.setMaxResults(COUNT + 1);
 
             List<WeblogEntryComment> rawComments = wmgr.getComments(csc);
@@ -20,6 +20,7 @@ package org.apache.roller.weblogger.ui.struts2.editor;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,6 +86,7 @@ public class Entries extends UIAction {
         
         List<WeblogEntry> entries = null;
         boolean hasMore = false;
+        boolean seekable = false;
         try {
             String status = getBean().getStatus();
             
@@ -98,7 +100,12 @@ public class Entries extends UIAction {
             wesc.setStatus("ALL".equals(status) ? null : WeblogEntry.PubStatus.valueOf(status));
             wesc.setText(getBean().getText());
             wesc.setSortBy(getBean().getSortBy());
-            wesc.setOffset(getBean().getPage() * COUNT);
+            seekable = wesc.isSeekable();
+            if (seekable && getBean().getAfterTime() != null && getBean().getAfterId() != null) {
+                wesc.setAfter(new Date(getBean().getAfterTime()), getBean().getAfterId());
+            } else {
+                wesc.setOffset(getBean().getPage() * COUNT);
+            }
             wesc.setMaxResults(COUNT + 1);
             List<WeblogEntry> rawEntries = wmgr.getWeblogEntries(wesc);
             entries = new ArrayList<>();
@@ -121,7 +128,8 @@ public class Entries extends UIAction {
         
         // build entries pager
         String baseUrl = buildBaseUrl();
-        setPager(new EntriesPager(baseUrl, getBean().getPage(), entries, hasMore));
+        setPager(new EntriesPager(baseUrl, getBean().getPage(), entries, hasMore,
+                getBean().getSortBy(), seekable));
                 
         return LIST;
     }
@@ -40,6 +40,10 @@ public class EntriesBean {
     private String status = "ALL";
     private WeblogEntrySearchCriteria.SortBy sortBy = WeblogEntrySearchCriteria.SortBy.UPDATE_TIME;
     private int page = 0;
+
+    // time in millis and id of the last item of the page before, if known
+    private Long afterTime = null;
+    private String afterId = null;
     
     
     public EntriesBean() {
@@ -123,6 +127,22 @@ public class EntriesBean {
         this.page = page;
     }
 
+    public Long getAfterTime() {
+        return afterTime;
+    }
+
+    public void setAfterTime(Long afterTime) {
+        this.afterTime = afterTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    public void setAfterId(String afterId) {
+        this.afterId = afterId;
+    }
+
     public String getEndDateString() {
         return endDateString;
     }
@@ -153,6 +173,8 @@ public class EntriesBean {
         buf.append("tags = ").append(getTagsAsString()).append("\n");
         buf.append("text = ").append(getText()).append("\n");
         buf.append("page = ").append(getPage()).append("\n");
+        buf.append("afterTime = ").append(getAfterTime()).append("\n");
+        buf.append("afterId = ").append(getAfterId()).append("\n");
         
         return buf.toString();
     }
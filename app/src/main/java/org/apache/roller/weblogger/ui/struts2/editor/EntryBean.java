@@ -348,8 +348,13 @@ public class EntryBean {
         setTagsAsString(entry.getTagsAsString());
         setSearchDescription(entry.getSearchDescription());
         
-        // set comment count, ignoreSpam=false, approvedOnly=false
-        setCommentCount(entry.getComments(false, false).size());
+        // set comment count, of comments with any status
+        try {
+            WeblogEntryManager wmgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            setCommentCount((int) wmgr.getCommentCount(entry, null));
+        } catch (WebloggerException ex) {
+            log.error("Error counting comments of entry " + entry.getId(), ex);
+        }
         
         // init plugins values
         if(entry.getPlugins() != null) {
@@ -56,6 +56,14 @@ public class CommentsPager {
             int nextPage = pageNum + 1;
             Map<String, String> params = new HashMap<>();
             params.put("bean.page", ""+nextPage);
+            
+            // seek past the last comment shown, rather than skip every
+            // comment on the pages before
+            WeblogEntryComment last = items.get(items.size()-1);
+            if (last.getPostTime() != null) {
+                params.put("bean.afterTime", ""+last.getPostTime().getTime());
+                params.put("bean.afterId", last.getId());
+            }
             return createURL(baseUrl, params);
         }
         return null;
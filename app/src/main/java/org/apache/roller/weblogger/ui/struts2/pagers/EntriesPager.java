@@ -18,10 +18,12 @@
 
 package org.apache.roller.weblogger.ui.struts2.pagers;
 
+import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.util.URLUtilities;
 
 
@@ -42,12 +44,21 @@ public class EntriesPager {
     // are there more items?
     private final boolean moreItems;
     
+    // what the entries are sorted by
+    private final WeblogEntrySearchCriteria.SortBy sortBy;
     
-    public EntriesPager(String url, int page, List<WeblogEntry> entries, boolean hasMore) {
+    // can the next page be found by seeking past the last entry?
+    private final boolean seekable;
+    
+    
+    public EntriesPager(String url, int page, List<WeblogEntry> entries, boolean hasMore,
+            WeblogEntrySearchCriteria.SortBy sortBy, boolean seekable) {
         this.baseUrl = url;
         this.pageNum = page;
         this.items = entries;
         this.moreItems = hasMore;
+        this.sortBy = sortBy;
+        this.seekable = seekable;
     }
     
     
@@ -56,6 +67,16 @@ public class EntriesPager {
             int nextPage = pageNum + 1;
             Map<String, String> params = new HashMap<>();
             params.put("bean.page", ""+nextPage);
+            
+            // seek past the last entry shown, rather than skip every entry
+            // on the pages before
+            WeblogEntry last = items.get(items.size()-1);
+            Timestamp time = WeblogEntrySearchCriteria.SortBy.UPDATE_TIME.equals(sortBy)
+                    ? last.getUpdateTime() : last.getPubTime();
+            if (seekable && time != null) {
+                params.put("bean.afterTime", ""+time.getTime());
+                params.put("bean.afterId", last.getId());
+            }
             return createURL(baseUrl, params);
         }
         return null;
@@ -102,23 +102,19 @@ public final class HTMLSanitizer {
     }
 
     public static SanitizeResult sanitizer(String html, Pattern allowedTags, Pattern forbiddenTags) {
-        SanitizeResult resultAccumulator = new SanitizeResult();
-        Deque<String> openTags = new ArrayDeque<>();
-
-        List<String> tokens = HtmlTokenizer.tokenize(html);
-
-        for (String token : tokens) {
-            processToken(token, allowedTags, forbiddenTags, openTags, resultAccumulator);
-        }
-
-        while (!openTags.isEmpty()) {
-            String poppedTag = openTags.pop();
-            String closeTag = "</" + poppedTag + ">";
-            resultAccumulator.appendHtml(closeTag);
-            resultAccumulator.appendVal(closeTag);
-        }
+        TokenSanitizer sanitizer = new TokenSanitizer(allowedTags, forbiddenTags, new SanitizeResult());
+        HtmlTokenizer.tokenize(html, sanitizer);
+        sanitizer.end();
+        return sanitizer.getResult();
+    }
 
-        return resultAccumulator;
+    /**
+     * Get a sanitizer for HTML which is handed over a token at a time, for
+     * when only the cleaned html is wanted.  The text and val of its result
+     * are left empty.
+     */
+    public static TokenSanitizer htmlSanitizer() {
+        return new TokenSanitizer(ALLOWED_TAGS, FORBIDDEN_TAGS, new SanitizeResult(true));
     }
 
     private static void processToken(String token, Pattern allowedTags, Pattern forbiddenTags,
@@ -293,6 +289,42 @@ public final class HTMLSanitizer {
         return STAND_ALONE_TAGS.matcher(tag).find() || SELF_CLOSED.matcher(tag).find();
     }
 
+    /**
+     * Sanitizes HTML which is handed over a token at a time, as split up by
+     * the {@link HtmlTokenizer}.  Tags left open are closed by end().
+     */
+    public static final class TokenSanitizer implements HtmlTokenHandler {
+        private final Pattern allowedTags;
+        private final Pattern forbiddenTags;
+        private final Deque<String> openTags = new ArrayDeque<>();
+        private final SanitizeResult result;
+
+        private TokenSanitizer(Pattern allowedTags, Pattern forbiddenTags, SanitizeResult result) {
+            this.allowedTags = allowedTags;
+            this.forbiddenTags = forbiddenTags;
+            this.result = result;
+        }
+
+        @Override
+        public void token(String token) {
+            processToken(token, allowedTags, forbiddenTags, openTags, result);
+        }
+
+        @Override
+        public void end() {
+            while (!openTags.isEmpty()) {
+                String poppedTag = openTags.pop();
+                String closeTag = "</" + poppedTag + ">";
+                result.appendHtml(closeTag);
+                result.appendVal(closeTag);
+            }
+        }
+
+        public SanitizeResult getResult() {
+            return result;
+        }
+    }
+
     /**
      * Contains the sanitizing results.
      */
@@ -301,6 +333,15 @@ public final class HTMLSanitizer {
         private final StringBuilder textBuilder = new StringBuilder();
         private final StringBuilder valBuilder = new StringBuilder();
         private final List<String> invalidTags = new ArrayList<>();
+        private final boolean htmlOnly;
+
+        public SanitizeResult() {
+            this(false);
+        }
+
+        SanitizeResult(boolean htmlOnly) {
+            this.htmlOnly = htmlOnly;
+        }
 
         public String getHtml() {
             return htmlBuilder.toString();
@@ -327,11 +368,15 @@ public final class HTMLSanitizer {
         }
 
         void appendText(String s) {
-            textBuilder.append(s);
+            if (!htmlOnly) {
+                textBuilder.append(s);
+            }
         }
 
         void appendVal(String s) {
-            valBuilder.append(s);
+            if (!htmlOnly) {
+                valBuilder.append(s);
+            }
         }
 
         void addInvalidTag(String s) {
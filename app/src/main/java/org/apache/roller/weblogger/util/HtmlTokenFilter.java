@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+/**
+ * A stage of a chain of token handlers, which transforms the tokens it is
+ * handed and passes the result on to the next handler.
+ */
+public abstract class HtmlTokenFilter implements HtmlTokenHandler {
+
+    protected final HtmlTokenHandler next;
+
+    protected HtmlTokenFilter(HtmlTokenHandler next) {
+        this.next = next;
+    }
+
+    /**
+     * Pass markup built by this filter on to the next handler, split up into
+     * tokens the way the tokenizer would have.
+     */
+    protected void emitHtml(String html) {
+        HtmlTokenizer.tokenize(html, next);
+    }
+
+    @Override
+    public void end() {
+        next.end();
+    }
+}
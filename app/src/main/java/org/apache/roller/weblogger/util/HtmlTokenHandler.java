@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+/**
+ * Receives HTML a token at a time, as split up by the {@link HtmlTokenizer}:
+ * tags and comments, which start with '&lt;', and the text between them.
+ */
+public interface HtmlTokenHandler {
+
+    /**
+     * Handle the next token.
+     */
+    void token(String token);
+
+    /**
+     * Called once the last token has been handed over.
+     */
+    default void end() {
+        // nothing to finish by default
+    }
+}
@@ -32,54 +32,48 @@ public final class HtmlTokenizer {
 
     public static List<String> tokenize(String html) {
         List<String> tokens = new ArrayList<>();
+        tokenize(html, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Split HTML into tokens, handing them over one at a time rather than
+     * collecting them.  The handler's end() is left for the caller to call.
+     */
+    public static void tokenize(String html, HtmlTokenHandler handler) {
         int pos = 0;
-        StringBuilder tokenAccumulator = new StringBuilder();
         int len = html.length();
         while (pos < len) {
-            char c = html.charAt(pos);
-
-            String ahead = html.substring(pos, Math.min(len, pos + 4));
+            int end;
 
             // a comment is starting
-            if ("<!--".equals(ahead)) {
-                // store the current token
-                if (tokenAccumulator.length() > 0) {
-                    tokens.add(tokenAccumulator.toString());
-                    tokenAccumulator.setLength(0);
-                }
-
+            if (html.startsWith("<!--", pos)) {
                 // search the end of <......>
-                int end = moveToMarkerEnd(pos, "-->", html);
-                tokens.add(html.substring(pos, end));
-                pos = end;
+                end = moveToMarkerEnd(pos, "-->", html);
 
                 // a new "<" token is starting
-            } else if ('<' == c) {
-
-                // store the current token
-                if (tokenAccumulator.length() > 0) {
-                    tokens.add(tokenAccumulator.toString());
-                    tokenAccumulator.setLength(0);
-                }
-
+            } else if ('<' == html.charAt(pos)) {
                 // serch the end of <......>
-                int end = moveToMarkerEnd(pos, ">", html);
-                tokens.add(html.substring(pos, end));
-                pos = end;
+                end = moveToMarkerEnd(pos, ">", html);
 
+                // text runs up to the next tag
             } else {
-                tokenAccumulator.append(c);
-                pos++;
+                end = html.indexOf('<', pos);
+                if (end < 0) {
+                    end = len;
+                }
             }
 
+            handler.token(html.substring(pos, end));
+            pos = end;
         }
+    }
 
-        // store the last token
-        if (tokenAccumulator.length() > 0) {
-            tokens.add(tokenAccumulator.toString());
-        }
-
-        return tokens;
+    /**
+     * True if a token is a tag or comment rather than text.
+     */
+    public static boolean isMarkup(String token) {
+        return !token.isEmpty() && token.charAt(0) == '<';
     }
 
     private static int moveToMarkerEnd(int pos, String marker, String s) {
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Records which objects a piece of cached content was built from.
+ *
+ * A recording is started on the current thread before content is rendered
+ * and ended once rendering is complete.  While a recording is active the pojo
+ * wrappers and pagers handed to templates register what they expose, so that
+ * a cache can later drop only the content which depends on a changed object.
+ *
+ * Dependencies are plain strings of the form "type:id".  Listings are
+ * recorded with the handle of the weblog they were limited to, or with ANY
+ * when they span the whole site.
+ */
+public final class CacheDependencies {
+
+    public static final String WEBLOG = "weblog";
+    public static final String ENTRY = "entry";
+    public static final String CATEGORY = "category";
+    public static final String USER = "user";
+
+    // listings of objects, which change whenever an object is added
+    public static final String ENTRIES = "entries";
+    public static final String COMMENTS = "comments";
+    public static final String WEBLOGS = "weblogs";
+    public static final String USERS = "users";
+
+    // id used for listings which are not limited to a single weblog
+    public static final String ANY = "*";
+
+    private static final ThreadLocal<CacheDependencies> current = new ThreadLocal<>();
+
+    private final long startTime = System.currentTimeMillis();
+    private final Set<String> dependencies = new HashSet<>();
+
+
+    private CacheDependencies() {}
+
+
+    /**
+     * Start recording dependencies on the current thread.
+     */
+    public static CacheDependencies begin() {
+        CacheDependencies deps = new CacheDependencies();
+        current.set(deps);
+        return deps;
+    }
+
+
+    /**
+     * Stop recording dependencies on the current thread.  This must always
+     * be called once begin() has been, typically from a finally block.
+     */
+    public static CacheDependencies end() {
+        CacheDependencies deps = current.get();
+        current.remove();
+        return deps;
+    }
+
+
+    /**
+     * Record a dependency if a recording is active on the current thread.
+     */
+    public static void record(String type, String id) {
+        CacheDependencies deps = current.get();
+        if (deps != null && id != null) {
+            deps.dependencies.add(key(type, id));
+        }
+    }
+
+
+    /**
+     * Record a listing of objects, limited to the weblog with the given
+     * handle or spanning the whole site when the handle is null.
+     */
+    public static void recordListing(String type, String weblogHandle) {
+        record(type, (weblogHandle != null) ? weblogHandle : ANY);
+    }
+
+
+    public static String key(String type, String id) {
+        return type + ':' + id;
+    }
+
+
+    /**
+     * The time the recording started, which is when the content started
+     * being built.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+
+    public Set<String> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+}
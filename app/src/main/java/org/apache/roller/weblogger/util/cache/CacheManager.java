@@ -18,12 +18,17 @@
 
 package org.apache.roller.weblogger.util.cache;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogBookmark;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
@@ -65,6 +70,12 @@ public final class CacheManager {
     // a map of all registered caches
     private static final Map<String, Cache> caches = new HashMap<>();
     
+    // extra stats about a cache kept by the class using it, keyed by cache id
+    private static final Map<String, Supplier<Map<String, Object>>> cacheStats = new ConcurrentHashMap<>();
+    
+    // relays invalidations to other nodes when running in a cluster
+    private static InvalidationBus invalidationBus = null;
+    
     
     static {
         // lookup what cache factory we want to use
@@ -106,6 +117,24 @@ public final class CacheManager {
         } catch(ReflectiveOperationException e) {
             log.error("Unable to instantiate custom cache handlers", e);
         }
+        
+        // join the cluster, if there is one
+        if(WebloggerConfig.getBooleanProperty("cache.cluster.enabled")) {
+            String transportClass = WebloggerConfig.getProperty("cache.cluster.transport");
+            try {
+                InvalidationTransport transport =
+                        (InvalidationTransport) Reflection.newInstance(transportClass);
+                InvalidationBus bus = new InvalidationBus(transport,
+                        WebloggerConfig.getIntProperty("cache.cluster.batchInterval", 500),
+                        WebloggerConfig.getProperty("cache.cluster.secret"));
+                bus.start();
+                cacheHandlers.add(bus);
+                invalidationBus = bus;
+            } catch(Exception e) {
+                log.error("Unable to start cache invalidation transport ["+transportClass+
+                        "], invalidations will not be sent to other nodes", e);
+            }
+        }
     }
     
     
@@ -161,6 +190,11 @@ public final class CacheManager {
             cache = cacheFactory.constructCache(properties);
         }
         
+        if(cache != null && properties != null
+                && Boolean.parseBoolean(properties.get("diskStore"))) {
+            cache = constructDiskTier(cache, properties);
+        }
+        
         if(cache != null) {
             caches.put(cache.getId(), cache);
             
@@ -174,6 +208,38 @@ public final class CacheManager {
     }
     
     
+    /**
+     * Put a disk store behind a cache, so that its entries survive restarts.
+     * The store is kept in a directory named after the cache, under the
+     * directory given by the cache.disk.dir property.
+     */
+    private static Cache constructDiskTier(Cache cache, Map<String, String> properties) {
+        
+        long maxBytes = parseLong(properties.get("diskStore.maxBytes"), 256L * 1024 * 1024);
+        int segmentSize = (int) parseLong(properties.get("diskStore.segmentSize"), 16L * 1024 * 1024);
+        long timeout = parseLong(properties.get("timeout"), 0) * 1000;
+        
+        File dir = new File(WebloggerConfig.getProperty("cache.disk.dir"), cache.getId());
+        try {
+            return new DiskTieredCache(cache, new DiskCacheStore(dir, maxBytes, segmentSize), timeout);
+        } catch(IOException e) {
+            log.error("Unable to open disk store for cache ["+cache.getId()+
+                    "], caching in memory only", e);
+            return cache;
+        }
+    }
+    
+    
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return (value != null) ? Long.parseLong(value.trim()) : defaultValue;
+        } catch(NumberFormatException e) {
+            log.warn("Invalid number ["+value+"], using default of "+defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    
     /**
      * Register a CacheHandler to listen for object invalidations.
      *
@@ -273,6 +339,9 @@ public final class CacheManager {
         for (Cache cache : caches.values()) {
             cache.clear();
         }
+        if(invalidationBus != null) {
+            invalidationBus.clear(null);
+        }
     }
     
     
@@ -284,6 +353,9 @@ public final class CacheManager {
         if(cache != null) {
             cache.clear();
         }
+        if(invalidationBus != null) {
+            invalidationBus.clear(cacheId);
+        }
     }
     
     
@@ -298,17 +370,76 @@ public final class CacheManager {
     public static Map<String, Map<String, Object>> getStats() {
         Map<String, Map<String, Object>> allStats = new HashMap<>();
         for (Cache cache : caches.values()) {
-            allStats.put(cache.getId(), cache.getStats());
+            Map<String, Object> stats = new HashMap<>(cache.getStats());
+            Supplier<Map<String, Object>> extraStats = cacheStats.get(cache.getId());
+            if (extraStats != null) {
+                stats.putAll(extraStats.get());
+            }
+            allStats.put(cache.getId(), stats);
         }
         return allStats;
     }
     
     
+    /**
+     * Register additional stats for a cache.
+     *
+     * Classes which add their own logic on top of a cache, such as lazy
+     * invalidation, can use this to report on it alongside the cache stats.
+     */
+    public static void registerStats(String cacheId, Supplier<Map<String, Object>> stats) {
+        if (cacheId != null && stats != null) {
+            cacheStats.put(cacheId, stats);
+        }
+    }
+    
+    
+    /**
+     * Run a cache maintenance task, such as the refresh of a stale entry, on
+     * the background executor of the thread manager.
+     *
+     * @return false if the task could not be queued, which is the case until
+     *         the weblogger has been bootstrapped.
+     */
+    public static boolean executeInBackground(Runnable task) {
+        
+        if (!WebloggerFactory.isBootstrapped()) {
+            return false;
+        }
+        
+        try {
+            WebloggerFactory.getWeblogger().getThreadManager().executeInBackground(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Error running background cache task", e);
+                } finally {
+                    // tasks may have used the persistence layer
+                    WebloggerFactory.getWeblogger().release();
+                }
+            });
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Unable to queue background cache task", e);
+        }
+        return false;
+    }
+    
+    
     /**
      * Place to do any cleanup tasks for cache system.
      */
     public static void shutdown() {
-        // no-op
+        for (Cache cache : caches.values()) {
+            if (cache instanceof DiskTieredCache) {
+                ((DiskTieredCache) cache).close();
+            }
+        }
+        if(invalidationBus != null) {
+            invalidationBus.stop();
+        }
     }
     
 }
@@ -3,9 +3,22 @@ package org.apache.roller.weblogger.util.cache;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -17,10 +30,25 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public class CachedContent implements AutoCloseable, Serializable {
     
+    private static final long serialVersionUID = 3793751053582805012L;
+    
     private static final Log log = LogFactory.getLog(CachedContent.class);
     
     // the byte array we use to maintain the cached content
-    private byte[] content = new byte[0];
+    private volatile byte[] content = new byte[0];
+    
+    // the cached content once it has been moved out of the java heap
+    private transient volatile ByteBuffer offHeapContent = null;
+    
+    // gzip compressed copy of the content, built the first time it's needed
+    private volatile byte[] gzipContent = null;
+    
+    // told when the gzip copy is kept, so that the caches holding this object
+    // can weigh it, by who registered them.  guarded by this object's lock
+    private transient Map<Object, Runnable> weightListeners = null;
+    
+    // strong entity tag for the content, computed once the content is closed
+    private volatile String eTag = null;
     
     // content-type of data in byte array
     private final String contentType;
@@ -58,7 +86,186 @@ public class CachedContent implements AutoCloseable, Serializable {
      *       enclosed Writer up until the last call to flush().
      */
     public byte[] getContent() {
-        return this.content;
+        
+        // read the heap copy first, moveOffHeap() publishes the buffer before
+        // it drops the byte array
+        byte[] heapContent = this.content;
+        ByteBuffer buffer = this.offHeapContent;
+        if(buffer != null) {
+            byte[] copy = new byte[buffer.capacity()];
+            buffer.duplicate().get(copy);
+            return copy;
+        }
+        return heapContent;
+    }
+    
+    
+    /**
+     * Get the length in bytes of the content cached in this object.
+     */
+    public int getContentLength() {
+        
+        byte[] heapContent = this.content;
+        ByteBuffer buffer = this.offHeapContent;
+        return (buffer != null) ? buffer.capacity() : heapContent.length;
+    }
+    
+    
+    /**
+     * Write the content cached in this object to the given stream.
+     *
+     * Unlike getContent() this does not make a heap copy of content which has
+     * been moved off heap, the bytes are streamed out of the direct buffer.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        
+        byte[] heapContent = this.content;
+        ByteBuffer buffer = this.offHeapContent;
+        if(buffer != null) {
+            Channels.newChannel(out).write(buffer.duplicate());
+        } else {
+            out.write(heapContent);
+        }
+    }
+    
+    
+    /**
+     * Get the content cached in this object compressed with gzip.
+     *
+     * The compressed copy is built once and kept alongside the content, so
+     * that serving it to many clients costs no more than serving the content.
+     */
+    public byte[] getGzipContent() throws IOException {
+        
+        byte[] compressed = this.gzipContent;
+        if(compressed == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, getContentLength() / 4));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                writeTo(gzip);
+            }
+            compressed = bytes.toByteArray();
+            
+            // only keep it once the content can't change anymore
+            if(this.outstream == null) {
+                Collection<Runnable> listeners = Collections.emptyList();
+                synchronized (this) {
+                    if(this.gzipContent == null) {
+                        this.gzipContent = compressed;
+                        // the weight won't grow again, so they are done
+                        if(this.weightListeners != null) {
+                            listeners = this.weightListeners.values();
+                            this.weightListeners = null;
+                        }
+                    } else {
+                        compressed = this.gzipContent;
+                    }
+                }
+                for(Runnable listener : listeners) {
+                    listener.run();
+                }
+            }
+            log.debug("COMPRESSED "+getContentLength()+" to "+compressed.length);
+        }
+        return compressed;
+    }
+    
+    
+    /**
+     * Get the number of bytes this object holds, the content plus the gzip
+     * copy of it once that has been built.
+     */
+    public long getWeight() {
+        byte[] compressed = this.gzipContent;
+        return getContentLength() + ((compressed != null) ? compressed.length : 0);
+    }
+    
+    
+    /**
+     * Add what to tell when the weight of this object grows, which happens
+     * when the gzip copy is built after the object was cached.  The same
+     * object may be held by several caches, each registers its own listener,
+     * and a listener replaces the one registered before by the same owner.
+     */
+    synchronized void addWeightListener(Object owner, Runnable listener) {
+        if(this.gzipContent != null) {
+            // already weighed in full
+            return;
+        }
+        if(this.weightListeners == null) {
+            this.weightListeners = new HashMap<>();
+        }
+        this.weightListeners.put(owner, listener);
+    }
+    
+    
+    /**
+     * Get a strong entity tag for the content cached in this object, in the
+     * quoted form used by the ETag header.
+     *
+     * The tag is a hash of the content bytes, so two renderings which produce
+     * the same bytes get the same tag no matter when they were made.  It is
+     * computed when the content is closed, which is before it's put into a
+     * cache, so serving it costs nothing.
+     */
+    public String getETag() {
+        
+        String tag = this.eTag;
+        if(tag == null) {
+            tag = computeETag();
+            
+            // only keep it once the content can't change anymore
+            if(this.outstream == null) {
+                this.eTag = tag;
+            }
+        }
+        return tag;
+    }
+    
+    
+    private String computeETag() {
+        
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        
+        byte[] heapContent = this.content;
+        ByteBuffer buffer = this.offHeapContent;
+        if(buffer != null) {
+            digest.update(buffer.duplicate());
+        } else {
+            digest.update(heapContent);
+        }
+        
+        // 128 bits of the hash is plenty to tell versions of a page apart
+        byte[] hash = digest.digest();
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Arrays.copyOf(hash, 16)) + '"';
+    }
+    
+    
+    /**
+     * Move the content of this object into a direct buffer outside of the
+     * java heap, so that large caches of rendered content don't add to the
+     * work of the garbage collector.
+     *
+     * Only content which has been closed can be moved.
+     */
+    void moveOffHeap() {
+        
+        if(this.outstream != null || this.offHeapContent != null) {
+            return;
+        }
+        
+        byte[] heapContent = this.content;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(heapContent.length);
+        buffer.put(heapContent).flip();
+        
+        this.offHeapContent = buffer.asReadOnlyBuffer();
+        this.content = new byte[0];
     }
     
     
@@ -69,7 +276,7 @@ public class CachedContent implements AutoCloseable, Serializable {
      *       enclosed Writer up until the last call to flush().
      */
     public String getContentAsString() {
-        return new String(this.content, UTF_8);
+        return new String(getContent(), UTF_8);
     }
     
     
@@ -121,9 +328,34 @@ public class CachedContent implements AutoCloseable, Serializable {
             }
             this.outstream.close();
             this.outstream = null;
+            
+            // hash the content now, while it's being put into a cache, rather
+            // than on the first conditional request for it
+            this.eTag = computeETag();
         }
         
         log.debug("CLOSED");
     }
     
+    
+    /**
+     * True if the content has been moved out of the java heap.
+     */
+    boolean isOffHeap() {
+        return this.offHeapContent != null;
+    }
+    
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        
+        // direct buffers can't be serialized, so write a heap copy of the
+        // content in its place, leaving this object's content off heap
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("content", getContent());
+        fields.put("gzipContent", this.gzipContent);
+        fields.put("eTag", this.eTag);
+        fields.put("contentType", this.contentType);
+        out.writeFields();
+    }
+    
 }
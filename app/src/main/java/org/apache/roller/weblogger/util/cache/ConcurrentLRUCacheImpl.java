@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * A segmented, approximate LRU cache.
+ *
+ * Keys are spread over a fixed number of segments, each backed by a
+ * ConcurrentHashMap.  Reads never take a lock, they only stamp the entry with
+ * the time of access.  Writes lock their own segment only, and when a
+ * segment grows past its share of the maximum size we evict the entry with
+ * the oldest access stamp among a few entries of that segment picked at
+ * random, so that a put costs the same however large the segment is.
+ * Eviction is therefore only approximately LRU, although exact in segments
+ * no larger than the sample.
+ */
+public class ConcurrentLRUCacheImpl implements Cache {
+
+    // number of entries sampled to pick one to evict
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final String id;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    // for metrics
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+    protected final LongAdder puts = new LongAdder();
+    protected final LongAdder removes = new LongAdder();
+    protected volatile Date startTime = new Date();
+
+
+    protected ConcurrentLRUCacheImpl(String id) {
+
+        this(id, 100);
+    }
+
+
+    protected ConcurrentLRUCacheImpl(String id, int maxsize) {
+
+        this(id, maxsize, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+
+    protected ConcurrentLRUCacheImpl(String id, int maxsize, int concurrency) {
+
+        this.id = id;
+
+        int max = Math.max(1, maxsize);
+
+        // never use more segments than entries, and round to a power of two
+        int count = 1;
+        while (count < concurrency && count * 2 <= max) {
+            count <<= 1;
+        }
+
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            // hand out the remainder so that the segment sizes add up to max
+            this.segments[i] = new Segment(max / count + (i < max % count ? 1 : 0));
+        }
+    }
+
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+
+    /**
+     * Store an entry in the cache.
+     */
+    @Override
+    public void put(String key, Object value) {
+
+        segmentFor(key).put(key, value, System.nanoTime());
+        puts.increment();
+    }
+
+
+    /**
+     * Retrieve an entry from the cache.
+     */
+    @Override
+    public Object get(String key) {
+
+        Node node = segmentFor(key).map.get(key);
+
+        // for metrics
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        node.lastAccess = System.nanoTime();
+
+        return node.value;
+    }
+
+
+    @Override
+    public void remove(String key) {
+
+        segmentFor(key).remove(key);
+        removes.increment();
+    }
+
+
+    @Override
+    public void clear() {
+
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+
+        // clear metrics
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removes.reset();
+        startTime = new Date();
+    }
+
+
+    /**
+     * The number of entries currently held, summed over all segments.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        double h = hits.sum();
+        double m = misses.sum();
+        double r = removes.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("startTime", this.startTime);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("puts", (double) puts.sum());
+        stats.put("removes", r);
+
+        // calculate efficiency
+        if ((m - r) > 0) {
+            double efficiency = h / (m + h);
+            stats.put("efficiency", efficiency * RollerConstants.PERCENT_100);
+        }
+
+        return stats;
+    }
+
+
+    private Segment segmentFor(String key) {
+        // spread the hash bits the same way HashMap does
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+
+    private static final class Node {
+        private final String key;
+        private final Object value;
+        private volatile long lastAccess;
+
+        // position of the key in its segment, guarded by the segment lock
+        private int slot;
+
+        Node(String key, Object value, long lastAccess) {
+            this.key = key;
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+
+    private static final class Segment {
+        private final ConcurrentHashMap<String, Node> map;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int maxsize;
+
+        // keys held, for sampling at random, guarded by the lock
+        private final String[] keys;
+        private int count = 0;
+
+        Segment(int maxsize) {
+            this.maxsize = Math.max(1, maxsize);
+            this.map = new ConcurrentHashMap<>(this.maxsize * 4 / 3 + 1);
+            this.keys = new String[this.maxsize + 1];
+        }
+
+        void put(String key, Object value, long stamp) {
+            lock.lock();
+            try {
+                Node node = new Node(key, value, stamp);
+                Node old = map.put(key, node);
+                if (old != null) {
+                    node.slot = old.slot;
+                } else {
+                    node.slot = count;
+                    keys[count++] = key;
+                    if (count > maxsize) {
+                        evictOne(key);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(String key) {
+            lock.lock();
+            try {
+                Node node = map.remove(key);
+                if (node != null) {
+                    release(node.slot);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                Arrays.fill(keys, null);
+                count = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Evict the least recently used of a few entries of this segment
+         * picked at random, never the entry which was just added.  Segments
+         * no larger than the sample are looked through whole.
+         */
+        private void evictOne(String justAdded) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            boolean whole = count <= EVICTION_SAMPLE;
+            Node victim = null;
+
+            for (int i = 0; i < Math.min(count, EVICTION_SAMPLE); i++) {
+                Node node = map.get(keys[whole ? i : random.nextInt(count)]);
+                if (!node.key.equals(justAdded)
+                        && (victim == null || node.lastAccess < victim.lastAccess)) {
+                    victim = node;
+                }
+            }
+
+            if (victim == null) {
+                // only the entry just added was picked, take its neighbour
+                victim = map.get(keys[(map.get(justAdded).slot + 1) % count]);
+            }
+
+            map.remove(victim.key);
+            release(victim.slot);
+        }
+
+        /**
+         * Free a slot of the keys, moving the last key into it.
+         */
+        private void release(int slot) {
+            int last = --count;
+            if (slot != last) {
+                keys[slot] = keys[last];
+                map.get(keys[slot]).slot = slot;
+            }
+            keys[last] = null;
+        }
+    }
+
+}
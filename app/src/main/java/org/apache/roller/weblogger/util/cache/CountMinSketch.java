@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A count-min sketch, which estimates how often each key has been seen in
+ * a fixed amount of memory.
+ *
+ * Each key is counted in one cell of every row, picked by a different hash
+ * per row, and its estimate is the smallest of those cells.  Collisions can
+ * only make an estimate too high, never too low, and with a few rows of a
+ * few thousand cells the estimates of the keys seen most are close enough
+ * to tell which keys are hot.
+ *
+ * Counting never takes a lock.  Counts can be halved to age them, so that
+ * the estimates follow recent traffic rather than all traffic ever seen.
+ */
+public class CountMinSketch {
+    
+    private final int depth;
+    private final int widthMask;
+    private final AtomicLongArray counts;
+    
+    
+    /**
+     * @param depth the number of rows, each with its own hash
+     * @param width the number of cells in a row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        
+        this.depth = Math.max(1, depth);
+        
+        int w = 1;
+        while (w < width && w < (1 << 24)) {
+            w <<= 1;
+        }
+        this.widthMask = w - 1;
+        this.counts = new AtomicLongArray(this.depth * w);
+    }
+    
+    
+    /**
+     * Count one more occurrence of a key.
+     *
+     * @return the estimated count of the key, including this occurrence
+     */
+    public long add(String key) {
+        
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long count = counts.incrementAndGet(index(row, hash));
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+    
+    
+    /**
+     * The estimated count of a key.
+     */
+    public long estimate(String key) {
+        
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts.get(index(row, hash)));
+        }
+        return estimate;
+    }
+    
+    
+    /**
+     * Halve all counts, so that older occurrences weigh less than new ones.
+     */
+    public void halve() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.getAndUpdate(i, count -> count >>> 1);
+        }
+    }
+    
+    
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+    
+    
+    private int index(int row, int hash) {
+        // derive a hash per row from the string hash and a per row seed
+        int h = hash * (0x9E3779B9 + (row << 1));
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return row * (widthMask + 1) + (h & widthMask);
+    }
+    
+}
@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+
+/**
+ * An append-only store of byte values on disk, kept in memory-mapped
+ * segment files.
+ *
+ * Every put appends a record to the current segment, and the newest record
+ * for a key wins.  Segments have a fixed size; when one is full a new one
+ * is started, and once the store holds more segments than its budget allows
+ * the oldest segment is deleted along with every value still in it.  Reads
+ * go straight to the mapped segments without taking a lock.
+ *
+ * The key index is only kept in memory and is rebuilt by scanning the
+ * segments when a store is opened, which is what makes the store survive a
+ * restart.  Each record carries a checksum so that a record torn by a crash
+ * ends the scan of its segment instead of being read back.
+ *
+ * Writes are serialized by a single lock and may have to create and map a
+ * new segment file, so they should be made off the request path, the way
+ * DiskTieredCache does with its background writer.
+ */
+public class DiskCacheStore {
+    
+    private static final Log log = LogFactory.getLog(DiskCacheStore.class);
+    
+    // record header: payload length, checksum, time written
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    
+    // guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current = null;
+    private long nextSequence = 0;
+    
+    
+    /**
+     * Open the store kept in the given directory, creating it if needed.
+     *
+     * @param maxBytes roughly the most disk space the store will use
+     * @param segmentSize the size of each segment file, which also bounds
+     *        the size of a single value
+     */
+    public DiskCacheStore(File dir, long maxBytes, int segmentSize) throws IOException {
+        
+        this.dir = dir;
+        this.segmentSize = Math.max(HEADER_SIZE * 64, segmentSize);
+        this.maxSegments = (int) Math.max(2, maxBytes / this.segmentSize);
+        
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("unable to create cache directory " + dir);
+        }
+        
+        File[] files = dir.listFiles((d, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            // names are zero padded, so they sort in the order written
+            Arrays.sort(files);
+            for (File file : files) {
+                Segment segment = openSegment(file, sequenceOf(file));
+                if (segment != null) {
+                    segments.add(segment);
+                    nextSequence = Math.max(nextSequence, segment.sequence + 1);
+                    load(segment);
+                }
+            }
+        }
+        
+        if (!segments.isEmpty()) {
+            current = segments.get(segments.size() - 1);
+        }
+        
+        log.info("Opened disk cache " + dir + " with " + index.size() + " entries");
+    }
+    
+    
+    /**
+     * Get the value stored for a key, or null if there is none or it was
+     * written before the given time.
+     */
+    public byte[] get(String key, long notBefore) {
+        
+        Location location = index.get(key);
+        if (location == null || location.timeWritten < notBefore) {
+            return null;
+        }
+        
+        byte[] value = new byte[location.valueLength];
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.position(location.valueOffset);
+        buffer.get(value);
+        return value;
+    }
+    
+    
+    /**
+     * Store a value for a key.  Values too big for a segment are not stored.
+     */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        
+        append(key, value, System.currentTimeMillis());
+    }
+    
+    
+    /**
+     * True if there is a value for a key.
+     */
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+    
+    
+    /**
+     * Stop reading the value for a key, without writing to disk, so that
+     * it comes back on restart unless it is removed as well.
+     *
+     * @return true if there was a value for the key
+     */
+    public boolean forget(String key) {
+        return index.remove(key) != null;
+    }
+    
+    
+    /**
+     * Remove the value for a key, so that it doesn't come back on restart.
+     * The removal is written whether or not the key was forgotten already.
+     */
+    public synchronized void remove(String key) throws IOException {
+        
+        index.remove(key);
+        append(key, null, System.currentTimeMillis());
+    }
+    
+    
+    /**
+     * Remove all values by deleting every segment.
+     */
+    public synchronized void clear() {
+        
+        index.clear();
+        for (Segment segment : segments) {
+            delete(segment);
+        }
+        segments.clear();
+        current = null;
+    }
+    
+    
+    /**
+     * Write everything appended so far to disk.
+     */
+    public synchronized void close() {
+        
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+    
+    
+    public int size() {
+        return index.size();
+    }
+    
+    
+    public synchronized long getBytes() {
+        
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.writePosition;
+        }
+        return bytes;
+    }
+    
+    
+    private void append(String key, byte[] value, long time) throws IOException {
+        
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int valueLength = (value != null) ? value.length : -1;
+        int payloadLength = 4 + keyBytes.length + 4 + Math.max(0, valueLength);
+        int recordLength = HEADER_SIZE + payloadLength;
+        
+        // leave room for the zero length which ends the segment
+        if (recordLength + 4 > segmentSize) {
+            log.debug("Not storing " + key + ", " + recordLength + " bytes is too big");
+            index.remove(key);
+            return;
+        }
+        
+        if (current == null || current.writePosition + recordLength + 4 > segmentSize) {
+            rollSegment();
+        }
+        
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        payload.putInt(keyBytes.length).put(keyBytes).putInt(valueLength);
+        if (value != null) {
+            payload.put(value);
+        }
+        
+        int offset = current.writePosition;
+        ByteBuffer buffer = current.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(payloadLength);
+        buffer.putInt(checksum(time, payload.array()));
+        buffer.putLong(time);
+        buffer.put(payload.array());
+        current.writePosition = offset + recordLength;
+        
+        if (value != null) {
+            int valueOffset = offset + HEADER_SIZE + 4 + keyBytes.length + 4;
+            index.put(key, new Location(current, valueOffset, value.length, time));
+        }
+    }
+    
+    
+    private void rollSegment() throws IOException {
+        
+        File file = new File(dir, String.format("%s%016d%s",
+                SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        Segment segment = openSegment(file, nextSequence++);
+        if (segment == null) {
+            throw new IOException("unable to create cache segment " + file);
+        }
+        segments.add(segment);
+        current = segment;
+        
+        // stay within budget by dropping the oldest values
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            index.values().removeIf(location -> location.segment == oldest);
+            delete(oldest);
+        }
+    }
+    
+    
+    private Segment openSegment(File file, long sequence) throws IOException {
+        
+        if (sequence < 0) {
+            return null;
+        }
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != segmentSize) {
+                if (raf.length() > 0) {
+                    // written with another segment size, not worth converting
+                    log.info("Discarding cache segment " + file);
+                    raf.setLength(0);
+                }
+                raf.setLength(segmentSize);
+            }
+            // the mapping stays valid once the file is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(file, sequence, buffer);
+        }
+    }
+    
+    
+    /**
+     * Rebuild the index from the records of a segment.
+     */
+    private void load(Segment segment) {
+        
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            buffer.position(position);
+            int payloadLength = buffer.getInt();
+            if (payloadLength <= 0 || position + HEADER_SIZE + payloadLength > segmentSize) {
+                break;
+            }
+            
+            int crc = buffer.getInt();
+            long time = buffer.getLong();
+            byte[] payload = new byte[payloadLength];
+            buffer.get(payload);
+            if (crc != checksum(time, payload)) {
+                log.warn("Corrupt record in " + segment.file + " at " + position);
+                break;
+            }
+            
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte[] keyBytes = new byte[record.getInt()];
+            record.get(keyBytes);
+            String key = new String(keyBytes, UTF_8);
+            int valueLength = record.getInt();
+            if (valueLength < 0) {
+                index.remove(key);
+            } else {
+                int valueOffset = position + HEADER_SIZE + 4 + keyBytes.length + 4;
+                index.put(key, new Location(segment, valueOffset, valueLength, time));
+            }
+            
+            position += HEADER_SIZE + payloadLength;
+        }
+        segment.writePosition = position;
+        
+        // anything after a torn record is lost, so overwrite from here on
+        if (position + 4 <= segmentSize) {
+            segment.buffer.putInt(position, 0);
+        }
+    }
+    
+    
+    private void delete(Segment segment) {
+        if (!segment.file.delete()) {
+            log.warn("Unable to delete cache segment " + segment.file);
+        }
+    }
+    
+    
+    private static int checksum(long time, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, time).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    
+    private static final class Segment {
+        private final File file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private volatile int writePosition = 0;
+        
+        Segment(File file, long sequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+    
+    
+    private static final class Location {
+        private final Segment segment;
+        private final int valueOffset;
+        private final int valueLength;
+        private final long timeWritten;
+        
+        Location(Segment segment, int valueOffset, int valueLength, long timeWritten) {
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.timeWritten = timeWritten;
+        }
+    }
+    
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * A cache which keeps a copy of its entries on disk, behind an in-memory
+ * cache.
+ *
+ * Entries are read from the memory cache first and from the disk store only
+ * when the memory cache misses, in which case they are put back into the
+ * memory cache.  Every serializable entry put in the cache is also written
+ * to the disk store, so the entries in use survive a restart.
+ *
+ * Writing to disk is left to a background thread, so that requests putting
+ * content in the cache don't wait on serialization or on the store's lock.
+ * When the writer falls too far behind, new entries are only kept in memory.
+ * Removing an entry drops any write of it still waiting and stops it being
+ * read from disk straight away, and leaves writing the removal to disk, so
+ * that it doesn't come back on restart, to the background thread as well.
+ *
+ * Entries keep whatever they need to be validated, such as the time they
+ * were cached in a LazyExpiringCacheEntry, so it is still up to the class
+ * using the cache to check that an entry read back from disk is fresh.  The
+ * cache itself only ignores entries written longer ago than its timeout.
+ */
+public class DiskTieredCache implements Cache {
+    
+    private static final Log log = LogFactory.getLog(DiskTieredCache.class);
+    
+    // only our own entries are ever read back
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "org.apache.roller.**;java.lang.*;java.util.*;!*");
+    
+    // most entries waiting to be written before new ones are skipped
+    private static final int MAX_PENDING = 1000;
+    
+    // pending in place of an entry whose removal is waiting to be written
+    private static final Object REMOVED = new Object();
+    
+    private final Cache memory;
+    private final DiskCacheStore disk;
+    private final long timeout;
+    
+    // entries and removals waiting to be written, and the thread writing them
+    private final Map<String, Object> pending = new ConcurrentHashMap<>();
+    private final ExecutorService writer;
+    
+    // held while touching the store, so removes are ordered with writes
+    private final Object diskLock = new Object();
+    
+    // for metrics
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder diskMisses = new LongAdder();
+    private final LongAdder diskErrors = new LongAdder();
+    
+    
+    /**
+     * @param timeout time in milliseconds after which entries on disk are
+     *        no longer used, or 0 to keep using them until they are evicted
+     */
+    public DiskTieredCache(Cache memory, DiskCacheStore disk, long timeout) {
+        this.memory = memory;
+        this.disk = disk;
+        this.timeout = timeout;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CacheDiskWriter-" + memory.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    
+    @Override
+    public String getId() {
+        return memory.getId();
+    }
+    
+    
+    @Override
+    public Object get(String key) {
+        
+        Object value = memory.get(key);
+        if (value != null) {
+            return value;
+        }
+        
+        // a write already under way when the entry was removed may land
+        // on disk before the removal does
+        if (pending.get(key) == REMOVED) {
+            diskMisses.increment();
+            return null;
+        }
+        
+        long notBefore = (timeout > 0) ? System.currentTimeMillis() - timeout : 0;
+        byte[] bytes = disk.get(key, notBefore);
+        if (bytes == null) {
+            diskMisses.increment();
+            return null;
+        }
+        
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            in.setObjectInputFilter(FILTER);
+            value = in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            // most likely written by an older version of a cached class
+            log.debug("Unable to read " + key + " from disk", e);
+            diskErrors.increment();
+            remove(key);
+            return null;
+        }
+        
+        diskHits.increment();
+        memory.put(key, value);
+        return value;
+    }
+    
+    
+    @Override
+    public void put(String key, Object value) {
+        
+        memory.put(key, value);
+        
+        if (!(value instanceof Serializable)) {
+            return;
+        }
+        
+        if (pending.size() >= MAX_PENDING) {
+            log.debug("Not writing " + key + " to disk, too many writes pending");
+            return;
+        }
+        
+        pending.put(key, value);
+        try {
+            writer.execute(() -> write(key, value));
+        } catch (RejectedExecutionException e) {
+            // closed, so it stays in memory only
+            pending.remove(key, value);
+        }
+    }
+    
+    
+    /**
+     * Write an entry to disk, unless it was removed or replaced meanwhile.
+     */
+    private void write(String key, Object value) {
+        
+        if (pending.get(key) != value) {
+            return;
+        }
+        
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+            synchronized (diskLock) {
+                if (pending.remove(key, value)) {
+                    disk.put(key, bytes.toByteArray());
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(key, value);
+            log.warn("Unable to write " + key + " to disk", e);
+            diskErrors.increment();
+        }
+    }
+    
+    
+    @Override
+    public void remove(String key) {
+        
+        memory.remove(key);
+        pending.put(key, REMOVED);
+        boolean forgotten = disk.forget(key);
+        try {
+            writer.execute(() -> writeRemoval(key, forgotten));
+        } catch (RejectedExecutionException e) {
+            // closed, so there is no disk to write to
+            pending.remove(key, REMOVED);
+        }
+    }
+    
+    
+    /**
+     * Write the removal of an entry to disk, unless it was put again
+     * meanwhile, in which case the new entry is written after this.
+     */
+    private void writeRemoval(String key, boolean forgotten) {
+        
+        try {
+            synchronized (diskLock) {
+                // writes are made in order, so one under way when the entry
+                // was removed has landed by now
+                if (pending.remove(key, REMOVED) && (forgotten || disk.contains(key))) {
+                    disk.remove(key);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to remove " + key + " from disk", e);
+            diskErrors.increment();
+        }
+    }
+    
+    
+    @Override
+    public void clear() {
+        
+        memory.clear();
+        synchronized (diskLock) {
+            pending.clear();
+            disk.clear();
+        }
+        
+        // clear metrics
+        diskHits.reset();
+        diskMisses.reset();
+        diskErrors.reset();
+    }
+    
+    
+    /**
+     * Write all entries to disk, called when the cache system shuts down.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Gave up waiting for " + pending.size() + " entries to be written to disk");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (diskLock) {
+            disk.close();
+        }
+    }
+    
+    
+    @Override
+    public Map<String, Object> getStats() {
+        
+        Map<String, Object> stats = new HashMap<>(memory.getStats());
+        
+        double h = diskHits.sum();
+        double m = diskMisses.sum();
+        stats.put("diskHits", h);
+        stats.put("diskMisses", m);
+        stats.put("diskErrors", (double) diskErrors.sum());
+        stats.put("diskEntries", (double) disk.size());
+        stats.put("diskBytes", (double) disk.getBytes());
+        stats.put("diskPending", (double) pending.size());
+        
+        if ((h + m) > 0) {
+            stats.put("diskEfficiency", h / (h + m) * RollerConstants.PERCENT_100);
+        }
+        
+        return stats;
+    }
+    
+}
@@ -27,12 +27,17 @@ import java.io.Serializable;
  * We use this class to wrap objects being cached and associate a timestamp
  * and timeout period with them so we can know when they expire.
  */
-public class ExpiringCacheEntry implements Serializable {
+public class ExpiringCacheEntry implements WrappedCacheEntry, Serializable {
+    
+    private static final long serialVersionUID = -7984023570024936168L;
     
     private final Object value;
     private final long timeCached;
     private final long timeout;
     
+    // when a refresh of this entry was last started, guarded by the cache
+    private transient long refreshStarted = 0;
+    
     
     public ExpiringCacheEntry(Object value, long timeout) {
         this.value = value;
@@ -65,6 +70,44 @@ public class ExpiringCacheEntry implements Serializable {
     }
     
     
+    /**
+     * Retrieve the value of this cache entry regardless of expiration.
+     * Meant for cache implementations which need to inspect what they hold.
+     */
+    @Override
+    public Object peekValue() {
+        return this.value;
+    }
+    
+    
+    /**
+     * Determine if this cache entry is older than the given soft timeout,
+     * after which it may still be served but should be refreshed.
+     */
+    public boolean isStale(long softTimeout) {
+        
+        long now = System.currentTimeMillis();
+        
+        return ((this.timeCached + softTimeout) < now);
+    }
+    
+    
+    /**
+     * Claim the refresh of this entry.  Only one claim is granted until the
+     * retry period passes, in case whoever claimed it never gets it done.
+     * Callers must hold the lock of the cache which holds this entry.
+     */
+    boolean claimRefresh(long retryPeriod) {
+        
+        long now = System.currentTimeMillis();
+        if(this.refreshStarted == 0 || this.refreshStarted + retryPeriod < now) {
+            this.refreshStarted = now;
+            return true;
+        }
+        return false;
+    }
+    
+    
     /**
      * Determine if this cache entry has expired.
      */
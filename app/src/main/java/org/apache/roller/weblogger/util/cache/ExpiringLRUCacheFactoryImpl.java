@@ -43,6 +43,7 @@ public class ExpiringLRUCacheFactoryImpl implements CacheFactory {
         
         int size = 100;
         long timeout = 15 * 60;
+        long softTimeout = 0;
         String id = "unknown";
         
         try {
@@ -57,14 +58,24 @@ public class ExpiringLRUCacheFactoryImpl implements CacheFactory {
             log.warn("invalid timeout property", e);
         }
         
+        // optional, serve stale entries while they are refreshed
+        if(properties.get("softTimeout") != null) {
+            try {
+                softTimeout = Long.parseLong((String) properties.get("softTimeout"));
+            } catch(Exception e) {
+                log.warn("invalid softTimeout property", e);
+            }
+        }
+        
         String cacheId = (String) properties.get("id");
         if(cacheId != null) {
             id = cacheId;
         }
         
-        Cache cache = new ExpiringLRUCacheImpl(id, size, timeout);
+        Cache cache = new ExpiringLRUCacheImpl(id, size, timeout, softTimeout);
         
-        log.debug("new cache constructed. size=" + size + ", timeout=" + timeout);
+        log.debug("new cache constructed. size=" + size + ", timeout=" + timeout
+                + ", softTimeout=" + softTimeout);
         
         return cache;
     }
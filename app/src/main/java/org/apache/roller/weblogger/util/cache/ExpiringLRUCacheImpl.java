@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.util.cache;
 
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -25,12 +26,27 @@ import org.apache.roller.util.RollerConstants;
 
 /**
  * An LRU cache where entries expire after a given timeout period.
+ *
+ * The cache may also be given a soft timeout, shorter than the timeout.
+ * Entries older than the soft timeout are stale, but are still served until
+ * the timeout while they are refreshed.  Entries which know how to rebuild
+ * themselves are refreshed in the background, any other stale entry is
+ * reported missing to the first caller which asks for it, so that it can
+ * rebuild and put it while everyone else gets the stale copy.
  */
 public class ExpiringLRUCacheImpl extends LRUCacheImpl {
     
     private static Log log = LogFactory.getLog(ExpiringLRUCacheImpl.class);
     
+    // how long a refresh may take before another one is started
+    private static final long REFRESH_RETRY = RollerConstants.MIN_IN_MS;
+    
     private long timeout = 0;
+    private long softTimeout = 0;
+    
+    // for metrics
+    protected double staleHits = 0;
+    protected double refreshes = 0;
     
     
     protected ExpiringLRUCacheImpl(String id) {
@@ -42,12 +58,23 @@ public class ExpiringLRUCacheImpl extends LRUCacheImpl {
     
     protected ExpiringLRUCacheImpl(String id, int maxsize, long timeout) {
         
+        this(id, maxsize, timeout, 0);
+    }
+    
+    
+    protected ExpiringLRUCacheImpl(String id, int maxsize, long timeout, long softTimeout) {
+        
         super(id, maxsize);
         
         // timeout is specified in seconds; only positive values allowed
         if (timeout > 0) {
             this.timeout = timeout * RollerConstants.SEC_IN_MS;
         }
+        
+        // a soft timeout only makes sense if it comes before the timeout
+        if (softTimeout > 0 && softTimeout * RollerConstants.SEC_IN_MS < this.timeout) {
+            this.softTimeout = softTimeout * RollerConstants.SEC_IN_MS;
+        }
     }
     
     
@@ -86,10 +113,84 @@ public class ExpiringLRUCacheImpl extends LRUCacheImpl {
                 log.debug("EXPIRED ["+key+"]");
                 hits--;
                 super.remove(key);
+                
+            } else if (softTimeout > 0 && entry.isStale(softTimeout)) {
+                staleHits++;
+                
+                if (entry.claimRefresh(REFRESH_RETRY) && !refreshInBackground(key, entry)) {
+                    // nobody else can rebuild it, so this caller has to
+                    log.debug("STALE ["+key+"]");
+                    hits--;
+                    misses++;
+                    value = null;
+                }
             }
         }
         
         return value;
     }
     
+    
+    @Override
+    public Map<String, Object> getStats() {
+        
+        Map<String, Object> stats = super.getStats();
+        if (softTimeout > 0) {
+            stats.put("staleHits", this.staleHits);
+            stats.put("refreshes", this.refreshes);
+        }
+        return stats;
+    }
+    
+    
+    @Override
+    public synchronized void clear() {
+        
+        super.clear();
+        staleHits = 0;
+        refreshes = 0;
+    }
+    
+    
+    /**
+     * Queue a refresh of a stale entry if it is able to rebuild itself.
+     */
+    private boolean refreshInBackground(String key, ExpiringCacheEntry entry) {
+        
+        Object stale = entry.peekValue();
+        if (!(stale instanceof RefreshableCacheEntry)
+                || !((RefreshableCacheEntry) stale).isRefreshable()) {
+            return false;
+        }
+        
+        RefreshableCacheEntry refreshable = (RefreshableCacheEntry) stale;
+        return CacheManager.executeInBackground(() -> {
+            Object fresh;
+            try {
+                fresh = refreshable.refresh();
+            } catch (Exception e) {
+                log.warn("Unable to refresh ["+key+"]", e);
+                return;
+            }
+            
+            if (fresh != null) {
+                replace(key, entry, fresh);
+            }
+        });
+    }
+    
+    
+    /**
+     * Replace an entry, unless it was removed or replaced in the meantime,
+     * in which case the refreshed value may already be out of date.
+     */
+    private synchronized void replace(String key, ExpiringCacheEntry entry, Object value) {
+        
+        if (peek(key) == entry) {
+            log.debug("REFRESHED ["+key+"]");
+            refreshes++;
+            put(key, value);
+        }
+    }
+    
 }
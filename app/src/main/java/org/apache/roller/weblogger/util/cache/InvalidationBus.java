@@ -0,0 +1,575 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+
+
+/**
+ * Relays invalidations to the other nodes of a cluster.
+ *
+ * The bus is registered as a CacheHandler, so it hears about every local
+ * invalidation.  Each one is queued as a compact InvalidationEvent and the
+ * queue is published to the other nodes in batches at a fixed interval,
+ * which also gives the transaction which made the change time to commit
+ * before the other nodes go and read it.
+ *
+ * Events received from other nodes are applied by evicting the object and
+ * its weblog from the shared persistence cache, looking the object up again
+ * and passing it to the local handlers.  When the object is gone its weblog
+ * is invalidated instead, and when that is gone too all caches are cleared.
+ *
+ * When given a shared secret the bus signs each message with an HMAC and
+ * drops messages which don't carry a valid one.  Without a secret anybody
+ * who can reach the transport can flush the caches of every node, so the
+ * transport must then only be reachable from a trusted network.
+ *
+ * Each message carries the time it was sent and a number counting up from
+ * the sending node's first, and both are signed along with the events.
+ * Messages more than a minute old, or numbered like one already received
+ * from the same node, are dropped so that captured messages can't be
+ * played back.  The clocks of the nodes must agree to within that minute.
+ */
+public class InvalidationBus implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(InvalidationBus.class);
+    
+    // set while applying remote events, so that they aren't sent back out
+    private static final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    
+    // how long a message may take to arrive, clock differences included
+    private static final long MAX_MESSAGE_AGE = RollerConstants.MIN_IN_MS;
+    
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    private final InvalidationTransport transport;
+    private final long batchInterval;
+    private final SecretKeySpec key;
+    private final ConcurrentLinkedQueue<InvalidationEvent> pending = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService publisher = null;
+    
+    // numbers of the messages received from each node, for spotting replays
+    private final Map<String, ReceivedSequences> received = new HashMap<>();
+    
+    
+    /**
+     * @param transport the transport to send and receive events with
+     * @param batchInterval how often to publish queued events, in millis
+     */
+    public InvalidationBus(InvalidationTransport transport, long batchInterval) {
+        this(transport, batchInterval, null);
+    }
+    
+    
+    /**
+     * @param transport the transport to send and receive events with
+     * @param batchInterval how often to publish queued events, in millis
+     * @param secret secret shared by all nodes to sign messages with, or
+     *        null to send them unsigned
+     */
+    public InvalidationBus(InvalidationTransport transport, long batchInterval, String secret) {
+        this.transport = transport;
+        this.batchInterval = Math.max(1, batchInterval);
+        this.key = (secret != null && !secret.isEmpty())
+                ? new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM)
+                : null;
+    }
+    
+    
+    public synchronized void start() throws IOException {
+        
+        transport.start(this::receive);
+        
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CacheInvalidationPublisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::flush,
+                batchInterval, batchInterval, TimeUnit.MILLISECONDS);
+        
+        log.info("Cache invalidation bus started, node = " + nodeId);
+        if (key == null) {
+            log.warn("Cache invalidations are not signed, the transport must only "
+                    + "be reachable from a trusted network");
+        }
+    }
+    
+    
+    public synchronized void stop() {
+        
+        if (publisher != null) {
+            publisher.shutdown();
+            publisher = null;
+            
+            // send what we have before going away
+            flush();
+        }
+        transport.stop();
+    }
+    
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    
+    /**
+     * Queue an event for the other nodes, unless it came from one of them.
+     */
+    public void publish(InvalidationEvent event) {
+        if (!applying.get()) {
+            pending.add(event);
+        }
+    }
+    
+    
+    /**
+     * Publish all queued events, in as few messages as the transport allows.
+     */
+    public void flush() {
+        
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        // the same object is often invalidated several times in one go
+        Set<InvalidationEvent> events = new LinkedHashSet<>();
+        InvalidationEvent event;
+        while ((event = pending.poll()) != null) {
+            events.add(event);
+        }
+        
+        try {
+            int headerSize = InvalidationEvent.headerSize(nodeId) + macLength();
+            List<InvalidationEvent> batch = new ArrayList<>();
+            int size = headerSize;
+            for (InvalidationEvent next : events) {
+                int eventSize = next.encodedSize();
+                if (!batch.isEmpty() && size + eventSize > transport.getMaxMessageSize()) {
+                    // send what fit and start the next batch with this one
+                    send(batch);
+                    batch = new ArrayList<>();
+                    size = headerSize;
+                }
+                batch.add(next);
+                size += eventSize;
+            }
+            send(batch);
+        } catch (IOException e) {
+            log.warn("Unable to publish cache invalidations", e);
+        }
+    }
+    
+    
+    private void send(List<InvalidationEvent> batch) throws IOException {
+        if (!batch.isEmpty()) {
+            log.debug("Publishing " + batch.size() + " invalidations");
+            transport.publish(sign(InvalidationEvent.encode(nodeId,
+                    sequence.incrementAndGet(), System.currentTimeMillis(), batch)));
+        }
+    }
+    
+    
+    private int macLength() {
+        return (key != null) ? MAC_LENGTH : 0;
+    }
+    
+    
+    /**
+     * Append the HMAC of a message to it, if there is a secret to sign with.
+     */
+    private byte[] sign(byte[] message) throws IOException {
+        if (key == null) {
+            return message;
+        }
+        byte[] signed = Arrays.copyOf(message, message.length + MAC_LENGTH);
+        System.arraycopy(mac(message, 0, message.length), 0, signed, message.length, MAC_LENGTH);
+        return signed;
+    }
+    
+    
+    private byte[] mac(byte[] message, int offset, int length) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(message, offset, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to sign invalidations", e);
+        }
+    }
+    
+    
+    /**
+     * Handle a message from the transport.
+     */
+    void receive(byte[] message, int offset, int length) {
+        
+        InvalidationEvent.Batch batch;
+        try {
+            if (key != null) {
+                // check the signature before reading anything else
+                length -= MAC_LENGTH;
+                if (length < 0 || !MessageDigest.isEqual(mac(message, offset, length),
+                        Arrays.copyOfRange(message, offset + length, offset + length + MAC_LENGTH))) {
+                    log.warn("Ignoring invalidation message without a valid signature");
+                    return;
+                }
+            }
+            batch = InvalidationEvent.decode(message, offset, length);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed invalidation message", e);
+            return;
+        }
+        
+        // multicast delivers our own messages back to us
+        if (batch == null || nodeId.equals(batch.getNodeId())) {
+            return;
+        }
+        
+        if (!isFresh(batch)) {
+            log.warn("Ignoring stale or repeated invalidation message from node " + batch.getNodeId());
+            return;
+        }
+        
+        applying.set(Boolean.TRUE);
+        try {
+            for (InvalidationEvent event : batch.getEvents()) {
+                try {
+                    apply(event);
+                } catch (Exception e) {
+                    log.warn("Unable to apply invalidation " + event + ", clearing caches", e);
+                    CacheManager.clear();
+                }
+            }
+        } finally {
+            applying.remove();
+            if (WebloggerFactory.isBootstrapped()) {
+                WebloggerFactory.getWeblogger().release();
+            }
+        }
+    }
+    
+    
+    /**
+     * Check that a message is recent and hasn't been received before.
+     */
+    private synchronized boolean isFresh(InvalidationEvent.Batch batch) {
+        
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - batch.getTimestamp()) > MAX_MESSAGE_AGE) {
+            return false;
+        }
+        
+        // nodes which have been quiet for a while can be forgotten, anything
+        // they sent before would be dropped as stale by now
+        received.values().removeIf(sequences -> now - sequences.latest > MAX_MESSAGE_AGE);
+        
+        return received.computeIfAbsent(batch.getNodeId(), id -> new ReceivedSequences())
+                .add(batch.getSequence(), batch.getTimestamp());
+    }
+    
+    
+    /**
+     * Apply an event from another node to the local caches.
+     */
+    protected void apply(InvalidationEvent event) throws WebloggerException {
+        
+        log.debug("Applying remote invalidation " + event);
+        
+        if (event.getType() == InvalidationEvent.Type.CLEAR) {
+            if (event.getId() != null) {
+                CacheManager.clear(event.getId());
+            } else {
+                CacheManager.clear();
+            }
+            return;
+        }
+        
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        String id = event.getId();
+        
+        // the shared persistence cache still holds the object as it was
+        // before the change, so it must go before anything is looked up
+        evict(roller, event);
+        
+        switch (event.getType()) {
+            case ENTRY:
+                WeblogEntry entry = roller.getWeblogEntryManager().getWeblogEntry(id);
+                if (entry != null) {
+                    CacheManager.invalidate(entry);
+                    return;
+                }
+                break;
+            case WEBLOG:
+                break;
+            case BOOKMARK:
+                WeblogBookmark bookmark = roller.getBookmarkManager().getBookmark(id);
+                if (bookmark != null) {
+                    CacheManager.invalidate(bookmark);
+                    return;
+                }
+                break;
+            case FOLDER:
+                WeblogBookmarkFolder folder = roller.getBookmarkManager().getFolder(id);
+                if (folder != null) {
+                    CacheManager.invalidate(folder);
+                    return;
+                }
+                break;
+            case COMMENT:
+                WeblogEntryComment comment = roller.getWeblogEntryManager().getComment(id);
+                if (comment != null) {
+                    CacheManager.invalidate(comment);
+                    return;
+                }
+                break;
+            case USER:
+                User user = roller.getUserManager().getUserByUserName(id, null);
+                if (user != null) {
+                    CacheManager.invalidate(user);
+                }
+                return;
+            case CATEGORY:
+                WeblogCategory category = roller.getWeblogEntryManager().getWeblogCategory(id);
+                if (category != null) {
+                    CacheManager.invalidate(category);
+                    return;
+                }
+                break;
+            case TEMPLATE:
+                WeblogTemplate template = roller.getWeblogManager().getTemplate(id);
+                if (template != null) {
+                    CacheManager.invalidate(template);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        
+        // the object is gone, so invalidate whatever showed it
+        Weblog weblog = (event.getWeblogHandle() != null)
+                ? roller.getWeblogManager().getWeblogByHandle(event.getWeblogHandle(), null)
+                : null;
+        if (weblog != null) {
+            CacheManager.invalidate(weblog);
+        } else {
+            CacheManager.clear();
+        }
+    }
+    
+    
+    /**
+     * Evict the changed object and its weblog from the shared persistence
+     * cache, and start a new session so that nothing read before is reused.
+     */
+    private static void evict(Weblogger roller, InvalidationEvent event)
+            throws WebloggerException {
+        
+        String id = event.getId();
+        switch (event.getType()) {
+            case ENTRY:
+                roller.evict(WeblogEntry.class, id);
+                break;
+            case WEBLOG:
+                roller.evict(Weblog.class, id);
+                break;
+            case BOOKMARK:
+                roller.evict(WeblogBookmark.class, id);
+                break;
+            case FOLDER:
+                roller.evict(WeblogBookmarkFolder.class, id);
+                break;
+            case COMMENT:
+                roller.evict(WeblogEntryComment.class, id);
+                break;
+            case USER:
+                // users are named by user name, which never changes, so a
+                // stale copy still knows their id
+                User user = roller.getUserManager().getUserByUserName(id, null);
+                if (user != null) {
+                    roller.evict(User.class, user.getId());
+                }
+                break;
+            case CATEGORY:
+                roller.evict(WeblogCategory.class, id);
+                break;
+            case TEMPLATE:
+                roller.evict(WeblogTemplate.class, id);
+                break;
+            default:
+                break;
+        }
+        
+        if (event.getType() != InvalidationEvent.Type.WEBLOG && event.getWeblogHandle() != null) {
+            // a weblog's handle never changes, so a stale copy still knows its id
+            Weblog weblog = roller.getWeblogManager().getWeblogByHandle(event.getWeblogHandle(), null);
+            if (weblog != null) {
+                roller.evict(Weblog.class, weblog.getId());
+            }
+        }
+        
+        roller.release();
+    }
+    
+    
+    /**
+     * Queue a clear of the given cache, or of all caches if null.
+     */
+    public void clear(String cacheId) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.CLEAR, cacheId, null));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY,
+                entry.getId(), handleOf(entry.getWebsite())));
+    }
+    
+    
+    @Override
+    public void invalidate(Weblog website) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.WEBLOG,
+                website.getId(), website.getHandle()));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.BOOKMARK,
+                bookmark.getId(), handleOf(bookmark.getWebsite())));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.FOLDER,
+                folder.getId(), handleOf(folder.getWeblog())));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        WeblogEntry entry = comment.getWeblogEntry();
+        publish(new InvalidationEvent(InvalidationEvent.Type.COMMENT,
+                comment.getId(), (entry != null) ? handleOf(entry.getWebsite()) : null));
+    }
+    
+    
+    @Override
+    public void invalidate(User user) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.USER,
+                user.getUserName(), null));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogCategory category) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.CATEGORY,
+                category.getId(), handleOf(category.getWeblog())));
+    }
+    
+    
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.TEMPLATE,
+                template.getId(), handleOf(template.getWeblog())));
+    }
+    
+    
+    private static String handleOf(Weblog weblog) {
+        return (weblog != null) ? weblog.getHandle() : null;
+    }
+    
+    
+    /**
+     * The numbers of the messages received from a node, as the highest one
+     * and a window of the ones below it, since messages may arrive out of order.
+     */
+    private static final class ReceivedSequences {
+        
+        private static final int WINDOW = 64;
+        
+        private long highest = Long.MIN_VALUE;
+        // bit n is set when message highest - n has been received
+        private long window = 0;
+        // time the newest message was sent
+        private long latest = Long.MIN_VALUE;
+        
+        /**
+         * Add a message's number, returning false if it was received before
+         * or is too far behind to tell.
+         */
+        boolean add(long sequence, long timestamp) {
+            if (sequence > highest) {
+                long ahead = sequence - highest;
+                window = (highest != Long.MIN_VALUE && ahead < WINDOW) ? (window << ahead) | 1 : 1;
+                highest = sequence;
+            } else {
+                long behind = highest - sequence;
+                if (behind >= WINDOW || (window & (1L << behind)) != 0) {
+                    return false;
+                }
+                window |= 1L << behind;
+            }
+            latest = Math.max(latest, timestamp);
+            return true;
+        }
+    }
+    
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * A compact description of an invalidation, which can be sent to the other
+ * nodes of a cluster.
+ *
+ * Events only name the object which changed and the weblog it belongs to,
+ * the receiving node looks the object up again before invalidating it.
+ */
+public final class InvalidationEvent {
+    
+    // bump when the encoding changes, so that mixed versions ignore each other
+    private static final int VERSION = 2;
+    
+    /**
+     * The kinds of objects which can be invalidated.
+     */
+    public enum Type {
+        ENTRY, WEBLOG, BOOKMARK, FOLDER, COMMENT, USER, CATEGORY, TEMPLATE, CLEAR
+    }
+    
+    private final Type type;
+    private final String id;
+    private final String weblogHandle;
+    
+    
+    public InvalidationEvent(Type type, String id, String weblogHandle) {
+        this.type = Objects.requireNonNull(type);
+        this.id = id;
+        this.weblogHandle = weblogHandle;
+    }
+    
+    
+    public Type getType() {
+        return type;
+    }
+    
+    
+    /**
+     * The id of the object, or the user name for users.  For CLEAR events
+     * this is the id of the cache to clear, or null for all of them.
+     */
+    public String getId() {
+        return id;
+    }
+    
+    
+    /**
+     * The handle of the weblog the object belongs to, if any.
+     */
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+    
+    
+    /**
+     * The number of bytes this event takes up in an encoded batch.
+     */
+    public int encodedSize() {
+        return 1 + encodedSize(id) + encodedSize(weblogHandle);
+    }
+    
+    
+    /**
+     * The number of bytes a batch takes up before its events.
+     */
+    public static int headerSize(String nodeId) {
+        return 1 + utfSize(nodeId) + 8 + 8 + 2;
+    }
+    
+    
+    /**
+     * Encode a batch of events sent by the given node.
+     * 
+     * @param sequence number of the batch, counting up from the node's first
+     * @param timestamp when the batch was sent, in millis
+     */
+    public static byte[] encode(String nodeId, long sequence, long timestamp,
+            Collection<InvalidationEvent> events) throws IOException {
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + events.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(nodeId);
+            out.writeLong(sequence);
+            out.writeLong(timestamp);
+            out.writeShort(events.size());
+            for (InvalidationEvent event : events) {
+                out.writeByte(event.type.ordinal());
+                writeString(out, event.id);
+                writeString(out, event.weblogHandle);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    
+    /**
+     * Decode a batch of events, returning null if the message was not sent
+     * by a compatible node.
+     */
+    public static Batch decode(byte[] message, int offset, int length) throws IOException {
+        
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(message, offset, length));
+        if (in.readByte() != VERSION) {
+            return null;
+        }
+        
+        String nodeId = in.readUTF();
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        int count = in.readUnsignedShort();
+        List<InvalidationEvent> events = new ArrayList<>(count);
+        Type[] types = Type.values();
+        for (int i = 0; i < count; i++) {
+            int type = in.readUnsignedByte();
+            if (type >= types.length) {
+                throw new IOException("unknown invalidation type " + type);
+            }
+            events.add(new InvalidationEvent(types[type], readString(in), readString(in)));
+        }
+        return new Batch(nodeId, sequence, timestamp, events);
+    }
+    
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    
+    // as written by writeString
+    private static int encodedSize(String value) {
+        return (value != null) ? 1 + utfSize(value) : 1;
+    }
+    
+    
+    // as written by writeUTF, a length and then modified UTF-8
+    private static int utfSize(String value) {
+        int size = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                size += 1;
+            } else if (c <= 0x07FF) {
+                size += 2;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+    
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof InvalidationEvent)) {
+            return false;
+        }
+        InvalidationEvent o = (InvalidationEvent) other;
+        return type == o.type && Objects.equals(id, o.id)
+                && Objects.equals(weblogHandle, o.weblogHandle);
+    }
+    
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, id, weblogHandle);
+    }
+    
+    
+    @Override
+    public String toString() {
+        return type + ":" + id + "@" + weblogHandle;
+    }
+    
+    
+    /**
+     * A batch of events and the node which sent them.
+     */
+    public static final class Batch {
+        
+        private final String nodeId;
+        private final long sequence;
+        private final long timestamp;
+        private final List<InvalidationEvent> events;
+        
+        Batch(String nodeId, long sequence, long timestamp, List<InvalidationEvent> events) {
+            this.nodeId = nodeId;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.events = events;
+        }
+        
+        public String getNodeId() {
+            return nodeId;
+        }
+        
+        public long getSequence() {
+            return sequence;
+        }
+        
+        public long getTimestamp() {
+            return timestamp;
+        }
+        
+        public List<InvalidationEvent> getEvents() {
+            return events;
+        }
+    }
+    
+}
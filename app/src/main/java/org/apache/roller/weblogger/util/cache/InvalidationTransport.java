@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+
+
+/**
+ * Carries encoded invalidation events between the nodes of a cluster.
+ *
+ * Transports are instantiated by the CacheManager from the classname in the
+ * cache.cluster.transport property, so they need a no-arg constructor and
+ * should read any settings they need from the roller config when started.
+ * Delivery is best effort, cached content still expires on its timeout.
+ */
+public interface InvalidationTransport {
+    
+    /**
+     * Receives messages published by other nodes.
+     */
+    @FunctionalInterface
+    interface Receiver {
+        void receive(byte[] message, int offset, int length);
+    }
+    
+    
+    /**
+     * Start the transport, delivering messages from other nodes to the
+     * given receiver until the transport is stopped.
+     */
+    void start(Receiver receiver) throws IOException;
+    
+    
+    /**
+     * Publish a message to the other nodes.
+     */
+    void publish(byte[] message) throws IOException;
+    
+    
+    /**
+     * The largest message this transport can publish, in bytes.
+     */
+    int getMaxMessageSize();
+    
+    
+    void stop();
+    
+}
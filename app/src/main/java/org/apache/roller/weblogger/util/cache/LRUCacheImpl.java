@@ -90,6 +90,15 @@ public class LRUCacheImpl implements Cache {
     }
     
     
+    /**
+     * Retrieve an entry from the cache without counting it in the metrics.
+     */
+    protected synchronized Object peek(String key) {
+        
+        return this.cache.get(key);
+    }
+    
+    
     @Override
     public synchronized void remove(String key) {
         
@@ -19,6 +19,7 @@
 package org.apache.roller.weblogger.util.cache;
 
 import java.io.Serializable;
+import java.util.concurrent.Callable;
 
 
 /**
@@ -41,15 +42,29 @@ import java.io.Serializable;
  * the list of cached objects and inspect the keys to figure out what items to
  * invalidate.  Instead we can just sit back and let the items be invalidated as
  * we try to use them.
+ *
+ * An entry may also be given a loader which can build its value again, so
+ * that caches which serve stale entries can refresh it in the background.
  */
-public class LazyExpiringCacheEntry implements Serializable {
+public class LazyExpiringCacheEntry implements RefreshableCacheEntry, WrappedCacheEntry, Serializable {
+    
+    private static final long serialVersionUID = 3836737405182283947L;
     
     private final Object value;
     private final long timeCached;
     
+    // rebuilds the value, only kept in memory
+    private final transient Callable<?> loader;
+    
     
     public LazyExpiringCacheEntry(Object item) {
+        this(item, null);
+    }
+    
+    
+    public LazyExpiringCacheEntry(Object item, Callable<?> loader) {
         this.value = item;
+        this.loader = loader;
         this.timeCached = System.currentTimeMillis();
     }
     
@@ -81,4 +96,34 @@ public class LazyExpiringCacheEntry implements Serializable {
         return timeCached;
     }
     
+    
+    @Override
+    public boolean isRefreshable() {
+        return loader != null;
+    }
+    
+    
+    /**
+     * Build a fresh entry by running the loader again.
+     */
+    @Override
+    public Object refresh() throws Exception {
+        if(loader == null) {
+            return null;
+        }
+        
+        Object fresh = loader.call();
+        return (fresh != null) ? new LazyExpiringCacheEntry(fresh, loader) : null;
+    }
+    
+    
+    /**
+     * Retrieve the value of this cache entry regardless of its freshness.
+     * Meant for cache implementations which need to inspect what they hold.
+     */
+    @Override
+    public Object peekValue() {
+        return value;
+    }
+    
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+
+/**
+ * An invalidation transport which delivers messages to the other loopback
+ * transports started in the same JVM.
+ *
+ * This is meant for tests and for trying out clustered invalidation on a
+ * single machine.  Messages are delivered synchronously by the publishing
+ * thread.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+    
+    private static final Set<LoopbackInvalidationTransport> started = new CopyOnWriteArraySet<>();
+    
+    private volatile Receiver receiver = null;
+    
+    
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        started.add(this);
+    }
+    
+    
+    @Override
+    public void publish(byte[] message) {
+        for (LoopbackInvalidationTransport peer : started) {
+            Receiver peerReceiver = peer.receiver;
+            if (peer != this && peerReceiver != null) {
+                peerReceiver.receive(message, 0, message.length);
+            }
+        }
+    }
+    
+    
+    @Override
+    public int getMaxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+    
+    
+    @Override
+    public void stop() {
+        started.remove(this);
+        this.receiver = null;
+    }
+    
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * An invalidation transport which sends messages to the other nodes of a
+ * cluster over UDP multicast.
+ *
+ * All nodes of a cluster must use the same group address and port, which
+ * are set with the cache.cluster.multicast.address and .port properties.
+ * The number of network hops messages may take is set with .ttl, the
+ * default of 1 keeps them on the local network.
+ */
+public class MulticastInvalidationTransport implements InvalidationTransport {
+    
+    private static final Log log = LogFactory.getLog(MulticastInvalidationTransport.class);
+    
+    // keep clear of fragmentation on typical networks
+    private static final int MAX_MESSAGE_SIZE = 8192;
+    
+    private InetAddress group = null;
+    private int port = 0;
+    private MulticastSocket socket = null;
+    private Thread receiverThread = null;
+    
+    
+    @Override
+    public synchronized void start(Receiver receiver) throws IOException {
+        
+        group = InetAddress.getByName(WebloggerConfig.getProperty(
+                "cache.cluster.multicast.address", "239.255.42.99"));
+        port = WebloggerConfig.getIntProperty("cache.cluster.multicast.port", 45599);
+        
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(WebloggerConfig.getIntProperty("cache.cluster.multicast.ttl", 1));
+        socket.joinGroup(new InetSocketAddress(group, port), null);
+        
+        final MulticastSocket receiveSocket = socket;
+        receiverThread = new Thread(() -> {
+            byte[] buffer = new byte[MAX_MESSAGE_SIZE];
+            while (!receiveSocket.isClosed()) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    receiveSocket.receive(packet);
+                    receiver.receive(packet.getData(), packet.getOffset(), packet.getLength());
+                } catch (SocketException e) {
+                    // socket was closed by stop()
+                    break;
+                } catch (Exception e) {
+                    log.warn("Error receiving invalidations", e);
+                }
+            }
+        }, "CacheInvalidationReceiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        
+        log.info("Listening for cache invalidations on " + group.getHostAddress() + ":" + port);
+    }
+    
+    
+    @Override
+    public void publish(byte[] message) throws IOException {
+        
+        MulticastSocket sendSocket = this.socket;
+        if (sendSocket != null) {
+            sendSocket.send(new DatagramPacket(message, message.length, group, port));
+        }
+    }
+    
+    
+    @Override
+    public int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+    
+    
+    @Override
+    public synchronized void stop() {
+        
+        if (socket != null) {
+            try {
+                socket.leaveGroup(new InetSocketAddress(group, port), null);
+            } catch (IOException e) {
+                log.debug("Error leaving multicast group", e);
+            }
+            socket.close();
+            socket = null;
+        }
+        receiverThread = null;
+    }
+    
+}
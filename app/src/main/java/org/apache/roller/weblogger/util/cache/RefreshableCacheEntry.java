@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+
+/**
+ * A cached value which knows how to build a fresh copy of itself.
+ *
+ * Caches which serve stale entries while they are refreshed use this to
+ * rebuild an entry in the background rather than handing the work to the
+ * next request which asks for it.
+ */
+public interface RefreshableCacheEntry {
+    
+    /**
+     * True if this entry is able to build a fresh copy of itself.
+     */
+    boolean isRefreshable();
+    
+    
+    /**
+     * Build a fresh copy of this entry, to be cached under the same key.
+     *
+     * @return the new entry, or null if it can't be built right now.
+     */
+    Object refresh() throws Exception;
+    
+}
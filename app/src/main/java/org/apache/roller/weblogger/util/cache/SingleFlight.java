@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Coalesces concurrent loads of the same cache key.
+ *
+ * The first thread to miss on a key becomes the leader of a flight for it
+ * and does the work, while every other thread which misses on the key before
+ * the leader lands waits for the leader's result instead of repeating the
+ * work.  This keeps a popular page which just expired from being rendered
+ * once per waiting request.
+ *
+ * Callers must always land a flight they lead, typically from a finally
+ * block, or followers will wait until they time out.
+ */
+public class SingleFlight<V> {
+
+    private static final Log log = LogFactory.getLog(SingleFlight.class);
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> flights =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * Join the flight for a key, starting one if there is none in progress.
+     */
+    public Flight<V> join(String key) {
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, future);
+        if (existing != null) {
+            log.debug("JOINED " + key);
+            return new Flight<>(this, key, existing, false);
+        }
+        return new Flight<>(this, key, future, true);
+    }
+
+
+    /**
+     * The number of flights currently in progress.
+     */
+    public int size() {
+        return flights.size();
+    }
+
+
+    /**
+     * A thread's part in the flight for a key.
+     */
+    public static final class Flight<V> {
+
+        private final SingleFlight<V> group;
+        private final String key;
+        private final CompletableFuture<V> result;
+        private final boolean leader;
+
+        private Flight(SingleFlight<V> group, String key,
+                CompletableFuture<V> result, boolean leader) {
+            this.group = group;
+            this.key = key;
+            this.result = result;
+            this.leader = leader;
+        }
+
+        /**
+         * True if this thread started the flight and must do the work.
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Wait for the leader's result.  Returns null if the leader failed
+         * to produce one or did not land in time, in which case the caller
+         * should do the work itself.
+         */
+        public V await(long timeoutMillis) {
+            try {
+                return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                log.debug("Gave up waiting for " + key, e);
+            }
+            return null;
+        }
+
+        /**
+         * Land the flight, handing the result to every follower.  A null
+         * result tells followers to do the work themselves.  Landing more
+         * than once, or landing as a follower, does nothing.
+         */
+        public void land(V value) {
+            if (leader && !result.isDone()) {
+                // remove first so that later misses start a new flight
+                // rather than picking up a result which may be stale
+                group.flights.remove(key, result);
+                result.complete(value);
+            }
+        }
+    }
+
+}
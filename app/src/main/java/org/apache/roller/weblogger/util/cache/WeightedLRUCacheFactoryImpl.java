@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Roller byte size bounded LRU cache factory.
+ *
+ * Supported properties are "maxBytes" (the byte budget), "timeout" (in
+ * seconds) and "offHeap" (keep rendered content outside the java heap,
+ * defaults to true).
+ */
+public class WeightedLRUCacheFactoryImpl implements CacheFactory {
+    
+    private static final Log log = LogFactory.getLog(WeightedLRUCacheFactoryImpl.class);
+    
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    
+    
+    // protected so only the CacheManager can instantiate us
+    protected WeightedLRUCacheFactoryImpl() {}
+    
+    
+    /**
+     * Construct a new instance of a Roller byte size bounded LRU cache.
+     */
+    @Override
+    public Cache constructCache(Map<String, ?> properties) {
+        
+        long maxBytes = DEFAULT_MAX_BYTES;
+        long timeout = 15 * 60;
+        boolean offHeap = true;
+        String id = "unknown";
+        
+        try {
+            maxBytes = Long.parseLong((String) properties.get("maxBytes"));
+        } catch(Exception e) {
+            log.warn("invalid maxBytes property", e);
+        }
+        
+        try {
+            timeout = Long.parseLong((String) properties.get("timeout"));
+        } catch(Exception e) {
+            log.warn("invalid timeout property", e);
+        }
+        
+        String offHeapProp = (String) properties.get("offHeap");
+        if(offHeapProp != null) {
+            offHeap = Boolean.parseBoolean(offHeapProp);
+        }
+        
+        String cacheId = (String) properties.get("id");
+        if(cacheId != null) {
+            id = cacheId;
+        }
+        
+        Cache cache = new WeightedLRUCacheImpl(id, maxBytes, timeout, offHeap);
+        
+        log.debug("new cache constructed. maxBytes=" + maxBytes + ", timeout=" + timeout
+                + ", offHeap=" + offHeap);
+        
+        return cache;
+    }
+    
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * An LRU cache which is bounded by the number of bytes it holds rather than
+ * by the number of entries.
+ *
+ * The weight of an entry is the length of the rendered content it holds, when
+ * the value is a CachedContent, plus a fixed per-entry overhead.  A gzip copy
+ * of the content built after it was cached is added to the weight as soon as
+ * it is built.  Optionally
+ * the rendered content is moved out of the java heap into direct buffers when
+ * it is cached, so that a large cache does not add to garbage collection work.
+ *
+ * Entries are spread over a number of segments which each get an equal share
+ * of the byte budget and their own lock.  Content larger than the share of a
+ * single segment is never cached.
+ */
+public class WeightedLRUCacheImpl implements Cache {
+    
+    private static final Log log = LogFactory.getLog(WeightedLRUCacheImpl.class);
+    
+    private static final int SEGMENTS = 16;
+    
+    // rough estimate of what a map node, key and entry wrappers cost us
+    private static final int ENTRY_OVERHEAD = 128;
+    
+    private final String id;
+    private final long maxBytes;
+    private final long timeout;
+    private final boolean offHeap;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    
+    // for metrics
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+    protected final LongAdder puts = new LongAdder();
+    protected final LongAdder removes = new LongAdder();
+    protected final LongAdder evictions = new LongAdder();
+    protected volatile Date startTime = new Date();
+    
+    
+    /**
+     * @param maxBytes the total byte budget of the cache
+     * @param timeout entry timeout in seconds, 0 or less for no timeout
+     * @param offHeap true to keep cached content outside of the java heap
+     */
+    protected WeightedLRUCacheImpl(String id, long maxBytes, long timeout, boolean offHeap) {
+        
+        this.id = id;
+        this.maxBytes = Math.max(SEGMENTS, maxBytes);
+        this.timeout = (timeout > 0) ? timeout * RollerConstants.SEC_IN_MS : 0;
+        this.offHeap = offHeap;
+        
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(this.maxBytes / SEGMENTS);
+        }
+    }
+    
+    
+    @Override
+    public String getId() {
+        return this.id;
+    }
+    
+    
+    /**
+     * Store an entry in the cache.
+     */
+    @Override
+    public void put(String key, Object value) {
+        
+        CachedContent content = contentOf(value);
+        long overhead = ENTRY_OVERHEAD + key.length() * 2L;
+        long weight = overhead + ((content != null) ? content.getWeight() : 0);
+        
+        Segment segment = segmentFor(key);
+        if (weight > segment.maxBytes) {
+            log.debug("TOO LARGE ["+key+"] "+weight+" bytes");
+            segment.remove(key);
+            return;
+        }
+        
+        if (offHeap && content != null) {
+            content.moveOffHeap();
+        }
+        
+        Object stored = value;
+        if (timeout > 0) {
+            stored = new ExpiringCacheEntry(value, timeout);
+        }
+        
+        Node node = new Node(stored, overhead, content);
+        if (content != null) {
+            // one listener per key of this cache, however often it's put
+            content.addWeightListener(Arrays.asList(this, key),
+                    () -> evictions.add(segment.reweigh(key, node)));
+        }
+        evictions.add(segment.put(key, node));
+        puts.increment();
+    }
+    
+    
+    /**
+     * Retrieve an entry from the cache.
+     *
+     * If the cached object has expired then we return null, just as if the
+     * entry wasn't found.
+     */
+    @Override
+    public Object get(String key) {
+        
+        Segment segment = segmentFor(key);
+        Node node = segment.get(key);
+        
+        Object value = null;
+        if (node != null) {
+            if (node.value instanceof ExpiringCacheEntry) {
+                value = ((ExpiringCacheEntry) node.value).getValue();
+                if (value == null) {
+                    log.debug("EXPIRED ["+key+"]");
+                    segment.remove(key);
+                }
+            } else {
+                value = node.value;
+            }
+        }
+        
+        // for metrics
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        
+        return value;
+    }
+    
+    
+    @Override
+    public void remove(String key) {
+        
+        segmentFor(key).remove(key);
+        removes.increment();
+    }
+    
+    
+    @Override
+    public void clear() {
+        
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        
+        // clear metrics
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removes.reset();
+        evictions.reset();
+        startTime = new Date();
+    }
+    
+    
+    /**
+     * The number of bytes currently accounted for by the cached entries.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+    
+    
+    @Override
+    public Map<String, Object> getStats() {
+        
+        double h = hits.sum();
+        double m = misses.sum();
+        double r = removes.sum();
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("startTime", this.startTime);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("puts", (double) puts.sum());
+        stats.put("removes", r);
+        stats.put("evictions", (double) evictions.sum());
+        stats.put("bytes", getWeight());
+        stats.put("maxBytes", this.maxBytes);
+        
+        // calculate efficiency
+        if ((m - r) > 0) {
+            double efficiency = h / (m + h);
+            stats.put("efficiency", efficiency * RollerConstants.PERCENT_100);
+        }
+        
+        return stats;
+    }
+    
+    
+    /**
+     * Find the rendered content inside the cache entry wrappers Roller uses.
+     */
+    private static CachedContent contentOf(Object value) {
+        Object unwrapped = value;
+        while (unwrapped instanceof WrappedCacheEntry) {
+            unwrapped = ((WrappedCacheEntry) unwrapped).peekValue();
+        }
+        return (unwrapped instanceof CachedContent) ? (CachedContent) unwrapped : null;
+    }
+    
+    
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+    
+    
+    private static final class Node {
+        private final Object value;
+        private final long overhead;
+        private final CachedContent content;
+        
+        // the weight this node is counted at, guarded by its segment's lock
+        private long weight = 0;
+        
+        Node(Object value, long overhead, CachedContent content) {
+            this.value = value;
+            this.overhead = overhead;
+            this.content = content;
+        }
+        
+        long currentWeight() {
+            return overhead + ((content != null) ? content.getWeight() : 0);
+        }
+    }
+    
+    
+    private static final class Segment {
+        private final LinkedHashMap<String, Node> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long maxBytes;
+        private long weight = 0;
+        
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        Node get(String key) {
+            lock.lock();
+            try {
+                return map.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Add the node and evict least recently used entries until the
+         * segment is back within its budget.  Returns the number evicted.
+         */
+        int put(String key, Node node) {
+            lock.lock();
+            try {
+                Node old = map.put(key, node);
+                if (old != null) {
+                    weight -= old.weight;
+                }
+                node.weight = node.currentWeight();
+                weight += node.weight;
+                return evict(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Count the node at its current weight, if it is still cached, and
+         * evict least recently used entries until the segment is back within
+         * its budget.  Returns the number evicted.
+         */
+        int reweigh(String key, Node node) {
+            lock.lock();
+            try {
+                if (map.get(key) != node) {
+                    return 0;
+                }
+                long current = node.currentWeight();
+                weight += current - node.weight;
+                node.weight = current;
+                return evict(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        private int evict(Node keep) {
+            int evicted = 0;
+            Iterator<Node> it = map.values().iterator();
+            while (weight > maxBytes && it.hasNext()) {
+                Node eldest = it.next();
+                if (eldest == keep) {
+                    continue;
+                }
+                it.remove();
+                weight -= eldest.weight;
+                evicted++;
+            }
+            return evicted;
+        }
+        
+        void remove(String key) {
+            lock.lock();
+            try {
+                Node old = map.remove(key);
+                if (old != null) {
+                    weight -= old.weight;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        long getWeight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+}
@@ -28,8 +28,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -199,6 +201,74 @@ public class HitCountTest  {
         assertNull(hitCount);
     }
     
+    @Test
+    public void testIncrementHitCounts() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        testUser = TestUtils.getManagedUser(testUser);
+        Weblog blog1 = TestUtils.setupWeblog("hitCntIncTest1", testUser);
+        Weblog blog2 = TestUtils.setupWeblog("hitCntIncTest2", testUser);
+        
+        // only the first weblog has a count so far
+        WeblogHitCount cnt1 = TestUtils.setupHitCount(blog1, 10);
+        TestUtils.endSession(true);
+        
+        try {
+            Map<String, Long> amounts = new HashMap<>();
+            amounts.put(blog1.getHandle(), 5L);
+            amounts.put(blog2.getHandle(), 7L);
+            amounts.put("hitCntIncTestMissing", 3L);
+            mgr.incrementHitCounts(amounts);
+            TestUtils.endSession(true);
+            
+            // existing counts are incremented and missing ones created
+            assertEquals(15, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            blog2 = TestUtils.getManagedWebsite(blog2);
+            WeblogHitCount cnt2 = mgr.getHitCountByWeblog(blog2);
+            assertNotNull(cnt2);
+            assertEquals(7, cnt2.getDailyHits());
+            
+            // and incremented the next time around
+            mgr.incrementHitCounts(amounts);
+            TestUtils.endSession(true);
+            assertEquals(20, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            assertEquals(14, mgr.getHitCount(cnt2.getId()).getDailyHits());
+            
+            TestUtils.teardownHitCount(cnt2.getId());
+        } finally {
+            // cleanup
+            TestUtils.teardownHitCount(cnt1.getId());
+            TestUtils.teardownWeblog(blog1.getId());
+            TestUtils.teardownWeblog(blog2.getId());
+        }
+    }
+    
+    @Test
+    public void testRequeueHits() throws Exception {
+        
+        HitCountQueue queue = HitCountQueue.getInstance();
+        Weblog blog = new Weblog();
+        blog.setHandle("hitCntRequeueTest");
+        
+        queue.processHit(blog);
+        queue.processHit(blog);
+        Map<String, Long> hits = queue.drainHits();
+        assertEquals(Long.valueOf(2), hits.get(blog.getHandle()));
+        
+        // hits which couldn't be stored are taken again, along with new ones
+        queue.requeueHits(Map.of(blog.getHandle(), 2L));
+        queue.processHit(blog);
+        hits = queue.drainHits();
+        assertEquals(Long.valueOf(3), hits.get(blog.getHandle()));
+        assertNull(queue.drainHits().get(blog.getHandle()));
+        
+        // the counter went once nothing was left to take, and comes back
+        assertFalse(queue.isCounting(blog.getHandle()));
+        queue.processHit(blog);
+        assertEquals(Long.valueOf(1), queue.drainHits().get(blog.getHandle()));
+    }
+    
     @Test
     public void testResetHitCounts() throws Exception {
         WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
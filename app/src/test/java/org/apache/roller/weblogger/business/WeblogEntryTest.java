@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.QueryCounter;
 import org.apache.roller.weblogger.pojos.*;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.junit.jupiter.api.AfterEach;
@@ -307,6 +308,213 @@ public class WeblogEntryTest  {
         TestUtils.endSession(true);
     }
 
+    /**
+     * Test paging through published entries by id.
+     */
+    @Test
+    public void testGetPublishedEntriesAfter() throws Exception {
+
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        testUser = TestUtils.getManagedUser(testUser);
+        WeblogCategory cat = testWeblog.getWeblogCategories().iterator().next();
+        WeblogEntry entry1 = TestUtils.setupWeblogEntry("entry1", testWeblog, testUser);
+        WeblogEntry entry2 = TestUtils.setupWeblogEntry("entry2", testWeblog, testUser);
+        WeblogEntry entry3 = TestUtils.setupWeblogEntry("entry3", testWeblog, testUser);
+        WeblogEntry draft = TestUtils.setupWeblogEntry("draft", cat, PubStatus.DRAFT, testWeblog, testUser);
+        TestUtils.endSession(true);
+
+        try {
+            testWeblog = TestUtils.getManagedWebsite(testWeblog);
+
+            // walk through the weblog two entries at a time
+            List<String> ids = new ArrayList<>();
+            String lastId = null;
+            List<WeblogEntry> page;
+            do {
+                page = mgr.getPublishedEntriesAfter(testWeblog, lastId, 2);
+                for (WeblogEntry entry : page) {
+                    ids.add(entry.getId());
+                    lastId = entry.getId();
+                }
+            } while (page.size() == 2);
+
+            List<String> expected = new ArrayList<>(List.of(
+                    entry1.getId(), entry2.getId(), entry3.getId()));
+            Collections.sort(expected);
+            assertEquals(expected, ids);
+
+            // drafts are left out across the whole site too
+            List<WeblogEntry> all = mgr.getPublishedEntriesAfter(null, null, 1000);
+            for (WeblogEntry entry : all) {
+                assertNotEquals(draft.getId(), entry.getId());
+            }
+            assertTrue(all.size() >= 3);
+
+        } finally {
+            TestUtils.teardownWeblogEntry(entry1.getId());
+            TestUtils.teardownWeblogEntry(entry2.getId());
+            TestUtils.teardownWeblogEntry(entry3.getId());
+            TestUtils.teardownWeblogEntry(draft.getId());
+            TestUtils.endSession(true);
+        }
+    }
+
+    /**
+     * Test counting the comments of entries, one at a time and for a page.
+     */
+    @Test
+    public void testCommentCounts() throws Exception {
+
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        testUser = TestUtils.getManagedUser(testUser);
+        WeblogEntry entry1 = TestUtils.setupWeblogEntry("entry1", testWeblog, testUser);
+        WeblogEntry entry2 = TestUtils.setupWeblogEntry("entry2", testWeblog, testUser);
+        WeblogEntryComment comment1 = TestUtils.setupComment("comment1", entry1);
+        WeblogEntryComment comment2 = TestUtils.setupComment("comment2", entry1);
+        WeblogEntryComment comment3 = TestUtils.setupComment("comment3", entry1);
+        comment3.setStatus(WeblogEntryComment.ApprovalStatus.PENDING);
+        mgr.saveComment(comment3);
+        TestUtils.endSession(true);
+
+        try {
+            entry1 = TestUtils.getManagedWeblogEntry(entry1);
+            entry2 = TestUtils.getManagedWeblogEntry(entry2);
+            assertEquals(2, entry1.getCommentCount());
+            assertEquals(0, entry2.getCommentCount());
+            assertEquals(1, mgr.getCommentCount(entry1, WeblogEntryComment.ApprovalStatus.PENDING));
+            assertEquals(3, mgr.getCommentCount(entry1, null));
+
+            // counts for a page of entries come from a single query
+            entry1.setCommentCount(null);
+            entry2.setCommentCount(null);
+            mgr.prefetchCommentCounts(List.of(entry1, entry2));
+            assertEquals(2, entry1.getCommentCount());
+            assertEquals(0, entry2.getCommentCount());
+
+            // and are counted again once a comment changes
+            comment3 = mgr.getComment(comment3.getId());
+            comment3.setStatus(WeblogEntryComment.ApprovalStatus.APPROVED);
+            mgr.saveComment(comment3);
+            TestUtils.endSession(true);
+            assertEquals(3, comment3.getWeblogEntry().getCommentCount());
+
+        } finally {
+            TestUtils.teardownComment(comment1.getId());
+            TestUtils.teardownComment(comment2.getId());
+            TestUtils.teardownComment(comment3.getId());
+            TestUtils.teardownWeblogEntry(entry1.getId());
+            TestUtils.teardownWeblogEntry(entry2.getId());
+            TestUtils.endSession(true);
+        }
+    }
+
+    /**
+     * Test that a fetch plan loads what a page shows of its entries with the
+     * same number of queries however many entries there are.
+     */
+    @Test
+    public void testFetchPlan() throws Exception {
+
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        testUser = TestUtils.getManagedUser(testUser);
+        for (int i = 0; i < 30; i++) {
+            WeblogEntry entry = TestUtils.setupWeblogEntry("fetchEntry" + i, testWeblog, testUser);
+            entry.addTag("tag" + (i % 3));
+            entry.putEntryAttribute("att", "value" + i);
+            mgr.saveWeblogEntry(entry);
+        }
+        TestUtils.endSession(true);
+
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+
+        // loaded lazily, each entry costs queries for its tags and attributes
+        int lazy = countPageQueries(mgr, wesc, 30);
+        assertTrue(lazy > 30, "queries without fetch plan: " + lazy);
+
+        wesc.setFetches(EnumSet.allOf(WeblogEntrySearchCriteria.Fetch.class));
+        int page10 = countPageQueries(mgr, wesc, 10);
+        int page30 = countPageQueries(mgr, wesc, 30);
+        assertEquals(page10, page30);
+        assertTrue(page30 < 10, "queries with fetch plan: " + page30);
+    }
+
+    /**
+     * Count the queries it takes to load a page of entries from the database
+     * and touch everything a page shows of them.
+     */
+    private static int countPageQueries(WeblogEntryManager mgr, WeblogEntrySearchCriteria wesc,
+            int length) throws Exception {
+
+        TestUtils.endSession(false);
+        QueryCounter.clearCache();
+        QueryCounter.reset();
+
+        wesc.setMaxResults(length);
+        List<WeblogEntry> entries = mgr.getWeblogEntries(wesc);
+        assertEquals(length, entries.size());
+        for (WeblogEntry entry : entries) {
+            assertNotNull(entry.getCategory().getName());
+            assertNotNull(entry.getWebsite().getHandle());
+            assertEquals(1, entry.getTags().size());
+            assertEquals(1, entry.getEntryAttributes().size());
+        }
+        return QueryCounter.getSelectCount();
+    }
+
+    /**
+     * Test that seeking past the last entry of a page finds the same next
+     * page as skipping to it, even where entries share a publish time.
+     */
+    @Test
+    public void testSeekPaging() throws Exception {
+
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        testUser = TestUtils.getManagedUser(testUser);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            WeblogEntry entry = TestUtils.setupWeblogEntry("seekEntry" + i, testWeblog, testUser);
+            // three entries to each time, so that pages end among ties
+            entry.setPubTime(new Timestamp(now - (i / 3) * 1000L));
+            mgr.saveWeblogEntry(entry);
+        }
+        TestUtils.endSession(true);
+
+        for (WeblogEntrySearchCriteria.SortOrder order : WeblogEntrySearchCriteria.SortOrder.values()) {
+            Set<String> seen = new HashSet<>();
+            WeblogEntry last = null;
+            for (int page = 0; page < 3; page++) {
+                WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+                wesc.setWeblog(testWeblog);
+                wesc.setSortOrder(order);
+                wesc.setMaxResults(4);
+                wesc.setOffset(page * 4);
+                List<WeblogEntry> skipped = mgr.getWeblogEntries(wesc);
+
+                if (last != null) {
+                    wesc.setOffset(0);
+                    wesc.setAfter(last.getPubTime(), last.getId());
+                }
+                List<WeblogEntry> sought = mgr.getWeblogEntries(wesc);
+
+                assertEquals(skipped, sought);
+                for (WeblogEntry entry : sought) {
+                    assertTrue(seen.add(entry.getId()), "repeated " + entry.getAnchor());
+                }
+                last = sought.get(sought.size() - 1);
+            }
+            assertEquals(11, seen.size());
+        }
+    }
+
     /**
      * Test that the createAnchor() method actually ensures unique anchors.
      */
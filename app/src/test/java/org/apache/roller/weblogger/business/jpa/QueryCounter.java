@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Counts the SELECT statements sent to the database, for tests which check
+ * how many queries an operation costs.  Registered with EclipseLink through
+ * the eclipselink.session-event-listener property of the test configuration.
+ */
+public class QueryCounter extends SessionEventAdapter {
+
+    private static final AtomicInteger selects = new AtomicInteger();
+    private static volatile Session session;
+
+    @Override
+    public void postLogin(SessionEvent event) {
+        session = event.getSession();
+    }
+
+    @Override
+    public void postExecuteCall(SessionEvent event) {
+        if (event.getCall() instanceof DatabaseCall) {
+            String sql = ((DatabaseCall) event.getCall()).getSQLString();
+            if (sql != null && sql.trim().toUpperCase().startsWith("SELECT")) {
+                selects.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Start counting again from zero.
+     */
+    public static void reset() {
+        selects.set(0);
+    }
+
+    public static int getSelectCount() {
+        return selects.get();
+    }
+
+    /**
+     * Empty the shared cache, so that objects are read from the database
+     * again rather than found in memory.
+     */
+    public static void clearCache() {
+        if (session != null) {
+            session.getIdentityMapAccessor().initializeAllIdentityMaps();
+        }
+    }
+}
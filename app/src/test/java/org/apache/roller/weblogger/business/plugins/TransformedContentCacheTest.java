@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins;
+
+import java.sql.Timestamp;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test caching the transformed content of entries.
+ */
+public class TransformedContentCacheTest {
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+    }
+
+    @Test
+    public void testCachedUntilEntryChanges() {
+
+        TransformedContentCache cache = TransformedContentCache.getInstance();
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setUpdateTime(new Timestamp(1000));
+        entry.setPlugins("Convert Line Breaks");
+        cache.put(entry, TransformedContentCache.TEXT, "<p>one</p><p>two</p>");
+
+        assertEquals("<p>one</p><p>two</p>", cache.get(entry, TransformedContentCache.TEXT));
+        assertNull(cache.get(entry, TransformedContentCache.SUMMARY));
+
+        // different plugins
+        entry.setPlugins("Smileys");
+        assertNull(cache.get(entry, TransformedContentCache.TEXT));
+        entry.setPlugins("Convert Line Breaks");
+
+        // saved since
+        entry.setUpdateTime(new Timestamp(2000));
+        assertNull(cache.get(entry, TransformedContentCache.TEXT));
+
+        // dropped once changed, whatever it was cached for
+        cache.put(entry, TransformedContentCache.TEXT, "<p>one</p><p>two</p>");
+        WeblogEntry saved = new WeblogEntry();
+        saved.setId(entry.getId());
+        saved.setUpdateTime(new Timestamp(3000));
+        cache.invalidate(saved);
+        assertNull(cache.get(entry, TransformedContentCache.TEXT));
+    }
+
+    @Test
+    public void testCachedUntilWeblogChanges() {
+
+        TransformedContentCache cache = TransformedContentCache.getInstance();
+
+        Weblog weblog = new Weblog();
+        weblog.setHandle("transformedTestBlog");
+        Weblog other = new Weblog();
+        other.setHandle("transformedTestOther");
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId("transformedTestEntry");
+        entry.setWebsite(weblog);
+        entry.setUpdateTime(new Timestamp(1000));
+        entry.setPlugins("Smileys");
+        cache.put(entry, TransformedContentCache.TEXT, "<img alt=\":-)\">");
+
+        // changes to other weblogs don't matter
+        cache.invalidate(other);
+        assertEquals("<img alt=\":-)\">", cache.get(entry, TransformedContentCache.TEXT));
+
+        // the weblog's plugins may be set up differently now
+        cache.invalidate(weblog);
+        assertNull(cache.get(entry, TransformedContentCache.TEXT));
+    }
+
+    @Test
+    public void testChangedContentNotCached() {
+
+        TransformedContentCache cache = TransformedContentCache.getInstance();
+
+        Weblog weblog = new Weblog();
+        weblog.setHandle("transformedTestChanged");
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId("transformedTestChangedEntry");
+        entry.setWebsite(weblog);
+        entry.setUpdateTime(new Timestamp(1000));
+        entry.markContentSaved();
+
+        // content set where there was none, after the entry was loaded
+        entry.setText("changed text");
+        entry.setSummary("changed summary");
+        assertEquals("changed text", entry.getTransformedText());
+        assertEquals("changed summary", entry.getTransformedSummary());
+        assertNull(cache.get(entry, TransformedContentCache.TEXT));
+        assertNull(cache.get(entry, TransformedContentCache.SUMMARY));
+
+        // cached once saved as it stands
+        entry.markContentSaved();
+        assertEquals("changed text", entry.getTransformedText());
+        assertEquals("changed text", cache.get(entry, TransformedContentCache.TEXT));
+    }
+
+}
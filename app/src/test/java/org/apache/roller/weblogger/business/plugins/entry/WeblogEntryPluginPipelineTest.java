@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins.entry;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.HtmlTokenFilter;
+import org.apache.roller.weblogger.util.HtmlTokenHandler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test applying chains of plugins with the WeblogEntryPluginPipeline.
+ */
+public class WeblogEntryPluginPipelineTest {
+    
+    // expected outputs below are those of the plugins as they were before the pipeline
+    
+    @Test
+    public void convertLineBreaks() {
+        List<WeblogEntryPlugin> plugins = List.of(new ConvertLineBreaksPlugin());
+        
+        assertEquals("\n<p>one<br/>\ntwo</p>\n\n\n<p>three</p>\n\n\n<p>four<br/>\n<pre>a</p>\n\n\n<p>b</pre><br/>\nfive</p>\n\n",
+                WeblogEntryPluginPipeline.render(null, plugins,
+                        "one\ntwo\n\nthree\r\n\r\nfour\n<pre>a\n\nb</pre>\nfive", false));
+    }
+    
+    @Test
+    public void obfuscateEmail() {
+        List<WeblogEntryPlugin> plugins = List.of(new ObfuscateEmailPlugin());
+        
+        assertEquals("write to joe-AT-example-DOT-com or "
+                + "<a href=\"mailto:%6a%6f%65%40%65%78%61%6d%70%6c%65%2e%63%6f%6d\">joe-AT-example-DOT-com</a>",
+                WeblogEntryPluginPipeline.render(null, plugins,
+                        "write to joe@example.com or <a href=\"mailto:joe@example.com\">joe@example.com</a>", false));
+    }
+    
+    @Test
+    public void smileys() throws Exception {
+        // smileys are built from the absolute url in the runtime config
+        TestUtils.setupWeblogger();
+        WeblogEntryPlugin smileys = new SmileysPlugin();
+        smileys.init(null);
+        String base = WebloggerRuntimeConfig.getAbsoluteContextURL();
+        List<WeblogEntryPlugin> plugins = List.of(smileys);
+        
+        assertEquals("Hi " + smiley(base, "smile", ":-)") + " and " + smiley(base, "wink", ";)")
+                + " or" + smiley(base, "sad", ":-("),
+                WeblogEntryPluginPipeline.render(null, plugins, "Hi :-) and ;) or:-(", false));
+        
+        // unlike before, smileys in markup are left alone so the tag stays valid
+        assertEquals("not <a title=\":-)\">here " + smiley(base, "wink", ";-)") + "</a>",
+                WeblogEntryPluginPipeline.render(null, plugins, "not <a title=\":-)\">here ;-)</a>", false));
+    }
+    
+    @Test
+    public void chain() {
+        List<WeblogEntryPlugin> plugins = Arrays.asList(
+                new EncodePreTagsPlugin(), new ObfuscateEmailPlugin(), new ConvertLineBreaksPlugin());
+        String text = "<pre>if (a<b) {}</pre>\nmail joe@example.com\n\n<script>alert(1)</script>done";
+        
+        assertEquals("\n<p><pre>if (a&lt;b) {}</pre><br/>\nmail joe-AT-example-DOT-com</p>\n\n\n"
+                + "<p><script>alert(1)</script>done</p>\n\n",
+                WeblogEntryPluginPipeline.render(null, plugins, text, false));
+        
+        // the sanitizer runs after the plugins, as before; running it first would
+        // see the unencoded "<b" in the pre block as a tag and mangle the text
+        assertEquals("\n<p><pre>if (a&lt;b) {}</pre><br>\nmail joe-AT-example-DOT-com</p>\n\n\n"
+                + "<p>alert(1)done</p>\n\n",
+                WeblogEntryPluginPipeline.render(null, plugins, text, true));
+    }
+    
+    @Test
+    public void wholeTextPlugin() {
+        // a plugin which only renders strings gets all the text that reaches it
+        WeblogEntryPlugin upperCase = new TestPlugin() {
+            @Override
+            public String render(WeblogEntry entry, String str) {
+                return str.toUpperCase();
+            }
+        };
+        List<WeblogEntryPlugin> plugins = Arrays.asList(new EncodePreTagsPlugin(), upperCase);
+        
+        assertEquals("<PRE>A &LT; B</PRE>",
+                WeblogEntryPluginPipeline.render(null, plugins, "<pre>a < b</pre>", false));
+    }
+    
+    @Test
+    public void sanitize() {
+        List<WeblogEntryPlugin> plugins = Arrays.asList(new ConvertLineBreaksPlugin());
+        
+        assertEquals("\n<p>helloalert(1)</p>\n\n",
+                WeblogEntryPluginPipeline.render(null, plugins, "hello<script>alert(1)</script>", true));
+        assertEquals("<b>bold</b>",
+                WeblogEntryPluginPipeline.render(null, List.of(), "<b>bold", true));
+    }
+    
+    @Test
+    public void failingPlugin() {
+        // a plugin which fails is left out, the others are still applied
+        WeblogEntryPlugin failing = new FailingPlugin();
+        List<WeblogEntryPlugin> plugins = Arrays.asList(failing, new ObfuscateEmailPlugin());
+        
+        assertEquals("joe-AT-example-DOT-com",
+                WeblogEntryPluginPipeline.render(null, plugins, "joe@example.com", false));
+    }
+    
+    
+    private static String smiley(String base, String image, String text) {
+        return "<img src=\"" + base + "/images/smileys/" + image + ".gif\" class=\"smiley\" alt=\""
+                + text + "\" title=\"" + text + "\" />";
+    }
+    
+    
+    private abstract static class TestPlugin implements WeblogEntryPlugin {
+        
+        @Override
+        public String getName() {
+            return getClass().getSimpleName();
+        }
+        
+        @Override
+        public String getDescription() {
+            return "";
+        }
+        
+        @Override
+        public void init(Weblog weblog) throws WebloggerException {
+        }
+    }
+    
+    
+    private static class FailingPlugin extends TestPlugin implements StreamingWeblogEntryPlugin {
+        
+        @Override
+        public HtmlTokenHandler filter(WeblogEntry entry, HtmlTokenHandler next) {
+            return new HtmlTokenFilter(next) {
+                @Override
+                public void token(String token) {
+                    throw new IllegalStateException("failing on purpose");
+                }
+            };
+        }
+    }
+    
+}
@@ -19,18 +19,22 @@ package org.apache.roller.weblogger.business.search;
 
 import java.sql.Timestamp;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.TestUtils;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.search.lucene.SearchResultCache;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.LuceneSearchCriteria;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.instancio.Instancio;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -38,6 +42,9 @@ import org.junit.jupiter.api.Test;
 
 import static org.apache.roller.weblogger.ui.rendering.model.SearchResultsModel.RESULTS_PER_PAGE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test Search Manager business layer operations.
@@ -97,6 +104,11 @@ public class IndexManagerTest {
 
             SearchResultList result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
             assertEquals(2, result.getResults().size());
+            assertEquals(2, result.getTotalHits());
+
+            // most recently published first
+            assertEquals(entries.get(1).getId(), result.getResults().get(0).getId());
+            assertEquals(entries.get(0).getId(), result.getResults().get(1).getId());
 
             criteria.setTerm("Tholian");
             result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
@@ -110,6 +122,96 @@ public class IndexManagerTest {
         }
     }
 
+    @Test
+    public void testSearchResultCache() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            LuceneSearchCriteria criteria = new LuceneSearchCriteria();
+            criteria.setTerm("Enterprise");
+            criteria.setWeblogHandle(testWeblog.getHandle());
+            criteria.setLocale(testWeblog.getLocale());
+            criteria.setOffset(0);
+            criteria.setMaxResults(1);
+
+            SearchResultList first = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, first.getResults().size());
+
+            // the second page, with extra whitespace in the term, comes from the cache
+            long hits = cacheHits();
+            criteria.setTerm("  Enterprise ");
+            criteria.setOffset(1);
+            SearchResultList second = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, second.getResults().size());
+            assertNotEquals(first.getResults().get(0).getId(), second.getResults().get(0).getId());
+            assertTrue(cacheHits() > hits);
+
+            // changes to the index are not hidden by the cache
+            WeblogEntry entry = entries.get(2);
+            entry = TestUtils.getManagedWeblogEntry(entry);
+            entry.setText("The Enterprise is caught in the Tholian web.");
+            entry.setStatus(WeblogEntry.PubStatus.PUBLISHED);
+            entry.setPubTime(new Timestamp(System.currentTimeMillis() - RollerConstants.SEC_IN_MS));
+            entryManager.saveWeblogEntry(entry);
+            TestUtils.endSession(true);
+            indexManager.addEntryReIndexOperation(entry);
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+
+            criteria.setOffset(0);
+            criteria.setMaxResults(RESULTS_PER_PAGE);
+            SearchResultList result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(3, result.getResults().size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testFacets() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            LuceneSearchCriteria criteria = new LuceneSearchCriteria();
+            criteria.setTerm("Enterprise");
+            criteria.setWeblogHandle(testWeblog.getHandle());
+            criteria.setLocale(testWeblog.getLocale());
+            criteria.setOffset(0);
+            criteria.setMaxResults(1);
+            criteria.setFacets(EnumSet.of(SearchFacet.WEBLOG, SearchFacet.CATEGORY, SearchFacet.MONTH));
+
+            // facets count all the hits, not only those on the page
+            SearchResultList result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertEquals(Map.of(testWeblog.getHandle(), 2), result.getFacets().get(SearchFacet.WEBLOG));
+            assertEquals(Map.of("General", 2), result.getFacets().get(SearchFacet.CATEGORY));
+            assertEquals(1, result.getFacets().get(SearchFacet.MONTH).size());
+            assertFalse(result.getFacets().containsKey(SearchFacet.TAG));
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    private static long cacheHits() {
+        Map<String, Object> stats = CacheManager.getStats().get(SearchResultCache.CACHE_ID);
+        return ((Number) stats.get("hits")).longValue();
+    }
+
     /**
      * Create some weblog entries, two with some Star Trek content
      */
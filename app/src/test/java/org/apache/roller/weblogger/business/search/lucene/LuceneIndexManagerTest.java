@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.search.SearchResultList;
+import org.apache.roller.weblogger.pojos.LuceneSearchCriteria;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test rebuilding an index kept on disk, whatever store the other tests use.
+ */
+public class LuceneIndexManagerTest {
+
+    private static final int ENTRIES = 3;
+
+    private User testUser;
+    private Weblog testWeblog;
+    private WeblogEntry testEntry;
+    private Path base;
+    private Path indexDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        testUser = TestUtils.setupUser("lucenemanagertestuser");
+        testWeblog = TestUtils.setupWeblog("lucenemanagertestweblog", testUser);
+        for (int i = 0; i < ENTRIES; i++) {
+            testEntry = TestUtils.setupWeblogEntry("lucenemanagertestentry" + i, testWeblog, testUser);
+        }
+        TestUtils.endSession(true);
+
+        // start out with an empty index, so that nothing is rebuilt on startup
+        base = Files.createTempDirectory("luceneindex");
+        indexDir = base.resolve("index");
+        try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexDir),
+                new IndexWriterConfig(new StandardAnalyzer()))) {
+            writer.commit();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+
+        try (Stream<Path> paths = Files.walk(base)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testShadowRebuild() throws Exception {
+        LuceneIndexManager manager = newManager();
+        manager.initialize();
+        try {
+            assertTrue(manager.isShadowRebuild());
+            new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(), manager, null).run();
+
+            // the rebuilt index took over, and nothing is left beside it
+            assertEquals(ENTRIES, count(manager));
+            assertFalse(Files.exists(manager.getShadowIndexDir()));
+            assertFalse(Files.exists(base.resolve("index.old")));
+
+            LuceneSearchCriteria criteria = new LuceneSearchCriteria();
+            criteria.setTerm("blah");
+            criteria.setWeblogHandle(testWeblog.getHandle());
+            criteria.setLocale(testWeblog.getLocale());
+            criteria.setOffset(0);
+            criteria.setMaxResults(10);
+            SearchResultList result = manager.search(criteria,
+                    WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(ENTRIES, result.getResults().size());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testSearchDuringSwitch() throws Exception {
+        LuceneIndexManager manager = newManager();
+        manager.initialize();
+        try {
+            // a searcher of the old index, in use while the rebuilt one takes over
+            IndexSearcher before = manager.acquireSearcher();
+
+            // and searches going on all the while
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread searching = new Thread(() -> {
+                while (!done.get() && failure.get() == null) {
+                    try {
+                        count(manager);
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            searching.start();
+            try {
+                new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(), manager, null).run();
+            } finally {
+                done.set(true);
+                searching.join();
+            }
+            assertNull(failure.get());
+
+            // the old searcher still reads the old index until handed back
+            try {
+                assertEquals(0, before.count(new TermQuery(
+                        new Term(FieldConstants.WEBSITE_HANDLE, testWeblog.getHandle()))));
+            } finally {
+                manager.releaseSearcher(before);
+            }
+            assertEquals(ENTRIES, count(manager));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testSwitchClearsCachedResults() throws Exception {
+        LuceneIndexManager manager = newManager();
+        manager.initialize();
+        try {
+            SearchResultCache cache = SearchResultCache.getInstance();
+            cache.putFacets("lucenemanagertest", 1, Map.of());
+            assertNotNull(cache.getFacets("lucenemanagertest", 1));
+
+            new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(), manager, null).run();
+            assertNull(cache.getFacets("lucenemanagertest", 1));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testChangesReplayedIntoShadowIndex() throws Exception {
+        LuceneIndexManager manager = newManager();
+        manager.initialize();
+        try {
+            ReentrantReadWriteLock rwl = (ReentrantReadWriteLock) manager.getReadWriteLock();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread rebuilding;
+
+            // the rebuild gets as far as the switch while the index is in use
+            rwl.readLock().lock();
+            try {
+                rebuilding = new Thread(() -> {
+                    try {
+                        new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(), manager, null).run();
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                });
+                rebuilding.start();
+                long deadline = System.currentTimeMillis() + 30 * RollerConstants.SEC_IN_MS;
+                while (!rwl.hasQueuedThreads() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertTrue(rwl.hasQueuedThreads());
+
+                // an entry removed from the live index in the meantime
+                manager.entryRemoved(testEntry.getId());
+            } finally {
+                rwl.readLock().unlock();
+            }
+            rebuilding.join();
+            assertNull(failure.get());
+
+            // is removed from the rebuilt index before it takes over
+            assertEquals(ENTRIES - 1, count(manager));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testInterruptedRebuildResumes() throws Exception {
+        LuceneIndexManager manager = newManager();
+        manager.initialize();
+        assertFalse(manager.isInconsistentAtStartup());
+        try {
+            Thread.currentThread().interrupt();
+            try {
+                new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(), manager, null).run();
+            } finally {
+                Thread.interrupted();
+            }
+            assertEquals(0, count(manager));
+        } finally {
+            manager.shutdown();
+        }
+
+        // the unfinished rebuild leaves the index marked inconsistent
+        Path marker = indexDir.resolve(".index-inconsistent");
+        assertTrue(Files.exists(marker));
+
+        // a checkpoint in the shadow directory is enough for it to be resumed
+        manager = newManager();
+        Files.createDirectories(manager.getShadowIndexDir());
+        new RebuildCheckpoint(RebuildCheckpoint.ALL_WEBLOGS, "", 0).save(manager.getShadowCheckpointFile());
+        Files.delete(marker);
+        manager.initialize();
+        try {
+            assertTrue(manager.isInconsistentAtStartup());
+            awaitCount(manager, ENTRIES);
+            assertFalse(Files.exists(manager.getShadowIndexDir()));
+        } finally {
+            manager.shutdown();
+        }
+        assertFalse(Files.exists(marker));
+    }
+
+    private LuceneIndexManager newManager() {
+        return new LuceneIndexManager(WebloggerFactory.getWeblogger(), indexDir.toString(), new FSIndexStore());
+    }
+
+    private int count(LuceneIndexManager manager) throws IOException {
+        IndexSearcher searcher = manager.acquireSearcher();
+        try {
+            return searcher.count(new TermQuery(
+                    new Term(FieldConstants.WEBSITE_HANDLE, testWeblog.getHandle())));
+        } finally {
+            manager.releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * Wait for a rebuild going on in the background to show up in searches.
+     */
+    private void awaitCount(LuceneIndexManager manager, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 30 * RollerConstants.SEC_IN_MS;
+        while (count(manager) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(RollerConstants.HALF_SEC_IN_MS);
+        }
+        assertEquals(expected, count(manager));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test keeping the index in memory, with snapshots on disk.
+ */
+public class MemoryIndexStoreTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("memoryindex");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testSnapshotSurvivesRestart() throws Exception {
+        MemoryIndexStore store = new MemoryIndexStore();
+        Files.writeString(dir.resolve(".index-inconsistent"), "");
+
+        Directory directory = store.open(dir);
+        try (IndexWriter writer = newWriter(directory)) {
+            writer.addDocument(doc("a"));
+            writer.addDocument(doc("b"));
+        }
+        store.close(directory, dir);
+
+        // nothing but the snapshot is written to disk until then
+        assertTrue(Files.exists(dir.resolve(".index-inconsistent")));
+
+        directory = store.open(dir);
+        try (IndexWriter writer = newWriter(directory)) {
+            writer.deleteDocuments(new Term("id", "a"));
+            writer.addDocument(doc("c"));
+            writer.forceMerge(1);
+        }
+        store.close(directory, dir);
+
+        directory = store.open(dir);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2, reader.numDocs());
+        } finally {
+            directory.close();
+        }
+
+        // files of the replaced snapshot are gone, but the marker is kept
+        assertTrue(Files.exists(dir.resolve(".index-inconsistent")));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.filter(
+                    file -> file.getFileName().toString().startsWith("_0")).count());
+        }
+    }
+
+    @Test
+    public void testOpenWithoutSnapshot() throws Exception {
+        MemoryIndexStore store = new MemoryIndexStore();
+        Directory directory = store.open(dir.resolve("missing"));
+        try {
+            assertFalse(DirectoryReader.indexExists(directory));
+        } finally {
+            directory.close();
+        }
+        assertFalse(store.isPersistent());
+    }
+
+    private static IndexWriter newWriter(Directory directory) throws IOException {
+        return new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+    }
+
+    private static Document doc(String id) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.YES));
+        return doc;
+    }
+
+}
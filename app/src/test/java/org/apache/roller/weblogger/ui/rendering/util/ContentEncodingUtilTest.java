@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test content encoding negotiation and pre-compressed content.
+ */
+public class ContentEncodingUtilTest {
+
+    @Test
+    public void testAcceptsGzip() {
+        assertFalse(ContentEncodingUtil.acceptsGzip(null));
+        assertFalse(ContentEncodingUtil.acceptsGzip(""));
+        assertFalse(ContentEncodingUtil.acceptsGzip("identity"));
+        assertFalse(ContentEncodingUtil.acceptsGzip("br"));
+        assertTrue(ContentEncodingUtil.acceptsGzip("gzip"));
+        assertTrue(ContentEncodingUtil.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(ContentEncodingUtil.acceptsGzip("x-gzip"));
+        assertTrue(ContentEncodingUtil.acceptsGzip("*"));
+        assertFalse(ContentEncodingUtil.acceptsGzip("gzip;q=0"));
+        assertFalse(ContentEncodingUtil.acceptsGzip("*, gzip;q=0"));
+        assertFalse(ContentEncodingUtil.acceptsGzip("gzip;q=0, *"));
+    }
+
+    @Test
+    public void testGzipContent() throws Exception {
+        CachedContent content = new CachedContent(0, "text/html");
+        for (int i = 0; i < 1000; i++) {
+            content.getCachedWriter().print("<p>hello roller</p>");
+        }
+        content.flush();
+        content.close();
+
+        byte[] compressed = content.getGzipContent();
+        assertTrue(compressed.length < content.getContentLength());
+
+        // the compressed copy is kept with the content
+        assertSame(compressed, content.getGzipContent());
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(content.getContent(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testETag() throws Exception {
+        CachedContent first = render("<p>hello roller</p>");
+        CachedContent second = render("<p>hello roller</p>");
+        CachedContent changed = render("<p>hello again</p>");
+
+        // the same bytes always get the same strong tag
+        assertTrue(first.getETag().startsWith("\""));
+        assertTrue(first.getETag().endsWith("\""));
+        assertEquals(first.getETag(), second.getETag());
+        assertNotEquals(first.getETag(), changed.getETag());
+
+        String gzipTag = ContentEncodingUtil.gzipETag(first.getETag());
+        assertNotEquals(first.getETag(), gzipTag);
+        assertTrue(gzipTag.endsWith("-gz\""));
+
+        String tag = first.getETag();
+        assertTrue(ModDateHeaderUtil.matchesETag(tag, tag));
+        assertTrue(ModDateHeaderUtil.matchesETag("W/" + tag, tag));
+        assertTrue(ModDateHeaderUtil.matchesETag("\"other\", " + tag, tag));
+        assertTrue(ModDateHeaderUtil.matchesETag("*", tag));
+        assertFalse(ModDateHeaderUtil.matchesETag(changed.getETag(), tag));
+        assertFalse(ModDateHeaderUtil.matchesETag(gzipTag, tag));
+        assertFalse(ModDateHeaderUtil.matchesETag("STANDARD", tag));
+    }
+
+    private static CachedContent render(String html) throws Exception {
+        CachedContent content = new CachedContent(0, "text/html");
+        content.getCachedWriter().print(html);
+        content.flush();
+        content.close();
+        return content;
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that pages of listings found by seeking past cached cursors are the
+ * same as those found by offset.
+ */
+public class EntryCursorCacheTest {
+
+    private static final int LENGTH = 4;
+
+    private User testUser = null;
+    private Weblog testWeblog = null;
+    private EntryCursorCache cursors;
+    private WeblogEntryManager mgr;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        testUser = TestUtils.setupUser("cursorTestUser");
+        testWeblog = TestUtils.setupWeblog("cursorTestWeblog", testUser);
+        TestUtils.endSession(true);
+
+        cursors = EntryCursorCache.getInstance();
+        cursors.clear();
+        mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+    @Test
+    public void testSameAsOffset() throws Exception {
+
+        List<WeblogEntry> entries = setupEntries(11, PubStatus.PUBLISHED);
+
+        // the first walk through stores cursors, the second seeks past them
+        for (int walk = 0; walk < 2; walk++) {
+            for (int page = 0; page < 3; page++) {
+                assertEquals(pageByOffset(published(), page), pageBySeeking(published(), page));
+            }
+        }
+        WeblogEntrySearchCriteria wesc = published();
+        cursors.seek(wesc, "test", 2, LENGTH);
+        assertNotNull(wesc.getAfterId());
+
+        // moving the newest entry to the end moves every page along by one
+        WeblogEntry moved = TestUtils.getManagedWeblogEntry(entries.get(0));
+        moved.setPubTime(new Timestamp(moved.getPubTime().getTime() - 100000L));
+        mgr.saveWeblogEntry(moved);
+        TestUtils.endSession(true);
+        cursors.invalidate(moved);
+
+        // no cursor of before the change is used ...
+        wesc = published();
+        cursors.seek(wesc, "test", 2, LENGTH);
+        assertNull(wesc.getAfterId());
+        assertEquals(2 * LENGTH, wesc.getOffset());
+
+        // ... and the pages found once new ones are stored are the same
+        for (int walk = 0; walk < 2; walk++) {
+            for (int page = 0; page < 3; page++) {
+                assertEquals(pageByOffset(published(), page), pageBySeeking(published(), page));
+            }
+        }
+        assertEquals(moved.getId(), pageBySeeking(published(), 2).get(2));
+    }
+
+    @Test
+    public void testDrafts() throws Exception {
+
+        setupEntries(5, PubStatus.PUBLISHED);
+        for (WeblogEntry draft : setupEntries(4, PubStatus.DRAFT)) {
+            // drafts need not have a publication time
+            draft = TestUtils.getManagedWeblogEntry(draft);
+            draft.setPubTime(null);
+            mgr.saveWeblogEntry(draft);
+        }
+        TestUtils.endSession(true);
+
+        // the publication times of all the entries sort them, but with drafts
+        // among them the pages are found by offset
+        Set<String> seen = new HashSet<>();
+        for (int walk = 0; walk < 2; walk++) {
+            for (int page = 0; page < 3; page++) {
+                List<String> sought = pageBySeeking(allStatuses(), page);
+                assertEquals(pageByOffset(allStatuses(), page), sought);
+                seen.addAll(sought);
+            }
+        }
+        assertEquals(9, seen.size());
+
+        WeblogEntrySearchCriteria wesc = allStatuses();
+        assertFalse(wesc.isSeekable());
+        assertNull(cursors.seek(wesc, "test", 2, LENGTH));
+        assertNull(wesc.getAfterId());
+
+        // every entry has an update time, so those can be sought past
+        wesc.setSortBy(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME);
+        assertTrue(wesc.isSeekable());
+        seen.clear();
+        WeblogEntry last = null;
+        for (int page = 0; page < 3; page++) {
+            WeblogEntrySearchCriteria skip = allStatuses();
+            skip.setSortBy(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME);
+            skip.setOffset(page * LENGTH);
+            skip.setMaxResults(LENGTH);
+
+            WeblogEntrySearchCriteria seek = allStatuses();
+            seek.setSortBy(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME);
+            if (last != null) {
+                seek.setAfter(last.getUpdateTime(), last.getId());
+            }
+            seek.setMaxResults(LENGTH);
+            List<WeblogEntry> found = mgr.getWeblogEntries(seek);
+
+            assertEquals(ids(mgr.getWeblogEntries(skip)), ids(found));
+            seen.addAll(ids(found));
+            last = found.get(found.size() - 1);
+        }
+        assertEquals(9, seen.size());
+    }
+
+    @Test
+    public void testNoCursorAfterChange() throws Exception {
+
+        setupEntries(6, PubStatus.PUBLISHED);
+
+        // the weblog changes while the first page is being found
+        WeblogEntrySearchCriteria wesc = published();
+        String prefix = cursors.seek(wesc, "test", 0, LENGTH);
+        assertNotNull(prefix);
+        wesc.setMaxResults(LENGTH + 1);
+        List<WeblogEntry> found = mgr.getWeblogEntries(wesc);
+        cursors.invalidate(testWeblog);
+        cursors.put(prefix, wesc, "test", 0, found.get(LENGTH - 1));
+
+        wesc = published();
+        cursors.seek(wesc, "test", 1, LENGTH);
+        assertNull(wesc.getAfterId());
+        assertEquals(LENGTH, wesc.getOffset());
+    }
+
+
+    @Test
+    public void testFewPagesBack() throws Exception {
+
+        setupEntries(6, PubStatus.PUBLISHED);
+
+        // only the end of the first page is known
+        pageBySeeking(published(), 0);
+
+        WeblogEntrySearchCriteria wesc = published();
+        cursors.seek(wesc, "test", 2, LENGTH);
+        assertNotNull(wesc.getAfterId());
+        assertEquals(LENGTH, wesc.getOffset());
+
+        // a page far past any known one is found by offset straight away
+        wesc = published();
+        cursors.seek(wesc, "test", 10, LENGTH);
+        assertNull(wesc.getAfterId());
+        assertEquals(10 * LENGTH, wesc.getOffset());
+    }
+
+
+    private List<WeblogEntry> setupEntries(int count, PubStatus status) throws Exception {
+        List<WeblogEntry> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            WeblogEntry entry = TestUtils.setupWeblogEntry("cursor" + status + i,
+                    testWeblog.getWeblogCategories().iterator().next(), status, testWeblog, testUser);
+            // two entries to each time, so that pages end among ties
+            entry.setPubTime(new Timestamp(now - (i / 2) * 1000L));
+            mgr.saveWeblogEntry(entry);
+            entries.add(entry);
+        }
+        TestUtils.endSession(true);
+        return entries;
+    }
+
+    private WeblogEntrySearchCriteria published() throws Exception {
+        WeblogEntrySearchCriteria wesc = allStatuses();
+        wesc.setStatus(PubStatus.PUBLISHED);
+        return wesc;
+    }
+
+    private WeblogEntrySearchCriteria allStatuses() throws Exception {
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(TestUtils.getManagedWebsite(testWeblog));
+        return wesc;
+    }
+
+    /**
+     * Find a page as the weblog pagers do.
+     */
+    private List<String> pageBySeeking(WeblogEntrySearchCriteria wesc, int page) throws Exception {
+        String prefix = cursors.seek(wesc, "test", page, LENGTH);
+        wesc.setMaxResults(LENGTH + 1);
+        List<WeblogEntry> found = mgr.getWeblogEntries(wesc);
+        if (found.size() > LENGTH) {
+            cursors.put(prefix, wesc, "test", page, found.get(LENGTH - 1));
+            found = found.subList(0, LENGTH);
+        }
+        return ids(found);
+    }
+
+    private List<String> pageByOffset(WeblogEntrySearchCriteria wesc, int page) throws Exception {
+        wesc.setOffset(page * LENGTH);
+        wesc.setMaxResults(LENGTH);
+        return ids(mgr.getWeblogEntries(wesc));
+    }
+
+    private static List<String> ids(List<WeblogEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (WeblogEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.wrapper.UserWrapper;
+import org.apache.roller.weblogger.pojos.wrapper.WeblogCategoryWrapper;
+import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test that changes evict only the site-wide content which depends on them.
+ */
+public class SiteWideCacheTest {
+
+    private SiteWideCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // invalidating checks whether a weblog is the site-wide weblog
+        TestUtils.setupWeblogger();
+        cache = SiteWideCache.getInstance();
+        cache.clear();
+    }
+
+    @Test
+    public void testDependentEviction() throws Exception {
+
+        Weblog blog1 = new Weblog();
+        blog1.setHandle("sitewideTestBlog1");
+        Weblog blog2 = new Weblog();
+        blog2.setHandle("sitewideTestBlog2");
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId("sitewideTestEntry");
+        entry.setWebsite(blog1);
+
+        WeblogCategory category = new WeblogCategory();
+        category.setId("sitewideTestCategory");
+        category.setWeblog(blog1);
+
+        User user = new User();
+        user.setUserName("sitewideTestUser");
+
+        // cache content as it would be rendered, with what the templates
+        // were handed recorded along the way
+        cache("entryPage", () -> WeblogEntryWrapper.wrap(entry, null));
+        cache("categoryPage", () -> WeblogCategoryWrapper.wrap(category, null));
+        cache("creatorPage", () -> UserWrapper.wrap(user));
+        cache("blog2Listing", () -> CacheDependencies.recordListing(
+                CacheDependencies.ENTRIES, blog2.getHandle()));
+        assertCached("entryPage", "categoryPage", "creatorPage", "blog2Listing");
+
+        cache.invalidate(entry);
+        assertNull(cache.get("entryPage"));
+        assertCached("categoryPage", "creatorPage", "blog2Listing");
+
+        cache.invalidate(category);
+        assertNull(cache.get("categoryPage"));
+        assertCached("creatorPage", "blog2Listing");
+
+        cache.invalidate(user);
+        assertNull(cache.get("creatorPage"));
+        assertCached("blog2Listing");
+
+        cache.invalidate(blog2);
+        assertNull(cache.get("blog2Listing"));
+    }
+
+    @Test
+    public void testNothingRecorded() throws Exception {
+
+        Weblog blog = new Weblog();
+        blog.setHandle("sitewideTestBlog3");
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId("sitewideTestEntry3");
+        entry.setWebsite(blog);
+
+        // content which recorded no dependencies goes with any change
+        cache("emptyPage", () -> { });
+        assertCached("emptyPage");
+
+        cache.invalidate(entry);
+        assertNull(cache.get("emptyPage"));
+    }
+
+    private void cache(String key, Runnable render) {
+        CacheDependencies.begin();
+        try {
+            render.run();
+        } finally {
+            cache.put(key, key, CacheDependencies.end());
+        }
+    }
+
+    private void assertCached(String... keys) {
+        for (String key : keys) {
+            assertEquals(key, cache.get(key), key);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test ConcurrentLRUCacheImpl.
+ */
+public class ConcurrentLRUCacheTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2");
+        assertEquals("string1", cache.get("key1"));
+        assertEquals("string2", cache.get("key2"));
+        assertNull(cache.get("key3"));
+
+        cache.remove("key1");
+        assertNull(cache.get("key1"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(2.0, stats.get("hits"));
+        assertEquals(2.0, stats.get("misses"));
+        assertEquals(2.0, stats.get("puts"));
+        assertEquals(1.0, stats.get("removes"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0.0, cache.getStats().get("hits"));
+    }
+
+    @Test
+    public void testLRU() throws Exception {
+        // a single segment makes the eviction order exact
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 3, 1);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2");
+        cache.put("key3", "string3");
+
+        // make sure access times differ even on coarse clocks
+        Thread.sleep(20);
+
+        // accessing key1 and key2 will make key3 LRU
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+
+        // adding a forth key will push out the LRU entry
+        cache.put("key4", "string4");
+        assertNull(cache.get("key3"));
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertNotNull(cache.get("key4"));
+    }
+
+    @Test
+    public void testBounded() {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 50, 8);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i);
+        }
+        assertTrue(cache.size() <= 50);
+    }
+
+    @Test
+    public void testSampledEviction() {
+        // one segment larger than the sample evicts from random entries
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 40, 1);
+
+        for (int i = 0; i < 40; i++) {
+            cache.put("key" + i, i);
+        }
+        for (int i = 0; i < 40; i += 2) {
+            cache.remove("key" + i);
+        }
+        for (int i = 40; i < 200; i++) {
+            cache.put("key" + i, i);
+            // the entry just added is never the one evicted
+            assertEquals(i, cache.get("key" + i));
+            assertTrue(cache.size() <= 40);
+        }
+        assertEquals(40, cache.size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    String key = "key" + ((i + offset) % 128);
+                    if (cache.get(key) == null) {
+                        cache.put(key, key);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(cache.size() <= 64);
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(80000.0, (Double) stats.get("hits") + (Double) stats.get("misses"));
+    }
+
+    @Test
+    public void testExpiring() throws Exception {
+        ConcurrentExpiringLRUCacheImpl cache = new ConcurrentExpiringLRUCacheImpl("test", 10, 1);
+
+        cache.put("key1", "string1");
+        assertEquals("string1", cache.get("key1"));
+
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the estimates of the count-min sketch.
+ */
+public class CountMinSketchTest {
+
+    @Test
+    public void testEstimates() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("/hot/");
+            if (i % 10 == 0) {
+                sketch.add("/warm/");
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            sketch.add("/cold/" + i);
+        }
+
+        // estimates are never too low, and close for the keys seen most
+        assertTrue(sketch.estimate("/hot/") >= 1000);
+        assertTrue(sketch.estimate("/hot/") < 1100);
+        assertTrue(sketch.estimate("/warm/") >= 100);
+        assertTrue(sketch.estimate("/warm/") < sketch.estimate("/hot/"));
+        assertTrue(sketch.estimate("/never/") < 100);
+    }
+
+    @Test
+    public void testHalve() {
+        CountMinSketch sketch = new CountMinSketch(2, 64);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("key");
+        }
+        assertEquals(11, sketch.add("key"));
+
+        sketch.halve();
+        assertEquals(5, sketch.estimate("key"));
+
+        sketch.clear();
+        assertEquals(0, sketch.estimate("key"));
+    }
+
+}
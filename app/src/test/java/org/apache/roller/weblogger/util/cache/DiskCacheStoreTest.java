@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the disk store and the disk tier of caches.
+ */
+public class DiskCacheStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File dir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("diskcache").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSurvivesRestart() throws Exception {
+        DiskCacheStore store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        store.put("a", bytes("one"));
+        store.put("b", bytes("two"));
+        store.put("a", bytes("three"));
+        store.put("c", bytes("four"));
+        store.remove("c");
+        store.close();
+
+        store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        assertEquals(2, store.size());
+        assertEquals("three", string(store.get("a", 0)));
+        assertEquals("two", string(store.get("b", 0)));
+        assertNull(store.get("c", 0));
+
+        // entries written before the given time are ignored
+        assertNull(store.get("a", System.currentTimeMillis() + 1000));
+
+        // and it keeps appending where it left off
+        store.put("d", bytes("five"));
+        store.close();
+        store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        assertEquals(3, store.size());
+        assertEquals("five", string(store.get("d", 0)));
+    }
+
+    @Test
+    public void testOldestSegmentDropped() throws Exception {
+        // room for two segments of about three values each
+        DiskCacheStore store = new DiskCacheStore(dir, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        byte[] value = new byte[1200];
+        for (int i = 0; i < 9; i++) {
+            store.put("key" + i, value);
+        }
+
+        assertNull(store.get("key0", 0));
+        assertNotNull(store.get("key8", 0));
+        assertTrue(store.size() < 9);
+        assertTrue(store.getBytes() <= 2 * SEGMENT_SIZE);
+        assertEquals(2, dir.listFiles().length);
+
+        // values too big for a segment are not kept
+        store.put("big", new byte[SEGMENT_SIZE]);
+        assertNull(store.get("big", 0));
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws Exception {
+        DiskCacheStore store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        store.put("a", bytes("one"));
+        store.put("b", bytes("two"));
+        store.close();
+
+        // corrupt the last byte of the second value
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long offset = store.getBytes() - 1;
+            raf.seek(offset);
+            raf.write('X');
+        }
+
+        store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        assertEquals("one", string(store.get("a", 0)));
+        assertNull(store.get("b", 0));
+
+        // the torn record is written over
+        store.put("c", bytes("three"));
+        store = new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE);
+        assertEquals("three", string(store.get("c", 0)));
+    }
+
+    @Test
+    public void testTieredCache() throws Exception {
+        CachedContent content = new CachedContent(16, "text/html");
+        content.getCachedWriter().print("<p>hello</p>");
+        content.close();
+        LazyExpiringCacheEntry entry = new LazyExpiringCacheEntry(content);
+
+        DiskTieredCache cache = new DiskTieredCache(new LRUCacheImpl("test", 10),
+                new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE), 60000);
+        cache.put("page", entry);
+        assertSame(entry, cache.get("page"));
+        cache.close();
+
+        // a new node comes up with an empty memory cache
+        cache = new DiskTieredCache(new LRUCacheImpl("test", 10),
+                new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE), 60000);
+        LazyExpiringCacheEntry restored = (LazyExpiringCacheEntry) cache.get("page");
+        assertNotNull(restored);
+        assertEquals(entry.getTimeCached(), restored.getTimeCached());
+        CachedContent restoredContent = (CachedContent) restored.getValue(0);
+        assertEquals("<p>hello</p>", restoredContent.getContentAsString());
+        assertEquals(content.getETag(), restoredContent.getETag());
+        assertEquals(1.0, cache.getStats().get("diskHits"));
+
+        // and from then on it is served from memory
+        assertSame(restored, cache.get("page"));
+        assertEquals(1.0, cache.getStats().get("diskHits"));
+
+        cache.clear();
+        assertNull(cache.get("page"));
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testRemovedEntryStaysRemoved() throws Exception {
+        DiskTieredCache cache = new DiskTieredCache(new LRUCacheImpl("test", 10),
+                new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE), 60000);
+        cache.put("kept", "kept");
+        cache.put("removed", "removed");
+        // whether or not the write got to disk first
+        cache.remove("removed");
+        cache.close();
+
+        cache = new DiskTieredCache(new LRUCacheImpl("test", 10),
+                new DiskCacheStore(dir, 1024 * 1024, SEGMENT_SIZE), 60000);
+        assertEquals("kept", cache.get("kept"));
+        assertNull(cache.get("removed"));
+        cache.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return (value != null) ? new String(value, UTF_8) : null;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the soft timeout of the expiring LRU cache.
+ */
+public class ExpiringLRUCacheTest {
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        ExpiringLRUCacheImpl cache = new ExpiringLRUCacheImpl("test", 10, 60, 1);
+
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+
+        Thread.sleep(1100);
+
+        // the first caller to see a stale entry is asked to rebuild it
+        assertNull(cache.get("key"));
+
+        // while everyone else keeps getting the stale copy
+        assertEquals("value", cache.get("key"));
+        assertEquals("value", cache.get("key"));
+
+        cache.put("key", "fresh");
+        assertEquals("fresh", cache.get("key"));
+        assertEquals(3.0, cache.getStats().get("staleHits"));
+    }
+
+    @Test
+    public void testSoftTimeoutDisabled() throws Exception {
+        // a soft timeout past the timeout is ignored
+        ExpiringLRUCacheImpl cache = new ExpiringLRUCacheImpl("test", 10, 1, 5);
+
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+        assertNull(cache.getStats().get("staleHits"));
+
+        Thread.sleep(1100);
+        assertNull(cache.get("key"));
+        assertNull(cache.get("key"));
+    }
+
+}
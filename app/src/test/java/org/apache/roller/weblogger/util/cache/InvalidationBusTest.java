@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test batching and delivery of invalidations between cluster nodes.
+ */
+public class InvalidationBusTest {
+
+    @Test
+    public void testEncoding() throws Exception {
+        List<InvalidationEvent> events = Arrays.asList(
+                new InvalidationEvent(InvalidationEvent.Type.ENTRY, "id1", "blog"),
+                new InvalidationEvent(InvalidationEvent.Type.USER, "bob", null),
+                new InvalidationEvent(InvalidationEvent.Type.CLEAR, null, null),
+                new InvalidationEvent(InvalidationEvent.Type.CATEGORY, "id2", "bl\u00f6g\u20ac"));
+
+        byte[] message = InvalidationEvent.encode("node", 7, 1234, events);
+        InvalidationEvent.Batch batch = InvalidationEvent.decode(message, 0, message.length);
+
+        assertEquals("node", batch.getNodeId());
+        assertEquals(7, batch.getSequence());
+        assertEquals(1234, batch.getTimestamp());
+        assertEquals(events, batch.getEvents());
+
+        // sizes are worked out without encoding
+        int size = InvalidationEvent.headerSize("node");
+        for (InvalidationEvent event : events) {
+            size += event.encodedSize();
+        }
+        assertEquals(message.length, size);
+    }
+
+    @Test
+    public void testBatchedDelivery() throws Exception {
+        RecordingBus nodeA = new RecordingBus(new SmallMessageTransport());
+        RecordingBus nodeB = new RecordingBus(new SmallMessageTransport());
+        nodeA.start();
+        nodeB.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY, "entry" + i, "blog"));
+            }
+            // duplicates are sent once
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY, "entry0", "blog"));
+            nodeA.flush();
+
+            assertEquals(20, nodeB.applied.size());
+            assertEquals("entry0", nodeB.applied.get(0).getId());
+            assertEquals("entry19", nodeB.applied.get(19).getId());
+
+            // small messages meant several of them
+            assertTrue(SmallMessageTransport.published > 1);
+
+            // nodes never apply their own events
+            assertTrue(nodeA.applied.isEmpty());
+        } finally {
+            nodeA.stop();
+            nodeB.stop();
+        }
+    }
+
+    @Test
+    public void testNoEcho() throws Exception {
+        RecordingBus nodeA = new RecordingBus(new LoopbackInvalidationTransport());
+        EchoingBus nodeB = new EchoingBus(new LoopbackInvalidationTransport());
+        nodeA.start();
+        nodeB.start();
+        try {
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.WEBLOG, "id", "blog"));
+            nodeA.flush();
+            assertEquals(1, nodeB.applied.size());
+
+            // what node B invalidated because of node A isn't sent back
+            nodeB.flush();
+            assertTrue(nodeA.applied.isEmpty());
+        } finally {
+            nodeA.stop();
+            nodeB.stop();
+        }
+    }
+
+    @Test
+    public void testSignedDelivery() throws Exception {
+        RecordingBus nodeA = new RecordingBus(new LoopbackInvalidationTransport(), "secret");
+        RecordingBus nodeB = new RecordingBus(new LoopbackInvalidationTransport(), "secret");
+        RecordingBus stranger = new RecordingBus(new LoopbackInvalidationTransport(), "guess");
+        RecordingBus unsigned = new RecordingBus(new LoopbackInvalidationTransport(), null);
+        nodeA.start();
+        nodeB.start();
+        stranger.start();
+        unsigned.start();
+        try {
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY, "id", "blog"));
+            nodeA.flush();
+            assertEquals(1, nodeB.applied.size());
+            assertTrue(stranger.applied.isEmpty());
+
+            // messages signed with another secret, or not at all, are dropped
+            stranger.publish(new InvalidationEvent(InvalidationEvent.Type.CLEAR, null, null));
+            stranger.flush();
+            unsigned.publish(new InvalidationEvent(InvalidationEvent.Type.CLEAR, null, null));
+            unsigned.flush();
+            assertEquals(1, nodeB.applied.size());
+            assertTrue(nodeA.applied.isEmpty());
+        } finally {
+            nodeA.stop();
+            nodeB.stop();
+            stranger.stop();
+            unsigned.stop();
+        }
+    }
+
+    @Test
+    public void testReplayedMessagesIgnored() throws Exception {
+        CapturingTransport transport = new CapturingTransport();
+        RecordingBus nodeA = new RecordingBus(transport, "secret");
+        RecordingBus nodeB = new RecordingBus(new LoopbackInvalidationTransport(), "secret");
+        nodeA.start();
+        nodeB.start();
+        try {
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY, "id1", "blog"));
+            nodeA.flush();
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.CLEAR, null, null));
+            nodeA.flush();
+            assertEquals(2, transport.captured.size());
+            assertEquals(2, nodeB.applied.size());
+
+            // a captured message played back, in or out of order, is dropped
+            for (byte[] message : transport.captured) {
+                nodeB.receive(message, 0, message.length);
+            }
+            assertEquals(2, nodeB.applied.size());
+
+            // newer messages still arrive
+            nodeA.publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY, "id2", "blog"));
+            nodeA.flush();
+            assertEquals(3, nodeB.applied.size());
+        } finally {
+            nodeA.stop();
+            nodeB.stop();
+        }
+    }
+
+    @Test
+    public void testStaleMessagesIgnored() throws Exception {
+        RecordingBus bus = new RecordingBus(new LoopbackInvalidationTransport());
+        List<InvalidationEvent> events = Collections.singletonList(
+                new InvalidationEvent(InvalidationEvent.Type.CLEAR, null, null));
+
+        long now = System.currentTimeMillis();
+        byte[] stale = InvalidationEvent.encode("otherNode", 1, now - 3600000, events);
+        bus.receive(stale, 0, stale.length);
+        assertTrue(bus.applied.isEmpty());
+
+        // out of order is fine, as long as it wasn't received before
+        byte[] second = InvalidationEvent.encode("otherNode", 3, now, events);
+        byte[] first = InvalidationEvent.encode("otherNode", 2, now, events);
+        bus.receive(second, 0, second.length);
+        bus.receive(first, 0, first.length);
+        bus.receive(second, 0, second.length);
+        assertEquals(2, bus.applied.size());
+    }
+
+    @Test
+    public void testReceivedEventRefreshesWeblog() throws Exception {
+        TestUtils.setupWeblogger();
+        User user = TestUtils.setupUser("invalidationBusUser");
+        Weblog weblog = TestUtils.setupWeblog("invalidationBusBlog", user);
+        TestUtils.endSession(true);
+        try {
+            // read the weblog so that the shared cache holds it
+            Weblog cached = WebloggerFactory.getWeblogger().getWeblogManager().getWeblog(weblog.getId());
+            assertNotNull(cached);
+            TestUtils.endSession(false);
+
+            // another node changes it behind this node's back
+            Timestamp changed = new Timestamp(System.currentTimeMillis() / 1000 * 1000 + 3600000);
+            try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection();
+                    PreparedStatement stmt = con.prepareStatement(
+                            "update weblog set lastmodified = ? where id = ?")) {
+                stmt.setTimestamp(1, changed);
+                stmt.setString(2, weblog.getId());
+                assertEquals(1, stmt.executeUpdate());
+                if (!con.getAutoCommit()) {
+                    con.commit();
+                }
+            }
+
+            // and tells this node about it
+            InvalidationBus bus = new InvalidationBus(new LoopbackInvalidationTransport(), 60000);
+            byte[] message = InvalidationEvent.encode("otherNode", 1, System.currentTimeMillis(),
+                    Collections.singletonList(new InvalidationEvent(InvalidationEvent.Type.WEBLOG,
+                            weblog.getId(), weblog.getHandle())));
+            bus.receive(message, 0, message.length);
+
+            Weblog reread = WebloggerFactory.getWeblogger().getWeblogManager().getWeblog(weblog.getId());
+            assertEquals(changed.getTime(), reread.getLastModified().getTime());
+            TestUtils.endSession(false);
+        } finally {
+            TestUtils.teardownWeblog(weblog.getId());
+            TestUtils.teardownUser(user.getUserName());
+            TestUtils.endSession(true);
+        }
+    }
+
+    private static class RecordingBus extends InvalidationBus {
+        final List<InvalidationEvent> applied = new ArrayList<>();
+
+        RecordingBus(InvalidationTransport transport) {
+            this(transport, null);
+        }
+
+        RecordingBus(InvalidationTransport transport, String secret) {
+            super(transport, 60000, secret);
+        }
+
+        @Override
+        protected void apply(InvalidationEvent event) {
+            applied.add(event);
+        }
+    }
+
+    private static class EchoingBus extends RecordingBus {
+        EchoingBus(InvalidationTransport transport) {
+            super(transport);
+        }
+
+        @Override
+        protected void apply(InvalidationEvent event) {
+            super.apply(event);
+            // as the local handlers would when invalidating
+            publish(event);
+        }
+    }
+
+    private static class CapturingTransport extends LoopbackInvalidationTransport {
+        final List<byte[]> captured = new ArrayList<>();
+
+        @Override
+        public void publish(byte[] message) {
+            captured.add(message);
+            super.publish(message);
+        }
+    }
+
+    private static class SmallMessageTransport extends LoopbackInvalidationTransport {
+        static int published = 0;
+
+        @Override
+        public void publish(byte[] message) {
+            assertTrue(message.length <= getMaxMessageSize());
+            published++;
+            super.publish(message);
+        }
+
+        @Override
+        public int getMaxMessageSize() {
+            return 200;
+        }
+    }
+
+}
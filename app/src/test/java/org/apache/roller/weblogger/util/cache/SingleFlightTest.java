@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test coalescing of concurrent loads.
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testFollowersShareResult() throws Exception {
+        SingleFlight<String> group = new SingleFlight<>();
+
+        SingleFlight.Flight<String> leader = group.join("key");
+        assertTrue(leader.isLeader());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                SingleFlight.Flight<String> follower = group.join("key");
+                assertFalse(follower.isLeader());
+                followers.add(executor.submit(() -> follower.await(10000)));
+            }
+
+            // other keys get flights of their own
+            assertTrue(group.join("other").isLeader());
+
+            leader.land("rendered");
+            for (Future<String> follower : followers) {
+                assertEquals("rendered", follower.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // once landed the next miss starts a new flight
+        assertTrue(group.join("key").isLeader());
+    }
+
+    @Test
+    public void testFailedLeader() {
+        SingleFlight<String> group = new SingleFlight<>();
+
+        SingleFlight.Flight<String> leader = group.join("key");
+        SingleFlight.Flight<String> follower = group.join("key");
+
+        // followers do the work themselves when the leader has nothing
+        leader.land(null);
+        assertNull(follower.await(10000));
+
+        // landing again, or landing as a follower, changes nothing
+        leader.land("late");
+        follower.land("follower");
+        assertNull(follower.await(10000));
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void testTimeout() {
+        SingleFlight<String> group = new SingleFlight<>();
+
+        group.join("key");
+        assertNull(group.join("key").await(10));
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test WeightedLRUCacheImpl and off heap CachedContent.
+ */
+public class WeightedLRUCacheTest {
+
+    @Test
+    public void testByteBudget() throws Exception {
+        // 16 segments of 64KB each
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 16 * 64 * 1024, 0, true);
+
+        for (int i = 0; i < 200; i++) {
+            cache.put("key" + i, content(16 * 1024));
+        }
+        assertTrue(cache.getWeight() <= 16 * 64 * 1024);
+        assertTrue((Double) cache.getStats().get("evictions") > 0);
+
+        // something bigger than a segment is never cached
+        cache.put("huge", content(128 * 1024));
+        assertNull(cache.get("huge"));
+    }
+
+    @Test
+    public void testOffHeapContent() throws Exception {
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 1024 * 1024, 0, true);
+
+        CachedContent content = content(1000);
+        byte[] expected = content.getContent();
+
+        cache.put("key1", new LazyExpiringCacheEntry(content));
+
+        LazyExpiringCacheEntry entry = (LazyExpiringCacheEntry) cache.get("key1");
+        CachedContent cached = (CachedContent) entry.getValue(0);
+        assertEquals(1000, cached.getContentLength());
+        assertArrayEquals(expected, cached.getContent());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cached.writeTo(out);
+        cached.writeTo(out);
+        assertEquals(2000, out.size());
+    }
+
+    @Test
+    public void testSerializeOffHeapContent() throws Exception {
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 1024 * 1024, 0, true);
+
+        CachedContent content = content(1000);
+        byte[] expected = content.getContent();
+        cache.put("key1", content);
+        assertTrue(content.isOffHeap());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(content);
+        }
+        CachedContent copy;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (CachedContent) in.readObject();
+        }
+
+        // the copy has the content, the original keeps it off heap
+        assertArrayEquals(expected, copy.getContent());
+        assertEquals(content.getETag(), copy.getETag());
+        assertTrue(content.isOffHeap());
+        assertFalse(copy.isOffHeap());
+    }
+
+    @Test
+    public void testWrappedContentIsWeighed() throws Exception {
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 1024 * 1024, 0, false);
+
+        // wrappers such as the site-wide cache's are looked inside of
+        LazyExpiringCacheEntry entry = new LazyExpiringCacheEntry(content(10000));
+        WrappedCacheEntry wrapped = () -> entry;
+        cache.put("key1", wrapped);
+        assertTrue(cache.getWeight() > 10000);
+    }
+
+    @Test
+    public void testGzipCopyIsWeighed() throws Exception {
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 1024 * 1024, 0, true);
+
+        cache.put("key1", new LazyExpiringCacheEntry(content(10000)));
+        long before = cache.getWeight();
+
+        LazyExpiringCacheEntry entry = (LazyExpiringCacheEntry) cache.get("key1");
+        CachedContent cached = (CachedContent) entry.getValue(0);
+        byte[] gzip = cached.getGzipContent();
+        assertEquals(before + gzip.length, cache.getWeight());
+
+        // the copy is kept, so it is only counted once
+        cached.getGzipContent();
+        assertEquals(before + gzip.length, cache.getWeight());
+
+        cache.remove("key1");
+        assertEquals(0L, cache.getWeight());
+    }
+
+    @Test
+    public void testGzipCopyIsWeighedByEveryCache() throws Exception {
+        WeightedLRUCacheImpl cache1 = new WeightedLRUCacheImpl("test1", 1024 * 1024, 0, false);
+        WeightedLRUCacheImpl cache2 = new WeightedLRUCacheImpl("test2", 1024 * 1024, 0, false);
+
+        // the same content cached twice in one cache and once in another
+        CachedContent content = content(10000);
+        cache1.put("key1", content);
+        cache1.put("key2", content);
+        cache2.put("key1", content);
+        long before1 = cache1.getWeight();
+        long before2 = cache2.getWeight();
+
+        byte[] gzip = content.getGzipContent();
+        assertEquals(before1 + 2 * gzip.length, cache1.getWeight());
+        assertEquals(before2 + gzip.length, cache2.getWeight());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        WeightedLRUCacheImpl cache = new WeightedLRUCacheImpl("test", 1024 * 1024, 1, false);
+
+        cache.put("key1", "string1");
+        assertEquals("string1", cache.get("key1"));
+
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+        assertEquals(0L, cache.getWeight());
+    }
+
+    private static CachedContent content(int size) throws Exception {
+        CachedContent content = new CachedContent(size);
+        for (int i = 0; i < size; i++) {
+            content.getCachedWriter().write('a' + (i % 26));
+        }
+        content.flush();
+        content.close();
+        return content;
+    }
+
+}